@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.calendar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The rows, or lanes, of the all-day area of a {@link DayView}, built once
+ * per load so that drawing and hit testing the area only look at the lanes
+ * and days that are shown.
+ *
+ * An all-day event stays in the lane given by its column for every day it
+ * covers, and no two events share a lane on the same day. A table of the
+ * event in each lane of each day then gives the events to draw, the events
+ * above and below an event, and along with a count of the events in each
+ * lane and the lanes below it, the number of events hidden on a day when
+ * only the top lanes fit.
+ */
+/* package */ final class AllDayLanes {
+    private int mNumDays;
+    private int mNumLanes;
+
+    // The index in the all-day events list of the event in each lane of each
+    // day, at [day * mNumLanes + lane], or -1
+    private int[] mEvents = new int[0];
+    // The number of events in each lane of each day and in the lanes below
+    // it, at [day * (mNumLanes + 1) + lane]
+    private int[] mCountsFrom = new int[0];
+
+    /**
+     * Fills in the lanes of the numDays days starting at firstJulianDay from
+     * the events drawn as all-day events, which must have their columns
+     * computed.
+     */
+    void build(ArrayList<Event> allDayEvents, int firstJulianDay, int numDays) {
+        mNumDays = numDays;
+        final int lastJulianDay = firstJulianDay + numDays - 1;
+        final int count = allDayEvents.size();
+
+        int numLanes = 0;
+        for (int i = 0; i < count; i++) {
+            Event e = allDayEvents.get(i);
+            if (e.startDay <= lastJulianDay && e.endDay >= firstJulianDay) {
+                numLanes = Math.max(numLanes, e.getColumn() + 1);
+            }
+        }
+
+        int[] events = new int[numDays * numLanes];
+        Arrays.fill(events, -1);
+        for (int i = 0; i < count; i++) {
+            Event e = allDayEvents.get(i);
+            final int lane = e.getColumn();
+            if (lane < 0 || e.startDay > lastJulianDay || e.endDay < firstJulianDay) {
+                continue;
+            }
+            int first = Math.max(e.startDay, firstJulianDay) - firstJulianDay;
+            int last = Math.min(e.endDay, lastJulianDay) - firstJulianDay;
+            for (int day = first; day <= last; day++) {
+                events[day * numLanes + lane] = i;
+            }
+        }
+
+        int[] countsFrom = new int[numDays * (numLanes + 1)];
+        for (int day = 0; day < numDays; day++) {
+            final int base = day * (numLanes + 1);
+            for (int lane = numLanes - 1; lane >= 0; lane--) {
+                countsFrom[base + lane] = countsFrom[base + lane + 1]
+                        + (events[day * numLanes + lane] >= 0 ? 1 : 0);
+            }
+        }
+
+        mNumLanes = numLanes;
+        mEvents = events;
+        mCountsFrom = countsFrom;
+    }
+
+    int getNumLanes() {
+        return mNumLanes;
+    }
+
+    /**
+     * Returns the index in the all-day events list of the event in lane on
+     * the day at index day, or -1 if there is none.
+     */
+    int getEventIndex(int day, int lane) {
+        if (day < 0 || day >= mNumDays || lane < 0 || lane >= mNumLanes) {
+            return -1;
+        }
+        return mEvents[day * mNumLanes + lane];
+    }
+
+    /**
+     * Returns the number of events on the day at index day in lane and the
+     * lanes below it.
+     */
+    int countFrom(int day, int lane) {
+        if (day < 0 || day >= mNumDays || lane >= mNumLanes) {
+            return 0;
+        }
+        return mCountsFrom[day * (mNumLanes + 1) + Math.max(lane, 0)];
+    }
+}
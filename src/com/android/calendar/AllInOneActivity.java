@@ -81,7 +81,9 @@ import com.android.calendar.selectcalendars.SelectVisibleCalendarsFragment;
 import com.android.calendar.year.YearViewPagerFragment;
 
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.List;
 import java.util.Locale;
 import java.util.TimeZone;
@@ -659,6 +661,12 @@ public class AllInOneActivity extends AbstractCalendarActivity implements EventH
         cleanupCachedEventFiles();
     }
 
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        PerfLog.dump(prefix, writer, args);
+    }
+
     /**
      * Cleans up the temporarily generated ics and vcs files in the cache directory
      * The files are of the format *.ics and *.vcs
@@ -922,7 +930,8 @@ public class AllInOneActivity extends AbstractCalendarActivity implements EventH
 
     @Override
     public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
-        if (key.equals(GeneralPreferences.KEY_WEEK_START_DAY)) {
+        if (key.equals(GeneralPreferences.KEY_WEEK_START_DAY)
+                || key.equals(GeneralPreferences.KEY_WEEK_VIEW_DAYS)) {
             if (mPaused) {
                 mUpdateOnResume = true;
             } else {
@@ -1017,7 +1026,7 @@ public class AllInOneActivity extends AbstractCalendarActivity implements EventH
                 if (mActionBarMenuSpinnerAdapter != null) {
                     mActionBar.setSelectedNavigationItem(CalendarViewAdapter.WEEK_BUTTON_INDEX);
                 }
-                frag = new DayFragment(timeMillis, 7);
+                frag = new DayFragment(timeMillis, Utils.getWeekViewDays(this));
                 ExtensionsFactory.getAnalyticsLogger(getBaseContext()).trackView("week");
                 break;
         }
@@ -160,6 +160,16 @@ public class DayFragment extends Fragment implements CalendarController.EventHan
         ((DayView) mViewSwitcher.getNextView()).stopEventsAnimation();
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (mViewSwitcher == null) {
+            return;
+        }
+        ((DayView) mViewSwitcher.getCurrentView()).trimMemory(level);
+        ((DayView) mViewSwitcher.getNextView()).trimMemory(level);
+    }
+
     void startProgressSpinner() {
         // start the progress spinner
         mProgressBar.setVisibility(View.VISIBLE);
@@ -20,8 +20,10 @@ import android.animation.Animator;
 import android.animation.AnimatorListenerAdapter;
 import android.animation.ObjectAnimator;
 import android.animation.ValueAnimator;
+import android.app.ActivityManager;
 import android.app.AlertDialog;
 import android.app.Service;
+import android.content.ComponentCallbacks2;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.Context;
@@ -29,7 +31,9 @@ import android.content.DialogInterface;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.database.Cursor;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Paint.Align;
 import android.graphics.Paint.Style;
@@ -41,15 +45,11 @@ import android.os.Handler;
 import android.provider.CalendarContract.Attendees;
 import android.provider.CalendarContract.Calendars;
 import android.provider.CalendarContract.Events;
-import android.text.Layout.Alignment;
-import android.text.SpannableStringBuilder;
 import android.text.StaticLayout;
-import android.text.TextPaint;
 import android.text.TextUtils;
 import android.text.format.DateFormat;
 import android.text.format.DateUtils;
 import android.text.format.Time;
-import android.text.style.StyleSpan;
 import android.util.Log;
 import android.view.ContextMenu;
 import android.view.ContextMenu.ContextMenuInfo;
@@ -85,8 +85,6 @@ import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Formatter;
 import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * View for multi-day view. So far only 1 and 7 day have been tested.
@@ -309,7 +307,47 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
 
     private ArrayList<Event> mEvents = new ArrayList<Event>();
     private ArrayList<Event> mAllDayEvents = new ArrayList<Event>();
+    // The lanes of the events of mAllDayEvents in the all-day area
+    private AllDayLanes mAllDayLanes = new AllDayLanes();
+    // The events of mEvents drawn in the day columns, by day and time
+    private TimedEventIndex mTimedEventIndex = new TimedEventIndex();
     private StaticLayout[] mLayouts = null;
+    // The minimum duration mEvents were positioned with
+    private long mPositionsMinDurationMillis = -1;
+
+    // The grid lines and hour labels are the same in every DayView of the
+    // same size, so they are drawn once into a layer shared by the views,
+    // covering the visible hours plus a margin for vertical scrolling.
+    private static Bitmap sGridLayer;
+    private static int sGridLayerTop;
+    private static int sGridLayerWidth;
+    private static int sGridLayerCellHeight;
+    private static int sGridLayerNumDays;
+    private static int sGridLayerHoursWidth;
+    private static String[] sGridLayerHourStrs;
+    private static Canvas sGridLayerCanvas;
+    // A picture of one of the views, drawn by the other view in the
+    // ViewSwitcher while the owner is dragged in beside it, and by the owner
+    // while the ViewSwitcher animates it out. Only one view is drawn from a
+    // picture at a time, so the two views share it.
+    private static Bitmap sSnapshot;
+    private static Canvas sSnapshotCanvas;
+    private static DayView sSnapshotOwner;
+    // The bytes held by the layers of all the DayViews, and how many they
+    // may hold. The layers only save redrawing, so they are skipped when
+    // they would take more than a quarter of the app's heap, and entirely
+    // on low memory devices.
+    private static int sLayerBytes;
+    private static int sLayerBudget = -1;
+
+    // The day headers, which only change with the days shown
+    private Bitmap mHeaderLayer;
+    private boolean mHeaderLayerValid;
+    private int mHeaderLayerFirstJulianDay;
+    private int mHeaderLayerTodayJulianDay;
+    private int mHeaderLayerCellWidth;
+    private boolean mHeaderLayerLunar;
+    private Canvas mHeaderLayerCanvas;
     private StaticLayout[] mAllDayLayouts = null;
     private int mSelectionDay;        // Julian day
     private int mSelectionHour;
@@ -353,6 +391,8 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
     private boolean mRemeasure = true;
 
     private final EventLoader mEventLoader;
+    // Shared with the other DayView in the ViewSwitcher
+    private final EventLayoutCache mEventLayoutCache = EventLayoutCache.getInstance();
     protected final EventGeometry mEventGeometry;
 
     private static float GRID_LINE_LEFT_MARGIN = 0;
@@ -416,7 +456,6 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
     private static float AMPM_TEXT_SIZE = 9;
     private static int MIN_HOURS_WIDTH = 96;
     private static int MIN_CELL_WIDTH_FOR_TEXT = 20;
-    private static final int MAX_EVENT_TEXT_LEN = 500;
     // smallest height to draw an event with
     private static float MIN_EVENT_HEIGHT = 24.0F; // in pixels
     private static int CALENDAR_COLOR_SQUARE_SIZE = 10;
@@ -480,6 +519,24 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
     private float mStartingSpanY = 0;
     /** Height of 1 hour in pixels at the start of a scaling gesture */
     private int mCellHeightBeforeScaleGesture;
+
+    // While pinch zooming the view is laid out at the nearest of a fixed set
+    // of cell heights, each ZOOM_BUCKET_RATIO times the one below, and a
+    // picture of it at that height is stretched to the height being zoomed
+    // to. The exact layout is only redone when the gesture reaches another
+    // bucket, and when it ends.
+    private static final float ZOOM_BUCKET_RATIO = 1.25f;
+    private boolean mZooming;
+    // The cell height and view start being zoomed to
+    private float mZoomCellHeight;
+    private float mZoomViewStartY;
+    // Where the gesture is, from the top of the hours
+    private int mZoomFocusY;
+    private Bitmap mZoomLayer;
+    private Canvas mZoomLayerCanvas;
+    private int mZoomLayerTop;
+    private int mZoomLayerCellHeight;
+    private final Paint mZoomLayerPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
     /** The hour at the center two touch points */
     private float mGestureCenterHour = 0;
 
@@ -526,9 +583,10 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
      */
     private int mMaxAlldayEvents;
     /**
-     * A count of the number of allday events that were not drawn for each day
+     * The number of lanes of allday events drawn last, the events in the
+     * lanes below are hidden
      */
-    private int[] mSkippedAlldayEvents;
+    private int mShownAllDayLanes;
     /**
      * The number of allDay events at which point we start hiding allDay events.
      */
@@ -553,6 +611,17 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
     private String[] mHourStrs;
     private String[] mDayStrs;
     private String[] mDayStrs2Letter;
+    // The days of the month, and the same with a leading space for measuring
+    private static final String[] sDateNumStrs = new String[32];
+    private static final String[] sSpacedDateNumStrs = new String[32];
+    static {
+        for (int i = 0; i < sDateNumStrs.length; i++) {
+            sDateNumStrs[i] = String.valueOf(i);
+            sSpacedDateNumStrs[i] = " " + sDateNumStrs[i];
+        }
+    }
+    // The "+n" labels for hidden all-day events, formatted as they're needed
+    private String[] mMoreEventsLabels = new String[0];
     private boolean mIs24HourFormat;
 
     private final ArrayList<Event> mSelectedEvents = new ArrayList<Event>();
@@ -561,6 +630,19 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
     private Event mSelectedEvent;
     private Event mPrevSelectedEvent;
     private final Rect mPrevBox = new Rect();
+    private final Rect mSelectionBox = new Rect();
+    private final Time mReloadWeekStart = new Time();
+    // The part of the canvas being drawn, used to skip the day columns
+    // outside it. With hardware acceleration the clip is the whole view, so
+    // only the columns dragged off the screen sideways fall outside it.
+    private final Rect mClipBounds = new Rect();
+    // Whether the shared snapshot still shows this view, if it is the owner
+    private boolean mSnapshotValid;
+    // Set while this view is drawn into its snapshot, or by the other view
+    // when there is no memory for the snapshot
+    private boolean mDrawingSnapshot;
+    // Set while the ViewSwitcher animates this view out
+    private boolean mDrawFromSnapshot;
     protected final Resources mResources;
     protected final Drawable mCurrentTimeLine;
     protected final Drawable mCurrentTimeAnimateLine;
@@ -798,6 +880,12 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
 
         mFirstDayOfWeek = Utils.getFirstDayOfWeek(context);
 
+        if (sLayerBudget < 0) {
+            ActivityManager am =
+                    (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+            sLayerBudget = am.isLowRamDevice() ? 0 : am.getMemoryClass() * 1024 * 1024 / 4;
+        }
+
         mCurrentTime = new Time(Utils.getTimeZone(context, mTZUpdater));
         long currentTime = System.currentTimeMillis();
         mCurrentTime.set(currentTime);
@@ -939,6 +1027,8 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         mIs24HourFormat = DateFormat.is24HourFormat(mContext);
         mHourStrs = mIs24HourFormat ? CalendarData.s24Hours : CalendarData.s12HoursNoAmPm;
         mFirstDayOfWeek = Utils.getFirstDayOfWeek(mContext);
+        // The format and colors may have changed while paused
+        invalidateStaticLayers();
         mLastSelectionDayForAccessibility = 0;
         mLastSelectionHourForAccessibility = 0;
         mLastSelectedEventForAccessibility = null;
@@ -1001,6 +1091,10 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         return mSelectionHour * MINUTES_PER_HOUR;
     }
 
+    int getFirstJulianDay() {
+        return mFirstJulianDay;
+    }
+
     int getFirstVisibleHour() {
         return mFirstHour;
     }
@@ -1106,7 +1200,8 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
 
     public void setAnimateTodayAlpha(int todayAlpha) {
         mAnimateTodayAlpha = todayAlpha;
-        invalidate();
+        // Only the current time line pulses
+        invalidateCurrentTimeLine();
     }
 
     public Time getSelectedDay() {
@@ -1196,8 +1291,8 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
 
     private void recalc() {
         // Set the base date to the beginning of the week if we are displaying
-        // 7 days at a time.
-        if (mNumDays == 7) {
+        // whole weeks at a time.
+        if (mNumDays % 7 == 0) {
             adjustToBeginningOfWeek(mBaseDate);
         }
 
@@ -1325,9 +1420,12 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         mNumHours = mGridAreaHeight / (mCellHeight + HOUR_GAP);
         mEventGeometry.setHourHeight(mCellHeight);
 
-        final long minimumDurationMillis = (long)
-                (MIN_EVENT_HEIGHT * DateUtils.MINUTE_IN_MILLIS / (mCellHeight / 60.0f));
-        Event.computePositions(mEvents, minimumDurationMillis);
+        // The events usually come positioned for this cell height already
+        final long minimumDurationMillis = getMinimumDurationMillis();
+        if (minimumDurationMillis != mPositionsMinDurationMillis) {
+            Event.computePositions(mEvents, minimumDurationMillis);
+            mPositionsMinDurationMillis = minimumDurationMillis;
+        }
 
         // Compute the top of our reachable view
         mMaxViewStartY = HOUR_GAP + 24 * (mCellHeight + HOUR_GAP) - mGridAreaHeight;
@@ -1652,7 +1750,7 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         mUpdateToast = true;
 
         if (redraw) {
-            invalidate();
+            invalidateContent();
             return true;
         }
 
@@ -1686,7 +1784,7 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         }
         if (event.getAction() != MotionEvent.ACTION_HOVER_EXIT) {
             setSelectionFromPosition((int) event.getX(), (int) event.getY(), true);
-            invalidate();
+            invalidateContent();
         }
         return true;
     }
@@ -1803,8 +1901,11 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         public void onAnimationEnd(Animation animation) {
             DayView view = (DayView) mViewSwitcher.getCurrentView();
             view.mViewStartX = 0;
+            view.mDrawFromSnapshot = false;
+            view.invalidate();
             view = (DayView) mViewSwitcher.getNextView();
             view.mViewStartX = 0;
+            view.mDrawFromSnapshot = false;
 
             if (mCounter == sCounter) {
                 mController.sendEvent(this, EventType.GO_TO, mStart, mEnd, null, -1,
@@ -1857,7 +1958,7 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
 
         Time newSelected = start;
 
-        if (mNumDays == 7) {
+        if (mNumDays % 7 == 0) {
             newSelected = new Time(start);
             adjustToBeginningOfWeek(start);
         }
@@ -1888,8 +1989,14 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         mViewSwitcher.setInAnimation(inAnimation);
         mViewSwitcher.setOutAnimation(outAnimation);
 
+        // The view going out is animated as a picture taken at the start, so
+        // the cost of an animation frame doesn't depend on how many events
+        // it shows. The view coming in is drawn live, as it is reloading and
+        // fades its events in.
         DayView view = (DayView) mViewSwitcher.getCurrentView();
         view.cleanup();
+        view.mSnapshotValid = false;
+        view.mDrawFromSnapshot = true;
         mViewSwitcher.showNext();
         view = (DayView) mViewSwitcher.getCurrentView();
         view.setSelected(newSelected, true, false);
@@ -1897,6 +2004,7 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         view.reloadEvents();
         view.updateTitle();
         view.restartCurrentTimeUpdates();
+        view.mDrawFromSnapshot = false;
 
         return view;
     }
@@ -1998,6 +2106,82 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         mLastReloadMillis = 0;
     }
 
+    /**
+     * Returns the shortest duration an event is drawn with, which depends on
+     * the current cell height.
+     */
+    private long getMinimumDurationMillis() {
+        return (long) (MIN_EVENT_HEIGHT * DateUtils.MINUTE_IN_MILLIS / (mCellHeight / 60.0f));
+    }
+
+    /**
+     * Returns the number of events that were added, removed or changed
+     * according to the matches from {@link Event#matchUnchangedEvents}.
+     */
+    private static int countChanges(int[] matches, int oldCount) {
+        int changes = oldCount;
+        for (int match : matches) {
+            if (match < 0) {
+                changes++;
+            } else {
+                changes--;
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Copies the text layouts of the current events that are unchanged in
+     * newEvents, so only the events that changed are laid out again.
+     */
+    private void reuseLayouts(int[] matches, ArrayList<Event> newEvents,
+            StaticLayout[] layouts, StaticLayout[] allDayLayouts) {
+        final ArrayList<Event> oldEvents = mEvents;
+        // The all-day layouts are indexed by position in the all-day list
+        final int[] oldAllDayIndex = new int[oldEvents.size()];
+        int allDayCount = 0;
+        for (int j = 0; j < oldAllDayIndex.length; j++) {
+            oldAllDayIndex[j] = oldEvents.get(j).drawAsAllday() ? allDayCount++ : -1;
+        }
+
+        int allDayIndex = 0;
+        for (int i = 0; i < matches.length; i++) {
+            boolean allDay = newEvents.get(i).drawAsAllday();
+            int j = matches[i];
+            if (j >= 0) {
+                if (allDay) {
+                    int oldIndex = oldAllDayIndex[j];
+                    if (mAllDayLayouts != null && oldIndex < mAllDayLayouts.length) {
+                        allDayLayouts[allDayIndex] = mAllDayLayouts[oldIndex];
+                    }
+                } else if (mLayouts != null && j < mLayouts.length) {
+                    layouts[i] = mLayouts[j];
+                }
+            }
+            if (allDay) {
+                allDayIndex++;
+            }
+        }
+    }
+
+    /**
+     * Returns the events of a previous load to the pool, except for the ones
+     * this view still holds on to.
+     */
+    private void recycleEvents(ArrayList<Event> events) {
+        // The selection is recomputed for the new events on the next draw
+        mSelectedEvents.clear();
+        for (int i = events.size() - 1; i >= 0; i--) {
+            Event e = events.get(i);
+            if (e != mSelectedEvent && e != mPrevSelectedEvent && e != mClickedEvent
+                    && e != mSavedClickedEvent && e != mSelectedEventForAccessibility
+                    && e != mLastSelectedEventForAccessibility) {
+                e.recycle();
+            }
+        }
+        events.clear();
+    }
+
     private final Runnable mCancelCallback = new Runnable() {
         public void run() {
             clearCachedEvents();
@@ -2019,7 +2203,7 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         mSelectedEvents.clear();
 
         // The start date is the beginning of the week at 12am
-        Time weekStart = new Time(Utils.getTimeZone(mContext, mTZUpdater));
+        Time weekStart = mReloadWeekStart;
         weekStart.set(mBaseDate);
         weekStart.hour = 0;
         weekStart.minute = 0;
@@ -2034,47 +2218,56 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
 
         // load events in the background
 //        mContext.startProgressSpinner();
-        final ArrayList<Event> events = new ArrayList<Event>();
+        final LoadedEvents loaded = new LoadedEvents();
+        final ArrayList<Event> events = loaded.events;
+        final int firstJulianDay = mFirstJulianDay;
+        final int numDays = mNumDays;
+        // Only position the events up front if the cell height is known
+        final long minimumDurationMillis = mCellHeight > 0 ? getMinimumDurationMillis() : -1;
+        // Only lay out the event text up front if the width is known
+        final int[] dayLefts = mViewWidth > 0 ? computeDayLeftPositions() : null;
+        final Paint textPaint = new Paint(mEventTextPaint);
+        final int textColor = mEventTextColor;
+        PerfLog.loadRequested(PerfLog.VIEW_DAY);
         mEventLoader.loadEventsInBackground(mNumDays, events, mFirstJulianDay, new Runnable() {
 
             public void run() {
-                boolean fadeinEvents = mFirstJulianDay != mLoadedFirstJulianDay;
-                mEvents = events;
-                mLoadedFirstJulianDay = mFirstJulianDay;
-                if (mAllDayEvents == null) {
-                    mAllDayEvents = new ArrayList<Event>();
-                } else {
-                    mAllDayEvents.clear();
+                // Runs on the loader thread
+                loaded.compute(firstJulianDay, numDays, minimumDurationMillis);
+                if (dayLefts != null) {
+                    loaded.prefillLayouts(mEventLayoutCache, dayLefts, textPaint, textColor);
                 }
+            }
+        }, new Runnable() {
 
-                // Create a shorter array for all day events
-                for (Event e : events) {
-                    if (e.drawAsAllday()) {
-                        mAllDayEvents.add(e);
+            public void run() {
+                PerfLog.loadFinished(PerfLog.VIEW_DAY);
+                boolean fadeinEvents = mFirstJulianDay != mLoadedFirstJulianDay;
+                // When the same range is reloaded, such as after a sync,
+                // pair the new events up with the ones already shown
+                int[] matches = null;
+                if (!fadeinEvents) {
+                    matches = Event.matchUnchangedEvents(mEvents, events);
+                    if (countChanges(matches, mEvents.size()) == 0) {
+                        // Nothing in this view changed, so keep the current
+                        // events along with their positions and layouts
+                        Event.recycleAll(events);
+                        mComputeSelectedEvents = true;
+                        invalidate();
+                        return;
                     }
                 }
 
-                // New events, new layouts
-                if (mLayouts == null || mLayouts.length < events.size()) {
-                    mLayouts = new StaticLayout[events.size()];
-                } else {
-                    Arrays.fill(mLayouts, null);
-                }
+                showLoadedEvents(loaded, matches);
 
-                if (mAllDayLayouts == null || mAllDayLayouts.length < mAllDayEvents.size()) {
-                    mAllDayLayouts = new StaticLayout[events.size()];
-                } else {
-                    Arrays.fill(mAllDayLayouts, null);
-                }
-
-                computeEventRelations();
-
-                mRemeasure = true;
-                mComputeSelectedEvents = true;
-                recalc();
-
-                // Start animation to cross fade the events
-                if (fadeinEvents) {
+                final View currentView = mViewSwitcher.getCurrentView();
+                if (currentView != null && currentView != DayView.this) {
+                    // The other view draws this one while it is dragged in,
+                    // so show the events at once rather than fading them in
+                    stopEventsAnimation();
+                    currentView.invalidate();
+                } else if (fadeinEvents) {
+                    // Start animation to cross fade the events
                     if (mEventsCrossFadeAnimation == null) {
                         mEventsCrossFadeAnimation =
                                 ObjectAnimator.ofInt(DayView.this, "EventsAlpha", 0, 255);
@@ -2088,9 +2281,65 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         }, mCancelCallback);
     }
 
+    /**
+     * Swaps in events loaded for this view, along with everything computed
+     * for them on the loader thread.
+     *
+     * @param matches The events already shown that the new ones match, from
+     *            {@link Event#matchUnchangedEvents}, or null
+     */
+    private void showLoadedEvents(LoadedEvents loaded, int[] matches) {
+        mSnapshotValid = false;
+        if (loaded.firstJulianDay != mFirstJulianDay || loaded.numDays != mNumDays) {
+            // The view moved to another range after the load finished
+            loaded.compute(mFirstJulianDay, mNumDays, getMinimumDurationMillis());
+        }
+        final ArrayList<Event> events = loaded.events;
+        final ArrayList<Event> allDayEvents = loaded.allDayEvents;
+
+        // New events, new layouts, except for the unchanged events
+        StaticLayout[] layouts = new StaticLayout[events.size()];
+        StaticLayout[] allDayLayouts = new StaticLayout[allDayEvents.size()];
+        if (matches != null) {
+            reuseLayouts(matches, events, layouts, allDayLayouts);
+        }
+
+        recycleEvents(mEvents);
+        mEvents = events;
+        mAllDayEvents = allDayEvents;
+        mAllDayLanes = loaded.allDayLanes;
+        mTimedEventIndex = loaded.timedIndex;
+        mLayouts = layouts;
+        mAllDayLayouts = allDayLayouts;
+        mLoadedFirstJulianDay = mFirstJulianDay;
+        mEarliestStartHour = loaded.earliestStartHour;
+        mHasAllDayEvent = loaded.hasAllDayEvent;
+        mMaxAlldayEvents = loaded.maxAllDayEvents;
+        mPositionsMinDurationMillis = loaded.minimumDurationMillis;
+        initAllDayHeights();
+
+        mRemeasure = true;
+        mComputeSelectedEvents = true;
+        recalc();
+    }
+
+    /**
+     * Shows events as if they had just been loaded for the days shown,
+     * without fading them in, so tests don't depend on the provider.
+     */
+    // VisibleForTesting
+    void setEventsForTest(ArrayList<Event> events) {
+        final LoadedEvents loaded = new LoadedEvents();
+        loaded.events.addAll(events);
+        loaded.compute(mFirstJulianDay, mNumDays, getMinimumDurationMillis());
+        showLoadedEvents(loaded, null);
+        stopEventsAnimation();
+        invalidate();
+    }
+
     public void setEventsAlpha(int alpha) {
         mEventsAlpha = alpha;
-        invalidate();
+        invalidateContent();
     }
 
     public int getEventsAlpha() {
@@ -2104,75 +2353,178 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         mEventsAlpha = 255;
     }
 
-    private void computeEventRelations() {
-        // Compute the layout relation between each event before measuring cell
-        // width, as the cell width should be adjusted along with the relation.
-        //
-        // Examples: A (1:00pm - 1:01pm), B (1:02pm - 2:00pm)
-        // We should mark them as "overwapped". Though they are not overwapped logically, but
-        // minimum cell height implicitly expands the cell height of A and it should look like
-        // (1:00pm - 1:15pm) after the cell height adjustment.
-
-        // Compute the space needed for the all-day events, if any.
-        // Make a pass over all the events, and keep track of the maximum
-        // number of all-day events in any one day.  Also, keep track of
-        // the earliest event in each day.
-        int maxAllDayEvents = 0;
-        final ArrayList<Event> events = mEvents;
-        final int len = events.size();
-        // Num of all-day-events on each day.
-        final int eventsCount[] = new int[mLastJulianDay - mFirstJulianDay + 1];
-        Arrays.fill(eventsCount, 0);
-        for (int ii = 0; ii < len; ii++) {
-            Event event = events.get(ii);
-            if (event.startDay > mLastJulianDay || event.endDay < mFirstJulianDay) {
-                continue;
-            }
-            if (event.drawAsAllday()) {
-                // Count all the events being drawn as allDay events
-                final int firstDay = Math.max(event.startDay, mFirstJulianDay);
-                final int lastDay = Math.min(event.endDay, mLastJulianDay);
-                for (int day = firstDay; day <= lastDay; day++) {
-                    final int count = ++eventsCount[day - mFirstJulianDay];
-                    if (maxAllDayEvents < count) {
-                        maxAllDayEvents = count;
-                    }
+    /**
+     * The events loaded for a range along with everything derived from them
+     * that doesn't depend on the view's measurements, so it can be computed
+     * on the loader thread and swapped in at once.
+     */
+    private static final class LoadedEvents {
+        final ArrayList<Event> events = new ArrayList<Event>();
+        final ArrayList<Event> allDayEvents = new ArrayList<Event>();
+        int firstJulianDay;
+        int numDays;
+        // What the positions were computed with, or -1 if they weren't
+        long minimumDurationMillis;
+        int maxAllDayEvents;
+        int[] earliestStartHour;
+        boolean[] hasAllDayEvent;
+        final TimedEventIndex timedIndex = new TimedEventIndex();
+        final AllDayLanes allDayLanes = new AllDayLanes();
+
+        void compute(int firstJulianDay, int numDays, long minimumDurationMillis) {
+            this.firstJulianDay = firstJulianDay;
+            this.numDays = numDays;
+            this.minimumDurationMillis = minimumDurationMillis;
+            earliestStartHour = new int[numDays];
+            Arrays.fill(earliestStartHour, 25);  // some big number
+            hasAllDayEvent = new boolean[numDays];
+
+            // Create a shorter array for all day events
+            allDayEvents.clear();
+            for (Event e : events) {
+                if (e.drawAsAllday()) {
+                    allDayEvents.add(e);
                 }
+            }
+
+            computeEventRelations();
+            timedIndex.build(events, firstJulianDay, numDays);
+            if (minimumDurationMillis >= 0) {
+                Event.computePositions(events, minimumDurationMillis);
+            } else {
+                // The lanes need the all-day positions, which are the same
+                // whatever the cell height turns out to be
+                Event.computeAllDayPositions(events);
+            }
+            allDayLanes.build(allDayEvents, firstJulianDay, numDays);
+        }
 
-                int daynum = event.startDay - mFirstJulianDay;
-                int durationDays = event.endDay - event.startDay + 1;
-                if (daynum < 0) {
-                    durationDays += daynum;
-                    daynum = 0;
+        /**
+         * Lays out the text of the events in the layout cache at the widths
+         * they are going to be drawn at, so the first draw doesn't have to.
+         * dayLefts holds the left edge of each day column followed by the
+         * right edge of the last one.
+         */
+        void prefillLayouts(EventLayoutCache cache, int[] dayLefts, Paint paint, int textColor) {
+            final int lastJulianDay = firstJulianDay + numDays - 1;
+            for (Event event : events) {
+                if (event.startDay > lastJulianDay || event.endDay < firstJulianDay) {
+                    continue;
                 }
-                if (daynum + durationDays > mNumDays) {
-                    durationDays = mNumDays - daynum;
+                final int startIndex = Math.max(event.startDay, firstJulianDay) - firstJulianDay;
+                int width;
+                if (event.drawAsAllday()) {
+                    // Same as drawAllDayEvents
+                    int endIndex = Math.min(event.endDay, lastJulianDay) - firstJulianDay;
+                    width = dayLefts[endIndex + 1] - DAY_GAP - dayLefts[startIndex];
+                    width = getTextWidth(width,
+                            EVENT_ALL_DAY_TEXT_LEFT_MARGIN + EVENT_ALL_DAY_TEXT_RIGHT_MARGIN);
+                } else if (minimumDurationMillis >= 0 && event.getMaxColumns() > 0) {
+                    // Same as drawEvents and EventGeometry.computeEventRect, on
+                    // the day the event starts
+                    int left = dayLefts[startIndex] + 1;
+                    int cellWidth = dayLefts[startIndex + 1] - left + 1;
+                    int maxCols = event.getMaxColumns();
+                    float colWidth = (float) (cellWidth - (maxCols + 1) * DAY_GAP) / maxCols;
+                    float eventLeft = left + event.getColumn() * (colWidth + DAY_GAP);
+                    width = (int) (eventLeft + colWidth) - (int) eventLeft;
+                    width = getTextWidth(width, EVENT_TEXT_LEFT_MARGIN + EVENT_TEXT_RIGHT_MARGIN);
+                } else {
+                    continue;
                 }
-                for (int day = daynum; durationDays > 0; day++, durationDays--) {
-                    mHasAllDayEvent[day] = true;
+                if (width >= MIN_CELL_WIDTH_FOR_TEXT) {
+                    cache.getLayout(event, width, paint, textColor);
                 }
-            } else {
-                int daynum = event.startDay - mFirstJulianDay;
-                int hour = event.startTime / 60;
-                if (daynum >= 0 && hour < mEarliestStartHour[daynum]) {
-                    mEarliestStartHour[daynum] = hour;
+            }
+        }
+
+        /**
+         * Returns the width of the text area of an event rectangle the way
+         * drawEventRect and setupTextRect compute it.
+         */
+        private static int getTextWidth(int rectWidth, int textMargins) {
+            int width = rectWidth - EVENT_RECT_LEFT_MARGIN - EVENT_RECT_RIGHT_MARGIN;
+            return width > textMargins ? width - textMargins : width;
+        }
+
+        private void computeEventRelations() {
+            final int lastJulianDay = firstJulianDay + numDays - 1;
+            // Compute the layout relation between each event before measuring cell
+            // width, as the cell width should be adjusted along with the relation.
+            //
+            // Examples: A (1:00pm - 1:01pm), B (1:02pm - 2:00pm)
+            // We should mark them as "overwapped". Though they are not overwapped logically, but
+            // minimum cell height implicitly expands the cell height of A and it should look like
+            // (1:00pm - 1:15pm) after the cell height adjustment.
+
+            // Compute the space needed for the all-day events, if any.
+            // Make a pass over all the events, and keep track of the maximum
+            // number of all-day events in any one day.  Also, keep track of
+            // the earliest event in each day.
+            int maxAllDayEvents = 0;
+            final ArrayList<Event> events = this.events;
+            final int len = events.size();
+            // Num of all-day-events on each day.
+            final int eventsCount[] = new int[lastJulianDay - firstJulianDay + 1];
+            Arrays.fill(eventsCount, 0);
+            for (int ii = 0; ii < len; ii++) {
+                Event event = events.get(ii);
+                if (event.startDay > lastJulianDay || event.endDay < firstJulianDay) {
+                    continue;
                 }
+                if (event.drawAsAllday()) {
+                    // Count all the events being drawn as allDay events
+                    final int firstDay = Math.max(event.startDay, firstJulianDay);
+                    final int lastDay = Math.min(event.endDay, lastJulianDay);
+                    for (int day = firstDay; day <= lastDay; day++) {
+                        final int count = ++eventsCount[day - firstJulianDay];
+                        if (maxAllDayEvents < count) {
+                            maxAllDayEvents = count;
+                        }
+                    }
+
+                    int daynum = event.startDay - firstJulianDay;
+                    int durationDays = event.endDay - event.startDay + 1;
+                    if (daynum < 0) {
+                        durationDays += daynum;
+                        daynum = 0;
+                    }
+                    if (daynum + durationDays > numDays) {
+                        durationDays = numDays - daynum;
+                    }
+                    for (int day = daynum; durationDays > 0; day++, durationDays--) {
+                        hasAllDayEvent[day] = true;
+                    }
+                } else {
+                    int daynum = event.startDay - firstJulianDay;
+                    int hour = event.startTime / 60;
+                    if (daynum >= 0 && hour < earliestStartHour[daynum]) {
+                        earliestStartHour[daynum] = hour;
+                    }
 
-                // Also check the end hour in case the event spans more than
-                // one day.
-                daynum = event.endDay - mFirstJulianDay;
-                hour = event.endTime / 60;
-                if (daynum < mNumDays && hour < mEarliestStartHour[daynum]) {
-                    mEarliestStartHour[daynum] = hour;
+                    // Also check the end hour in case the event spans more than
+                    // one day.
+                    daynum = event.endDay - firstJulianDay;
+                    hour = event.endTime / 60;
+                    if (daynum < numDays && hour < earliestStartHour[daynum]) {
+                        earliestStartHour[daynum] = hour;
+                    }
                 }
             }
+            this.maxAllDayEvents = maxAllDayEvents;
         }
-        mMaxAlldayEvents = maxAllDayEvents;
-        initAllDayHeights();
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
+        final long frameStart = PerfLog.start();
+        DrawAllocationTracker.beginFrame();
+        if (mDrawFromSnapshot && !mDrawingSnapshot && drawSnapshot(canvas)) {
+            DrawAllocationTracker.endFrame(TAG);
+            PerfLog.frameDrawn(PerfLog.VIEW_DAY, frameStart);
+            PerfLog.drawnWithData(PerfLog.VIEW_DAY);
+            return;
+        }
         if (mRemeasure) {
             remeasure(getWidth(), getHeight());
             mRemeasure = false;
@@ -2191,7 +2543,9 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         canvas.save();
         canvas.clipRect(dest);
         // Draw the movable part of the view
-        doDraw(canvas);
+        if (!mZooming || !drawZoomLayer(canvas)) {
+            doDraw(canvas);
+        }
         // restore to having no clip
         canvas.restore();
 
@@ -2204,14 +2558,20 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
             }
             // Move the canvas around to prep it for the next view
             // specifically, shift it by a screen and undo the
-            // yTranslation which will be redone in the nextView's onDraw().
+            // yTranslation.
             canvas.translate(xTranslate, -yTranslate);
             DayView nextView = (DayView) mViewSwitcher.getNextView();
 
-            // Prevent infinite recursive calls to onDraw().
-            nextView.mTouchMode = TOUCH_MODE_INITIAL_STATE;
-
-            nextView.onDraw(canvas);
+            // Draw the next view from its snapshot, which is only redrawn
+            // when the next view changes, so dragging costs the same however
+            // many events either view shows
+            if (!nextView.drawSnapshot(canvas)) {
+                // Prevent infinite recursive calls to onDraw().
+                nextView.mTouchMode = TOUCH_MODE_INITIAL_STATE;
+                nextView.mDrawingSnapshot = true;
+                nextView.onDraw(canvas);
+                nextView.mDrawingSnapshot = false;
+            }
             // Move it back for this view
             canvas.translate(-xTranslate, 0);
         } else {
@@ -2248,6 +2608,11 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
             }
         }
         canvas.restore();
+        DrawAllocationTracker.endFrame(TAG);
+        if (!mDrawingSnapshot) {
+            PerfLog.frameDrawn(PerfLog.VIEW_DAY, frameStart);
+            PerfLog.drawnWithData(PerfLog.VIEW_DAY);
+        }
     }
 
     private void drawAfterScroll(Canvas canvas) {
@@ -2261,7 +2626,7 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         }
 
         drawScrollLine(r, canvas, p);
-        drawDayHeaderLoop(r, canvas, p);
+        drawDayHeaderLayer(r, canvas, p);
 
         // Draw the AM and PM indicators if we're in 12 hour mode
         if (!mIs24HourFormat) {
@@ -2299,6 +2664,16 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         p.setAntiAlias(true);
     }
 
+    // Computes the x positions for the left side of every day and the right
+    // side of the last one
+    private int[] computeDayLeftPositions() {
+        int[] lefts = new int[mNumDays + 1];
+        for (int day = 0; day <= mNumDays; day++) {
+            lefts[day] = computeDayLeftPosition(day);
+        }
+        return lefts;
+    }
+
     // Computes the x position for the left side of the given day (base 0)
     private int computeDayLeftPosition(int day) {
         int effectiveWidth = mViewWidth - mHoursWidth;
@@ -2357,6 +2732,379 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         }
     }
 
+    /**
+     * Draws this view, as it is when not scrolled sideways, from the shared
+     * snapshot, first drawing the snapshot if it shows the other view or
+     * anything it shows changed since. Returns false if the events are
+     * fading in, which a snapshot would freeze, or if the snapshot doesn't
+     * fit in the layer budget.
+     */
+    private boolean drawSnapshot(Canvas canvas) {
+        if (mViewWidth <= 0 || mViewHeight <= 0) {
+            return false;
+        }
+        if (mEventsCrossFadeAnimation != null && mEventsCrossFadeAnimation.isRunning()) {
+            return false;
+        }
+        Bitmap snapshot = sSnapshot;
+        if (snapshot == null || snapshot.getWidth() != mViewWidth
+                || snapshot.getHeight() != mViewHeight) {
+            releaseSnapshot();
+            snapshot = createLayer(mViewWidth, mViewHeight, "snapshot");
+            if (snapshot == null) {
+                return false;
+            }
+            sSnapshot = snapshot;
+        }
+
+        if (sSnapshotOwner != this || !mSnapshotValid) {
+            Canvas snapshotCanvas = sSnapshotCanvas;
+            if (snapshotCanvas == null) {
+                snapshotCanvas = sSnapshotCanvas = new Canvas();
+            }
+            snapshot.eraseColor(Color.TRANSPARENT);
+            snapshotCanvas.setBitmap(snapshot);
+            final int touchMode = mTouchMode;
+            final int viewStartX = mViewStartX;
+            mTouchMode = TOUCH_MODE_INITIAL_STATE;
+            mViewStartX = 0;
+            mDrawingSnapshot = true;
+            onDraw(snapshotCanvas);
+            mDrawingSnapshot = false;
+            mTouchMode = touchMode;
+            mViewStartX = viewStartX;
+            snapshotCanvas.setBitmap(null);
+            sSnapshotOwner = this;
+            mSnapshotValid = true;
+        }
+        canvas.drawBitmap(snapshot, 0, 0, null);
+        return true;
+    }
+
+    /**
+     * Returns the zoom bucket nearest to cellHeight.
+     */
+    private static int getZoomBucket(float cellHeight) {
+        int steps = Math.round((float) (Math.log(cellHeight / mMinCellHeight)
+                / Math.log(ZOOM_BUCKET_RATIO)));
+        int bucket = (int) (mMinCellHeight * Math.pow(ZOOM_BUCKET_RATIO, Math.max(steps, 0)));
+        return Math.max(Math.min(bucket, MAX_CELL_HEIGHT), mMinCellHeight);
+    }
+
+    /**
+     * Draws the movable part of the view while zooming, by stretching the
+     * picture of it laid out at the current bucket to the zoomed height.
+     * The canvas is set up for drawing the rows at the bucket's height.
+     * Returns false if the picture doesn't fit in the layer budget.
+     */
+    private boolean drawZoomLayer(Canvas canvas) {
+        final float scale = (mZoomCellHeight + HOUR_GAP) / (mCellHeight + HOUR_GAP);
+        final int visibleHeight = mViewHeight - DAY_HEADER_HEIGHT - mAlldayHeight;
+        // The rows at the bucket's height that show when stretched
+        final int top = (int) (mZoomViewStartY / scale);
+        final int bottom = (int) Math.ceil((mZoomViewStartY + visibleHeight) / scale) + 1;
+
+        Bitmap layer = mZoomLayer;
+        if (layer == null || mZoomLayerCellHeight != mCellHeight || top < mZoomLayerTop
+                || bottom > mZoomLayerTop + layer.getHeight()) {
+            layer = buildZoomLayer(top, visibleHeight);
+            if (layer == null) {
+                return false;
+            }
+        }
+        canvas.save();
+        canvas.translate(0, mViewStartY - mZoomViewStartY);
+        canvas.scale(1, scale);
+        canvas.drawBitmap(layer, 0, mZoomLayerTop, mZoomLayerPaint);
+        canvas.restore();
+        return true;
+    }
+
+    private Bitmap buildZoomLayer(int top, int visibleHeight) {
+        if (mViewWidth <= 0 || visibleHeight <= 0) {
+            return null;
+        }
+        // Leave room for the gesture to move and zoom out to the bucket below
+        final int contentHeight = HOUR_GAP + 24 * (mCellHeight + HOUR_GAP) + 1;
+        final int margin = visibleHeight / 4;
+        final int height = Math.min(visibleHeight + 2 * margin, contentHeight);
+        top = Math.max(0, Math.min(top - margin, contentHeight - height));
+
+        Bitmap layer = mZoomLayer;
+        if (layer != null && layer.getWidth() == mViewWidth && layer.getHeight() == height) {
+            layer.eraseColor(Color.TRANSPARENT);
+        } else {
+            releaseLayer(layer);
+            mZoomLayer = null;
+            layer = createLayer(mViewWidth, height, "zoom layer");
+            if (layer == null) {
+                return null;
+            }
+        }
+        Canvas layerCanvas = mZoomLayerCanvas;
+        if (layerCanvas == null) {
+            layerCanvas = mZoomLayerCanvas = new Canvas();
+        }
+
+        // Draw the rows of the layer as if the view were tall enough to
+        // show all of them
+        final int viewStartY = mViewStartY;
+        final int viewHeight = mViewHeight;
+        final boolean computeSelectedEvents = mComputeSelectedEvents;
+        final Rect dest = mDestRect;
+        final int destTop = dest.top;
+        final int destBottom = dest.bottom;
+        mViewStartY = top;
+        mViewHeight = height + DAY_HEADER_HEIGHT + mAlldayHeight;
+        mComputeSelectedEvents = false;
+        dest.top = top;
+        dest.bottom = top + height;
+
+        layerCanvas.setBitmap(layer);
+        layerCanvas.save();
+        layerCanvas.translate(0, -top);
+        doDraw(layerCanvas);
+        layerCanvas.restore();
+        layerCanvas.setBitmap(null);
+
+        mViewStartY = viewStartY;
+        mViewHeight = viewHeight;
+        mComputeSelectedEvents = computeSelectedEvents;
+        dest.top = destTop;
+        dest.bottom = destBottom;
+
+        mZoomLayer = layer;
+        mZoomLayerTop = top;
+        mZoomLayerCellHeight = mCellHeight;
+        return layer;
+    }
+
+    /**
+     * Returns the y of the current time line, from the top of the hours.
+     */
+    private int getCurrentTimeLineY() {
+        return mCurrentTime.hour * (mCellHeight + HOUR_GAP)
+                + ((mCurrentTime.minute * mCellHeight) / 60) + 1;
+    }
+
+    /**
+     * Redraws the view after something it shows changed, and drops the
+     * snapshot of it. The whole view is invalidated: with hardware
+     * acceleration the display list is recorded again from onDraw whatever
+     * region is dirty, so narrowing it down saves nothing.
+     */
+    private void invalidateContent() {
+        mSnapshotValid = false;
+        invalidate();
+    }
+
+    /**
+     * Redraws the view for the current time line, unless today isn't shown.
+     */
+    private void invalidateCurrentTimeLine() {
+        final int todayIndex = mTodayJulianDay - mFirstJulianDay;
+        if (todayIndex >= 0 && todayIndex < mNumDays) {
+            invalidateContent();
+        }
+    }
+
+    /**
+     * Drops the cached grid and header layers, so they are drawn again with
+     * the current settings.
+     */
+    private void invalidateStaticLayers() {
+        releaseLayer(sGridLayer);
+        sGridLayer = null;
+        mHeaderLayerValid = false;
+    }
+
+    /**
+     * Creates a bitmap for one of the layers, or returns null if it would
+     * take the layers over their budget or there isn't enough memory for it.
+     */
+    private static Bitmap createLayer(int width, int height, String name) {
+        if (sLayerBytes + 4L * width * height > sLayerBudget) {
+            return null;
+        }
+        Bitmap layer;
+        try {
+            layer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        } catch (OutOfMemoryError e) {
+            Log.w(TAG, "Not enough memory for the " + name);
+            return null;
+        }
+        sLayerBytes += layer.getByteCount();
+        return layer;
+    }
+
+    /**
+     * Gives the memory of a layer dropped by its owner back to the budget.
+     * The layer isn't recycled, as a display list may still draw it.
+     */
+    private static void releaseLayer(Bitmap layer) {
+        if (layer != null) {
+            sLayerBytes -= layer.getByteCount();
+        }
+    }
+
+    /**
+     * Drops the layers this view can draw again, when the app is asked to
+     * free memory or the view is detached.
+     */
+    private void releaseLayers() {
+        invalidateStaticLayers();
+        releaseLayer(mHeaderLayer);
+        mHeaderLayer = null;
+        releaseLayer(mZoomLayer);
+        mZoomLayer = null;
+        releaseSnapshot();
+    }
+
+    private static void releaseSnapshot() {
+        releaseLayer(sSnapshot);
+        sSnapshot = null;
+        sSnapshotOwner = null;
+    }
+
+    /**
+     * Frees the memory of the layers once the system runs low on memory or
+     * the UI is hidden, as they are quick to draw again.
+     *
+     * @see android.content.ComponentCallbacks2#onTrimMemory
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            releaseLayers();
+        }
+    }
+
+    /**
+     * Draws the grid lines and hour labels from the shared grid layer,
+     * first redrawing the layer if this view's size or zoom changed or the
+     * visible hours scrolled out of it.
+     */
+    private void drawGridLayer(Rect r, Canvas canvas, Paint p) {
+        final int contentHeight = HOUR_GAP + 24 * (mCellHeight + HOUR_GAP) + 1;
+        final int viewTop = Math.max(mViewStartY, 0);
+        final int viewBottom = Math.min(mViewStartY + mViewHeight, contentHeight);
+
+        Bitmap layer = sGridLayer;
+        if (layer == null || sGridLayerWidth != mViewWidth
+                || sGridLayerCellHeight != mCellHeight || sGridLayerNumDays != mNumDays
+                || sGridLayerHoursWidth != mHoursWidth || sGridLayerHourStrs != mHourStrs
+                || viewTop < sGridLayerTop || viewBottom > sGridLayerTop + layer.getHeight()) {
+            layer = buildGridLayer(r, p, viewTop, contentHeight);
+        }
+        if (layer == null) {
+            drawGridBackground(r, canvas, p);
+            drawHours(r, canvas, p);
+            return;
+        }
+        canvas.drawBitmap(layer, 0, sGridLayerTop, null);
+    }
+
+    private Bitmap buildGridLayer(Rect r, Paint p, int viewTop, int contentHeight) {
+        if (mViewWidth <= 0 || mViewHeight <= 0) {
+            return null;
+        }
+        // Leave room for scrolling a couple of hours either way
+        final int margin = 2 * (mCellHeight + HOUR_GAP);
+        final int height = Math.min(mViewHeight + 2 * margin, contentHeight);
+        final int top = Math.max(0, Math.min(viewTop - margin, contentHeight - height));
+
+        Bitmap layer = sGridLayer;
+        if (layer != null && layer.getWidth() == mViewWidth && layer.getHeight() == height) {
+            layer.eraseColor(Color.TRANSPARENT);
+        } else {
+            releaseLayer(layer);
+            sGridLayer = null;
+            layer = createLayer(mViewWidth, height, "grid layer");
+            if (layer == null) {
+                return null;
+            }
+        }
+
+        // Reuse the canvas too, as the layer is redrawn while scrolling
+        Canvas layerCanvas = sGridLayerCanvas;
+        if (layerCanvas == null) {
+            layerCanvas = sGridLayerCanvas = new Canvas();
+        }
+        layerCanvas.setBitmap(layer);
+        layerCanvas.save();
+        layerCanvas.translate(0, -top);
+        drawGridBackground(r, layerCanvas, p);
+        drawHours(r, layerCanvas, p);
+        layerCanvas.restore();
+        layerCanvas.setBitmap(null);
+
+        sGridLayer = layer;
+        sGridLayerTop = top;
+        sGridLayerWidth = mViewWidth;
+        sGridLayerCellHeight = mCellHeight;
+        sGridLayerNumDays = mNumDays;
+        sGridLayerHoursWidth = mHoursWidth;
+        sGridLayerHourStrs = mHourStrs;
+        return layer;
+    }
+
+    /**
+     * Draws the day headers from this view's header layer, redrawing the
+     * layer if the days shown or today changed.
+     */
+    private void drawDayHeaderLayer(Rect r, Canvas canvas, Paint p) {
+        if (mNumDays == 1 && ONE_DAY_HEADER_HEIGHT == 0) {
+            return;
+        }
+        final boolean lunar = LunarUtils.showLunar(mContext);
+        Bitmap layer = mHeaderLayer;
+        if (layer == null || !mHeaderLayerValid || layer.getWidth() != mViewWidth
+                || layer.getHeight() != DAY_HEADER_HEIGHT
+                || mHeaderLayerFirstJulianDay != mFirstJulianDay
+                || mHeaderLayerTodayJulianDay != mTodayJulianDay
+                || mHeaderLayerCellWidth != mCellWidth || mHeaderLayerLunar != lunar) {
+            layer = buildDayHeaderLayer(r, p);
+        }
+        if (layer == null) {
+            drawDayHeaderLoop(r, canvas, p);
+            return;
+        }
+        canvas.drawBitmap(layer, 0, 0, null);
+    }
+
+    private Bitmap buildDayHeaderLayer(Rect r, Paint p) {
+        if (mViewWidth <= 0 || DAY_HEADER_HEIGHT <= 0) {
+            return null;
+        }
+        Bitmap layer = mHeaderLayer;
+        if (layer != null && layer.getWidth() == mViewWidth
+                && layer.getHeight() == DAY_HEADER_HEIGHT) {
+            layer.eraseColor(Color.TRANSPARENT);
+        } else {
+            releaseLayer(layer);
+            mHeaderLayer = null;
+            layer = createLayer(mViewWidth, DAY_HEADER_HEIGHT, "day header layer");
+            if (layer == null) {
+                return null;
+            }
+        }
+
+        Canvas layerCanvas = mHeaderLayerCanvas;
+        if (layerCanvas == null) {
+            layerCanvas = mHeaderLayerCanvas = new Canvas();
+        }
+        layerCanvas.setBitmap(layer);
+        drawDayHeaderLoop(r, layerCanvas, p);
+        layerCanvas.setBitmap(null);
+
+        mHeaderLayer = layer;
+        mHeaderLayerValid = true;
+        mHeaderLayerFirstJulianDay = mFirstJulianDay;
+        mHeaderLayerTodayJulianDay = mTodayJulianDay;
+        mHeaderLayerCellWidth = mCellWidth;
+        mHeaderLayerLunar = LunarUtils.showLunar(mContext);
+        return layer;
+    }
+
     private void drawDayHeaderLoop(Rect r, Canvas canvas, Paint p) {
         // Draw the horizontal day background banner
         // p.setColor(mCalendarDateBannerBackground);
@@ -2388,10 +3136,7 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
 
         p.setAntiAlias(true);
         for (int day = 0; day < mNumDays; day++, cell++) {
-            int dayOfWeek = day + mFirstVisibleDayOfWeek;
-            if (dayOfWeek >= 14) {
-                dayOfWeek -= 14;
-            }
+            int dayOfWeek = (day + mFirstVisibleDayOfWeek) % 7;
 
             int color = mCalendarDateBannerTextColor;
             if (mNumDays == 1) {
@@ -2461,22 +3206,32 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         if (mFutureBgColor != 0) {
             drawBgColors(r, canvas, p);
         }
-        drawGridBackground(r, canvas, p);
-        drawHours(r, canvas, p);
+        drawGridLayer(r, canvas, p);
 
-        // Draw each day
+        // Draw each day that is at least partly inside the clip. The clip
+        // only leaves days out while the view is dragged sideways, when the
+        // days moved off the screen are skipped. The selected day is always
+        // looked at when the selected events are to be found.
+        final Rect clip = mClipBounds;
+        if (!canvas.getClipBounds(clip)) {
+            clip.setEmpty();
+        }
         int cell = mFirstJulianDay;
         p.setAntiAlias(false);
         int alpha = p.getAlpha();
         p.setAlpha(mEventsAlpha);
         for (int day = 0; day < mNumDays; day++, cell++) {
+            if ((computeDayLeftPosition(day + 1) < clip.left
+                    || computeDayLeftPosition(day) > clip.right)
+                    && !(mComputeSelectedEvents && cell == mSelectionDay)) {
+                continue;
+            }
             // TODO Wow, this needs cleanup. drawEvents loop through all the
             // events on every call.
             drawEvents(cell, day, HOUR_GAP, canvas, p);
             // If this is today
             if (cell == mTodayJulianDay) {
-                int lineY = mCurrentTime.hour * (mCellHeight + HOUR_GAP)
-                        + ((mCurrentTime.minute * mCellHeight) / 60) + 1;
+                int lineY = getCurrentTimeLineY();
 
                 // And the current time shows up somewhere on the screen
                 if (lineY >= mViewStartY && lineY < mViewStartY + mViewHeight - 2) {
@@ -2564,7 +3319,7 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
 
         int todayIndex = mTodayJulianDay - mFirstJulianDay;
         // Draw day of the month
-        String dateNumStr = String.valueOf(dateNum);
+        String dateNumStr = sDateNumStrs[dateNum];
         if (mNumDays > 1) {
             float y = DAY_HEADER_HEIGHT - DAY_HEADER_BOTTOM_MARGIN;
             if (LunarUtils.showLunar(mContext)) {
@@ -2580,7 +3335,7 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
             canvas.drawText(dateNumStr, x, y, p);
 
             // Draw day of the week
-            int dateX = (int) (x - p.measureText(" " + dateNumStr));
+            int dateX = (int) (x - p.measureText(sSpacedDateNumStrs[dateNum]));
             p.setTextSize(DAY_HEADER_FONT_SIZE);
             p.setTypeface(Typeface.DEFAULT);
             canvas.drawText(dayStr, dateX, y, p);
@@ -2689,8 +3444,7 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         // Draw background for grid area
         if (mNumDays == 1 && todayIndex == 0) {
             // Draw a white background for the time later than current time
-            int lineY = mCurrentTime.hour * (mCellHeight + HOUR_GAP)
-                    + ((mCurrentTime.minute * mCellHeight) / 60) + 1;
+            int lineY = getCurrentTimeLineY();
             if (lineY < mViewStartY + mViewHeight) {
                 lineY = Math.max(lineY, mViewStartY);
                 r.left = mHoursWidth;
@@ -2702,8 +3456,7 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
             }
         } else if (todayIndex >= 0 && todayIndex < mNumDays) {
             // Draw today with a white background for the time later than current time
-            int lineY = mCurrentTime.hour * (mCellHeight + HOUR_GAP)
-                    + ((mCurrentTime.minute * mCellHeight) / 60) + 1;
+            int lineY = getCurrentTimeLineY();
             if (lineY < mViewStartY + mViewHeight) {
                 lineY = Math.max(lineY, mViewStartY);
                 r.left = computeDayLeftPosition(todayIndex) + 1;
@@ -2788,7 +3541,7 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
     }
 
     private Rect getCurrentSelectionPosition() {
-        Rect box = new Rect();
+        Rect box = mSelectionBox;
         box.top = mSelectionHour * (mCellHeight + HOUR_GAP);
         box.bottom = box.top + mCellHeight + HOUR_GAP;
         int daynum = mSelectionDay - mFirstJulianDay;
@@ -2844,39 +3597,8 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         // Check if we have already initialized the StaticLayout and that
         // the width hasn't changed (due to vertical resizing which causes
         // re-layout of events at min height)
-        if (layout == null || r.width() != layout.getWidth()) {
-            SpannableStringBuilder bob = new SpannableStringBuilder();
-            if (event.title != null) {
-                // MAX - 1 since we add a space
-                bob.append(drawTextSanitizer(event.title.toString(), MAX_EVENT_TEXT_LEN - 1));
-                bob.setSpan(new StyleSpan(android.graphics.Typeface.BOLD), 0, bob.length(), 0);
-                bob.append(' ');
-            }
-            if (event.location != null) {
-                bob.append(drawTextSanitizer(event.location.toString(),
-                        MAX_EVENT_TEXT_LEN - bob.length()));
-            }
-
-            switch (event.selfAttendeeStatus) {
-                case Attendees.ATTENDEE_STATUS_INVITED:
-                    paint.setColor(event.color);
-                    break;
-                case Attendees.ATTENDEE_STATUS_DECLINED:
-                    paint.setColor(mEventTextColor);
-                    paint.setAlpha(Utils.DECLINED_EVENT_TEXT_ALPHA);
-                    break;
-                case Attendees.ATTENDEE_STATUS_NONE: // Your own events
-                case Attendees.ATTENDEE_STATUS_ACCEPTED:
-                case Attendees.ATTENDEE_STATUS_TENTATIVE:
-                default:
-                    paint.setColor(mEventTextColor);
-                    break;
-            }
-
-            // Leave a one pixel boundary on the left and right of the rectangle for the event
-            layout = new StaticLayout(bob, 0, bob.length(), new TextPaint(paint), r.width(),
-                    Alignment.ALIGN_NORMAL, 1.0f, 0.0f, true, null, r.width());
-
+        if (layout == null || EventLayoutCache.getBucketWidth(r.width()) != layout.getWidth()) {
+            layout = mEventLayoutCache.getLayout(event, r.width(), paint, mEventTextColor);
             layouts[i] = layout;
         }
         layout.getPaint().setAlpha(mEventsAlpha);
@@ -2884,6 +3606,10 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
     }
 
     private void drawAllDayEvents(int firstDay, int numDays, Canvas canvas, Paint p) {
+        final Rect clip = mClipBounds;
+        if (!canvas.getClipBounds(clip)) {
+            clip.setEmpty();
+        }
 
         p.setTextSize(NORMAL_FONT_SIZE);
         p.setTextAlign(Paint.Align.LEFT);
@@ -2918,7 +3644,7 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         int y = DAY_HEADER_HEIGHT + ALLDAY_TOP_MARGIN;
         int lastDay = firstDay + numDays - 1;
         final ArrayList<Event> events = mAllDayEvents;
-        int numEvents = events.size();
+        final AllDayLanes lanes = mAllDayLanes;
         // Whether or not we should draw the more events text
         boolean hasMoreEvents = false;
         // size of the allDay area
@@ -2927,8 +3653,6 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         float numRectangles = mMaxAlldayEvents;
         // Where to cut off drawn allday events
         int allDayEventClip = DAY_HEADER_HEIGHT + mAlldayHeight + ALLDAY_TOP_MARGIN;
-        // The number of events that weren't drawn in each day
-        mSkippedAlldayEvents = new int[numDays];
         if (mMaxAlldayEvents > mMaxUnexpandedAlldayEventCount && !mShowAllAllDayEvents &&
                 mAnimateDayHeight == 0) {
             // We draw one fewer event than will fit so that more events text
@@ -2941,76 +3665,90 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
             // clip at the end of the animating space
             allDayEventClip = DAY_HEADER_HEIGHT + mAnimateDayHeight + ALLDAY_TOP_MARGIN;
         }
+        float height = mMaxAlldayEvents > mMaxUnexpandedAlldayEventCount ? mAnimateDayEventHeight :
+                drawHeight / numRectangles;
+        // Prevent a single event from getting too big
+        if (height > MAX_HEIGHT_OF_ONE_ALLDAY_EVENT) {
+            height = MAX_HEIGHT_OF_ONE_ALLDAY_EVENT;
+        }
 
-        int alpha = eventTextPaint.getAlpha();
-        eventTextPaint.setAlpha(mEventsAlpha);
-        for (int i = 0; i < numEvents; i++) {
-            Event event = events.get(i);
-            int startDay = event.startDay;
-            int endDay = event.endDay;
-            if (startDay > lastDay || endDay < firstDay) {
-                continue;
-            }
-            if (startDay < firstDay) {
-                startDay = firstDay;
-            }
-            if (endDay > lastDay) {
-                endDay = lastDay;
+        // Find the lanes to draw. We skip the lanes that start after the clip
+        // bound or, when there is more events text to make room for, end
+        // after it.
+        final int numLanes = lanes.getNumLanes();
+        int shownLanes = numLanes;
+        if (mMaxAlldayEvents > mMaxUnexpandedAlldayEventCount) {
+            shownLanes = 0;
+            while (shownLanes < numLanes) {
+                float top = y + height * shownLanes;
+                if (top >= allDayEventClip || (hasMoreEvents
+                        && top + height - ALL_DAY_EVENT_RECT_BOTTOM_MARGIN > allDayEventClip)) {
+                    break;
+                }
+                shownLanes++;
             }
-            int startIndex = startDay - firstDay;
-            int endIndex = endDay - firstDay;
-            float height = mMaxAlldayEvents > mMaxUnexpandedAlldayEventCount ? mAnimateDayEventHeight :
-                    drawHeight / numRectangles;
+        }
+        mShownAllDayLanes = shownLanes;
 
-            // Prevent a single event from getting too big
-            if (height > MAX_HEIGHT_OF_ONE_ALLDAY_EVENT) {
-                height = MAX_HEIGHT_OF_ONE_ALLDAY_EVENT;
-            }
+        // And the days inside the clip. The all-day area doesn't move with a
+        // drag, so this only leaves days out when the next view is drawn
+        // live beside this one, without a snapshot.
+        int firstIndex = 0;
+        while (firstIndex < numDays && computeDayLeftPosition(firstIndex + 1) < clip.left) {
+            firstIndex++;
+        }
+        int lastIndex = numDays - 1;
+        while (lastIndex >= firstIndex && computeDayLeftPosition(lastIndex) > clip.right) {
+            lastIndex--;
+        }
 
-            // Leave a one-pixel space between the vertical day lines and the
-            // event rectangle.
-            event.left = computeDayLeftPosition(startIndex);
-            event.right = computeDayLeftPosition(endIndex + 1) - DAY_GAP;
-            event.top = y + height * event.getColumn();
-            event.bottom = event.top + height - ALL_DAY_EVENT_RECT_BOTTOM_MARGIN;
-            if (mMaxAlldayEvents > mMaxUnexpandedAlldayEventCount) {
-                // check if we should skip this event. We skip if it starts
-                // after the clip bound or ends after the skip bound and we're
-                // not animating.
-                if (event.top >= allDayEventClip) {
-                    incrementSkipCount(mSkippedAlldayEvents, startIndex, endIndex);
+        int alpha = eventTextPaint.getAlpha();
+        eventTextPaint.setAlpha(mEventsAlpha);
+        for (int lane = 0; lane < shownLanes; lane++) {
+            int day = firstIndex;
+            while (day <= lastIndex) {
+                final int i = lanes.getEventIndex(day, lane);
+                if (i < 0) {
+                    day++;
                     continue;
-                } else if (event.bottom > allDayEventClip) {
-                    if (hasMoreEvents) {
-                        incrementSkipCount(mSkippedAlldayEvents, startIndex, endIndex);
-                        continue;
-                    }
-                    event.bottom = allDayEventClip;
                 }
+                Event event = events.get(i);
+                computeAllDayEventRect(event, firstDay, lastDay, y, height, allDayEventClip);
+                Rect r = drawEventRect(event, canvas, p, eventTextPaint, (int) event.top,
+                        (int) event.bottom);
+                setupAllDayTextRect(r);
+                StaticLayout layout = getEventLayout(mAllDayLayouts, i, event, eventTextPaint,
+                        r);
+                drawEventText(layout, r, canvas, r.top, r.bottom, true);
+                // Continue after the last day of this event
+                day = Math.min(event.endDay, lastDay) - firstDay + 1;
             }
-            Rect r = drawEventRect(event, canvas, p, eventTextPaint, (int) event.top,
-                    (int) event.bottom);
-            setupAllDayTextRect(r);
-            StaticLayout layout = getEventLayout(mAllDayLayouts, i, event, eventTextPaint, r);
-            drawEventText(layout, r, canvas, r.top, r.bottom, true);
-
-            // Check if this all-day event intersects the selected day
-            if (mSelectionAllday && mComputeSelectedEvents) {
-                if (startDay <= mSelectionDay && endDay >= mSelectionDay) {
+        }
+        eventTextPaint.setAlpha(alpha);
+
+        // The all-day events that intersect the selected day, whether or not
+        // the day is inside the clip
+        if (mSelectionAllday && mComputeSelectedEvents) {
+            final int day = mSelectionDay - firstDay;
+            for (int lane = 0; lane < shownLanes; lane++) {
+                final int i = lanes.getEventIndex(day, lane);
+                if (i >= 0) {
+                    Event event = events.get(i);
+                    computeAllDayEventRect(event, firstDay, lastDay, y, height, allDayEventClip);
                     mSelectedEvents.add(event);
                 }
             }
         }
-        eventTextPaint.setAlpha(alpha);
 
-        if (mMoreAlldayEventsTextAlpha != 0 && mSkippedAlldayEvents != null) {
+        if (mMoreAlldayEventsTextAlpha != 0 && shownLanes < numLanes) {
             // If the more allday text should be visible, draw it.
             alpha = p.getAlpha();
             p.setAlpha(mEventsAlpha);
             p.setColor(mMoreAlldayEventsTextAlpha << 24 & mMoreEventsTextColor);
-            for (int i = 0; i < mSkippedAlldayEvents.length; i++) {
-                if (mSkippedAlldayEvents[i] > 0) {
-                    drawMoreAlldayEvents(canvas, mSkippedAlldayEvents[i], i, p);
+            for (int day = firstIndex; day <= lastIndex; day++) {
+                final int skipped = lanes.countFrom(day, shownLanes);
+                if (skipped > 0) {
+                    drawMoreAlldayEvents(canvas, skipped, day, p);
                 }
             }
             p.setAlpha(alpha);
@@ -3027,14 +3765,36 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         }
     }
 
-    // Helper method for counting the number of allday events skipped on each day
-    private void incrementSkipCount(int[] counts, int startIndex, int endIndex) {
-        if (counts == null || startIndex < 0 || endIndex > counts.length) {
-            return;
+    /**
+     * Positions an all-day event in its lane the way drawAllDayEvents draws
+     * it, with the lanes height apart starting at top and the event cut off
+     * at clipBottom.
+     */
+    private void computeAllDayEventRect(Event event, int firstDay, int lastDay, float top,
+            float height, int clipBottom) {
+        final int startIndex = Math.max(event.startDay, firstDay) - firstDay;
+        final int endIndex = Math.min(event.endDay, lastDay) - firstDay;
+        // Leave a one-pixel space between the vertical day lines and the
+        // event rectangle.
+        event.left = computeDayLeftPosition(startIndex);
+        event.right = computeDayLeftPosition(endIndex + 1) - DAY_GAP;
+        event.top = top + height * event.getColumn();
+        event.bottom = event.top + height - ALL_DAY_EVENT_RECT_BOTTOM_MARGIN;
+        if (mMaxAlldayEvents > mMaxUnexpandedAlldayEventCount && event.bottom > clipBottom) {
+            event.bottom = clipBottom;
         }
-        for (int i = startIndex; i <= endIndex; i++) {
-            counts[i]++;
+    }
+
+    /**
+     * Returns the all-day event drawn in lane on the day at index day, or
+     * null if there is none.
+     */
+    private Event getShownAllDayEvent(int day, int lane) {
+        if (lane >= mShownAllDayLanes) {
+            return null;
         }
+        final int i = mAllDayLanes.getEventIndex(day, lane);
+        return i >= 0 ? mAllDayEvents.get(i) : null;
     }
 
     // Draws the "box +n" text for hidden allday events
@@ -3055,10 +3815,24 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         p.setAntiAlias(true);
         p.setStyle(Style.FILL);
         p.setTextSize(EVENT_TEXT_FONT_SIZE);
-        String text = mResources.getQuantityString(R.plurals.month_more_events, remainingEvents);
         y += EVENT_SQUARE_WIDTH;
         x += EVENT_SQUARE_WIDTH + EVENT_LINE_PADDING;
-        canvas.drawText(String.format(text, remainingEvents), x, y, p);
+        canvas.drawText(getMoreEventsLabel(remainingEvents), x, y, p);
+    }
+
+    private String getMoreEventsLabel(int remainingEvents) {
+        if (remainingEvents >= mMoreEventsLabels.length) {
+            mMoreEventsLabels = Arrays.copyOf(mMoreEventsLabels,
+                    Math.max(remainingEvents + 1, mMoreEventsLabels.length * 2));
+        }
+        String label = mMoreEventsLabels[remainingEvents];
+        if (label == null) {
+            String text = mResources.getQuantityString(R.plurals.month_more_events,
+                    remainingEvents);
+            label = String.format(text, remainingEvents);
+            mMoreEventsLabels[remainingEvents] = label;
+        }
+        return label;
     }
 
     private void computeAllDayNeighbors() {
@@ -3076,10 +3850,9 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
             ev.nextRight = null;
         }
 
-        // For each event in the selected event list "mSelectedEvents", find
-        // its neighbors in the up and down directions. This could be done
-        // more efficiently by sorting on the Event.getColumn() field, but
-        // the list is expected to be very small.
+        // For each event in the selected event list "mSelectedEvents", its
+        // neighbors in the up and down directions are the events drawn in
+        // the lanes above and below it on the selected day.
 
         // Find the event in the same row as the previously selected all-day
         // event, if any.
@@ -3087,6 +3860,7 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         if (mPrevSelectedEvent != null && mPrevSelectedEvent.drawAsAllday()) {
             startPosition = mPrevSelectedEvent.getColumn();
         }
+        final int day = mSelectionDay - mFirstJulianDay;
         int maxPosition = -1;
         Event startEvent = null;
         Event maxPositionEvent = null;
@@ -3099,18 +3873,8 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
                 maxPositionEvent = ev;
                 maxPosition = position;
             }
-            for (int jj = 0; jj < len; jj++) {
-                if (jj == ii) {
-                    continue;
-                }
-                Event neighbor = mSelectedEvents.get(jj);
-                int neighborPosition = neighbor.getColumn();
-                if (neighborPosition == position - 1) {
-                    ev.nextUp = neighbor;
-                } else if (neighborPosition == position + 1) {
-                    ev.nextDown = neighbor;
-                }
-            }
+            ev.nextUp = getShownAllDayEvent(day, position - 1);
+            ev.nextDown = getShownAllDayEvent(day, position + 1);
         }
         if (startEvent != null) {
             setSelectedEvent(startEvent);
@@ -3133,14 +3897,19 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         selectionArea.right = selectionArea.left + cellWidth;
 
         final ArrayList<Event> events = mEvents;
-        int numEvents = events.size();
+        final TimedEventIndex index = mTimedEventIndex;
         EventGeometry geometry = mEventGeometry;
 
         final int viewEndY = mViewStartY + mViewHeight - DAY_HEADER_HEIGHT - mAlldayHeight;
 
+        // Only look at the events that can be in the visible rows
+        final int first = index.findFirst(date, mViewStartY, top, geometry);
+        final int end = index.findEnd(date, viewEndY, top, geometry);
+
         int alpha = eventTextPaint.getAlpha();
         eventTextPaint.setAlpha(mEventsAlpha);
-        for (int i = 0; i < numEvents; i++) {
+        for (int pos = first; pos < end; pos++) {
+            final int i = index.getEventIndex(pos);
             Event event = events.get(i);
             if (!geometry.computeEventRect(date, left, top, cellWidth, event)) {
                 continue;
@@ -3561,27 +4330,6 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         return r;
     }
 
-    private final Pattern drawTextSanitizerFilter = Pattern.compile("[\t\n],");
-
-    // Sanitize a string before passing it to drawText or else we get little
-    // squares. For newlines and tabs before a comma, delete the character.
-    // Otherwise, just replace them with a space.
-    private String drawTextSanitizer(String string, int maxEventTextLen) {
-        Matcher m = drawTextSanitizerFilter.matcher(string);
-        string = m.replaceAll(",");
-
-        int len = string.length();
-        if (maxEventTextLen <= 0) {
-            string = "";
-            len = 0;
-        } else if (len > maxEventTextLen) {
-            string = string.substring(0, maxEventTextLen);
-            len = maxEventTextLen;
-        }
-
-        return string.replace('\n', ' ');
-    }
-
     private void drawEventText(StaticLayout eventLayout, Rect rect, Canvas canvas, int top,
             int bottom, boolean center) {
         // drawEmptyRect(canvas, rect, 0xFFFF00FF); // for debugging
@@ -3866,21 +4614,22 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
     // setter for the 'box +n' alpha text used by the animator
     public void setMoreAllDayEventsTextAlpha(int alpha) {
         mMoreAlldayEventsTextAlpha = alpha;
-        invalidate();
+        invalidateContent();
     }
 
     // setter for the height of the allday area used by the animator
     public void setAnimateDayHeight(int height) {
         mAnimateDayHeight = height;
         mRemeasure = true;
-        invalidate();
+        invalidateContent();
     }
 
     // setter for the height of allday events used by the animator
     public void setAnimateDayEventHeight(int height) {
+        // Only the lanes shown change, which drawAllDayEvents works out
+        // from the precomputed lanes, so nothing needs measuring again
         mAnimateDayEventHeight = height;
-        mRemeasure = true;
-        invalidate();
+        invalidateContent();
     }
 
     private void doSingleTapUp(MotionEvent ev) {
@@ -3969,7 +4718,7 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
             mController.sendEvent(this, EventType.GO_TO, startTime, endTime, -1, ViewType.CURRENT,
                     CalendarController.EXTRA_GOTO_TIME, null, null);
         }
-        invalidate();
+        invalidateContent();
     }
 
     private void doLongPress(MotionEvent ev) {
@@ -4131,6 +4880,8 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
             mTouchMode = TOUCH_MODE_INITIAL_STATE;
             if (DEBUG) Log.d(TAG, "doFling: velocityX " + velocityX);
             int deltaX = (int) e2.getX() - (int) e1.getX();
+            // Prefetch past the view we're flinging to first
+            mEventLoader.setPrefetchDirection(deltaX < 0);
             switchViews(deltaX < 0, mViewStartX, mViewWidth, velocityX);
             mViewStartX = 0;
             return;
@@ -4186,6 +4937,7 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         date.normalize(true /* ignore isDst */);
         initView(view);
         view.layout(getLeft(), getTop(), getRight(), getBottom());
+        view.mSnapshotValid = false;
         view.reloadEvents();
         return switchForward;
     }
@@ -4199,6 +4951,11 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         mStartingSpanY = Math.max(MIN_Y_SPAN, Math.abs(detector.getCurrentSpanY()));
         mCellHeightBeforeScaleGesture = mCellHeight;
 
+        mZooming = true;
+        mZoomCellHeight = mCellHeight;
+        mZoomViewStartY = mViewStartY;
+        mZoomFocusY = (int) gestureCenterInPixels;
+
         if (DEBUG_SCALING) {
             float ViewStartHour = mViewStartY / (float) (mCellHeight + DAY_GAP);
             Log.d(TAG, "onScaleBegin: mGestureCenterHour:" + mGestureCenterHour
@@ -4213,49 +4970,73 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
     public boolean onScale(ScaleGestureDetector detector) {
         float spanY = Math.max(MIN_Y_SPAN, Math.abs(detector.getCurrentSpanY()));
 
-        mCellHeight = (int) (mCellHeightBeforeScaleGesture * spanY / mStartingSpanY);
+        float cellHeight = mCellHeightBeforeScaleGesture * spanY / mStartingSpanY;
 
-        if (mCellHeight < mMinCellHeight) {
+        if (cellHeight < mMinCellHeight) {
             // If mStartingSpanY is too small, even a small increase in the
             // gesture can bump the mCellHeight beyond MAX_CELL_HEIGHT
             mStartingSpanY = spanY;
-            mCellHeight = mMinCellHeight;
+            cellHeight = mMinCellHeight;
             mCellHeightBeforeScaleGesture = mMinCellHeight;
-        } else if (mCellHeight > MAX_CELL_HEIGHT) {
+        } else if (cellHeight > MAX_CELL_HEIGHT) {
             mStartingSpanY = spanY;
-            mCellHeight = MAX_CELL_HEIGHT;
+            cellHeight = MAX_CELL_HEIGHT;
             mCellHeightBeforeScaleGesture = MAX_CELL_HEIGHT;
         }
 
         int gestureCenterInPixels = (int) detector.getFocusY() - DAY_HEADER_HEIGHT - mAlldayHeight;
-        mViewStartY = (int) (mGestureCenterHour * (mCellHeight + DAY_GAP)) - gestureCenterInPixels;
-        mMaxViewStartY = HOUR_GAP + 24 * (mCellHeight + HOUR_GAP) - mGridAreaHeight;
+        float viewStartY = mGestureCenterHour * (cellHeight + DAY_GAP) - gestureCenterInPixels;
+        float maxViewStartY = HOUR_GAP + 24 * (cellHeight + HOUR_GAP) - mGridAreaHeight;
 
         if (DEBUG_SCALING) {
-            float ViewStartHour = mViewStartY / (float) (mCellHeight + DAY_GAP);
+            float ViewStartHour = viewStartY / (cellHeight + DAY_GAP);
             Log.d(TAG, "onScale: mGestureCenterHour:" + mGestureCenterHour + "\tViewStartHour: "
-                    + ViewStartHour + "\tmViewStartY:" + mViewStartY + "\tmCellHeight:"
-                    + mCellHeight + " SpanY:" + detector.getCurrentSpanY());
-        }
-
-        if (mViewStartY < 0) {
-            mViewStartY = 0;
-            mGestureCenterHour = (mViewStartY + gestureCenterInPixels)
-                    / (float) (mCellHeight + DAY_GAP);
-        } else if (mViewStartY > mMaxViewStartY) {
-            mViewStartY = mMaxViewStartY;
-            mGestureCenterHour = (mViewStartY + gestureCenterInPixels)
-                    / (float) (mCellHeight + DAY_GAP);
-        }
+                    + ViewStartHour + "\tviewStartY:" + viewStartY + "\tcellHeight:"
+                    + cellHeight + " SpanY:" + detector.getCurrentSpanY());
+        }
+
+        if (viewStartY < 0) {
+            viewStartY = 0;
+            mGestureCenterHour = (viewStartY + gestureCenterInPixels) / (cellHeight + DAY_GAP);
+        } else if (viewStartY > maxViewStartY) {
+            viewStartY = maxViewStartY;
+            mGestureCenterHour = (viewStartY + gestureCenterInPixels) / (cellHeight + DAY_GAP);
+        }
+        mZoomCellHeight = cellHeight;
+        mZoomViewStartY = viewStartY;
+        mZoomFocusY = gestureCenterInPixels;
+
+        // Only lay the view out again when the gesture reaches another
+        // bucket, in between the picture of the bucket is stretched
+        final int bucket = getZoomBucket(cellHeight);
+        if (bucket != mCellHeight) {
+            mCellHeight = bucket;
+            mMaxViewStartY = HOUR_GAP + 24 * (mCellHeight + HOUR_GAP) - mGridAreaHeight;
+            mRemeasure = true;
+        }
+        final float scale = (cellHeight + HOUR_GAP) / (mCellHeight + HOUR_GAP);
+        mViewStartY = Math.max(0, Math.min((int) (viewStartY / scale), mMaxViewStartY));
         computeFirstHour();
 
-        mRemeasure = true;
         invalidate();
         return true;
     }
 
     // ScaleGestureDetector.OnScaleGestureListener
     public void onScaleEnd(ScaleGestureDetector detector) {
+        if (mZooming) {
+            // Settle on the bucket the gesture ended at, keeping the hour
+            // under the fingers in place
+            final float scale = (mZoomCellHeight + HOUR_GAP) / (mCellHeight + HOUR_GAP);
+            mViewStartY = (int) ((mZoomViewStartY + mZoomFocusY) / scale) - mZoomFocusY;
+            mViewStartY = Math.max(0, Math.min(mViewStartY, mMaxViewStartY));
+            computeFirstHour();
+            mZooming = false;
+            releaseLayer(mZoomLayer);
+            mZoomLayer = null;
+            mRemeasure = true;
+            invalidate();
+        }
         mScrollStartY = mViewStartY;
         mInitialScrollY = 0;
         mInitialScrollX = 0;
@@ -4281,6 +5062,11 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         switch (action) {
             case MotionEvent.ACTION_DOWN:
                 mStartingScroll = true;
+                // Show the live view if touched while still animating in
+                if (mDrawFromSnapshot) {
+                    mDrawFromSnapshot = false;
+                    invalidate();
+                }
                 if (DEBUG) {
                     Log.e(TAG, "ACTION_DOWN ev.getDownTime = " + ev.getDownTime() + " Cnt="
                             + ev.getPointerCount());
@@ -4331,6 +5117,7 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
                     if (Math.abs(mViewStartX) > mHorizontalSnapBackThreshold) {
                         // The user has gone beyond the threshold so switch views
                         if (DEBUG) Log.d(TAG, "- horizontal scroll: switch views");
+                        mEventLoader.setPrefetchDirection(mViewStartX > 0);
                         switchViews(mViewStartX > 0, mViewStartX, mViewWidth, 0);
                         mViewStartX = 0;
                         return true;
@@ -4658,7 +5445,6 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
         int date = mSelectionDay;
         int cellWidth = mCellWidth;
         ArrayList<Event> events = mEvents;
-        int numEvents = events.size();
         int left = computeDayLeftPosition(mSelectionDay - mFirstJulianDay);
         int top = 0;
         setSelectedEvent(null);
@@ -4675,42 +5461,45 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
                 // Leave a gap for the 'box +n' text
                 maxUnexpandedColumn--;
             }
+            float numRectangles = mShowAllAllDayEvents ? mMaxAlldayEvents
+                    : mMaxUnexpandedAlldayEventCount;
+            float height = drawHeight / numRectangles;
+            if (height > MAX_HEIGHT_OF_ONE_ALLDAY_EVENT) {
+                height = MAX_HEIGHT_OF_ONE_ALLDAY_EVENT;
+            }
+            // Only the events in the lanes that are shown on the selected
+            // day can be hit
+            final AllDayLanes lanes = mAllDayLanes;
+            final int day = mSelectionDay - mFirstJulianDay;
+            int numLanes = lanes.getNumLanes();
+            if (!mShowAllAllDayEvents) {
+                numLanes = Math.min(numLanes, maxUnexpandedColumn);
+            }
             events = mAllDayEvents;
-            numEvents = events.size();
-            for (int i = 0; i < numEvents; i++) {
-                Event event = events.get(i);
-                if (!event.drawAsAllday() ||
-                        (!mShowAllAllDayEvents && event.getColumn() >= maxUnexpandedColumn)) {
-                    // Don't check non-allday events or events that aren't shown
+            for (int lane = 0; lane < numLanes; lane++) {
+                final int i = lanes.getEventIndex(day, lane);
+                if (i < 0) {
                     continue;
                 }
-
-                if (event.startDay <= mSelectionDay && event.endDay >= mSelectionDay) {
-                    float numRectangles = mShowAllAllDayEvents ? mMaxAlldayEvents
-                            : mMaxUnexpandedAlldayEventCount;
-                    float height = drawHeight / numRectangles;
-                    if (height > MAX_HEIGHT_OF_ONE_ALLDAY_EVENT) {
-                        height = MAX_HEIGHT_OF_ONE_ALLDAY_EVENT;
+                Event event = events.get(i);
+                float eventTop = yOffset + height * lane;
+                float eventBottom = eventTop + height;
+                if (eventTop < y && eventBottom > y) {
+                    // If the touch is inside the event rectangle, then
+                    // add the event.
+                    mSelectedEvents.add(event);
+                    closestEvent = event;
+                    break;
+                } else {
+                    // Find the closest event
+                    if (eventTop >= y) {
+                        yDistance = eventTop - y;
+                    } else {
+                        yDistance = y - eventBottom;
                     }
-                    float eventTop = yOffset + height * event.getColumn();
-                    float eventBottom = eventTop + height;
-                    if (eventTop < y && eventBottom > y) {
-                        // If the touch is inside the event rectangle, then
-                        // add the event.
-                        mSelectedEvents.add(event);
+                    if (yDistance < minYdistance) {
+                        minYdistance = yDistance;
                         closestEvent = event;
-                        break;
-                    } else {
-                        // Find the closest event
-                        if (eventTop >= y) {
-                            yDistance = eventTop - y;
-                        } else {
-                            yDistance = y - eventBottom;
-                        }
-                        if (yDistance < minYdistance) {
-                            minYdistance = yDistance;
-                            closestEvent = event;
-                        }
                     }
                 }
             }
@@ -4730,8 +5519,12 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
 
         EventGeometry geometry = mEventGeometry;
 
-        for (int i = 0; i < numEvents; i++) {
-            Event event = events.get(i);
+        // Only look at the events that can intersect the region
+        final TimedEventIndex index = mTimedEventIndex;
+        final int first = index.findFirst(date, region.top, top, geometry);
+        final int end = index.findEnd(date, region.bottom, top, geometry);
+        for (int pos = first; pos < end; pos++) {
+            Event event = events.get(index.getEventIndex(pos));
             // Compute the event rectangle.
             if (!geometry.computeEventRect(date, left, top, cellWidth, event)) {
                 continue;
@@ -4750,8 +5543,8 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
             int len = mSelectedEvents.size();
             Event closestEvent = null;
             float minDist = mViewWidth + mViewHeight; // some large distance
-            for (int index = 0; index < len; index++) {
-                Event ev = mSelectedEvents.get(index);
+            for (int i = 0; i < len; i++) {
+                Event ev = mSelectedEvents.get(i);
                 float dist = geometry.pointToEvent(x, y, ev);
                 if (dist < minDist) {
                     minDist = dist;
@@ -4890,6 +5683,8 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
     @Override
     protected void onDetachedFromWindow() {
         cleanup();
+        releaseLayers();
+        mSnapshotValid = false;
         super.onDetachedFromWindow();
     }
 
@@ -4907,6 +5702,7 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
 
         public void run() {
             long currentTime = System.currentTimeMillis();
+            final int oldTodayJulianDay = mTodayJulianDay;
             mCurrentTime.set(currentTime);
             //% causes update to occur on 5 minute marks (11:10, 11:15, 11:20, etc.)
             if (!DayView.this.mPaused) {
@@ -4914,7 +5710,12 @@ public class DayView extends View implements View.OnCreateContextMenuListener,
                         - (currentTime % UPDATE_CURRENT_TIME_DELAY));
             }
             mTodayJulianDay = Time.getJulianDay(currentTime, mCurrentTime.gmtoff);
-            invalidate();
+            if (mTodayJulianDay != oldTodayJulianDay) {
+                // The day headers and backgrounds change at midnight
+                invalidateContent();
+            } else {
+                invalidateCurrentTimeLine();
+            }
         }
     }
 
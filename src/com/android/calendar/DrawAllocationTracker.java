@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.calendar;
+
+import android.os.Debug;
+import android.util.Log;
+
+/**
+ * Counts the objects allocated by the views that draw on every frame while
+ * scrolling, so that allocations creeping back into their draw paths show
+ * up. Views call {@link #beginFrame()} at the start of onDraw and
+ * {@link #endFrame(String)} at its end. A frame drawn from within another
+ * one, such as the snapshot of the next DayView drawn while scrolling
+ * sideways, counts towards the outer frame.
+ *
+ * Counting slows the runtime down, so it is off unless enabled by a test or
+ * with "adb shell setprop log.tag.DrawAllocationTracker DEBUG" before the app
+ * starts, in which case every frame that allocates is logged. The counts
+ * are per thread and only meant to be read from the thread that draws.
+ */
+public final class DrawAllocationTracker {
+    private static final String TAG = "DrawAllocationTracker";
+
+    private static boolean sEnabled;
+    private static int sDepth;
+    private static int sFrameStart;
+
+    private static int sFrames;
+    private static int sAllocatingFrames;
+    private static int sLastFrameAllocations;
+    private static int sMaxFrameAllocations;
+
+    static {
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            setEnabled(true);
+        }
+    }
+
+    private DrawAllocationTracker() {
+    }
+
+    /**
+     * Turns counting on or off, clearing the counts.
+     */
+    @SuppressWarnings("deprecation")
+    public static void setEnabled(boolean enabled) {
+        if (enabled == sEnabled) {
+            reset();
+            return;
+        }
+        sEnabled = enabled;
+        if (enabled) {
+            Debug.startAllocCounting();
+        } else {
+            Debug.stopAllocCounting();
+        }
+        reset();
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Clears the counts of the frames drawn so far.
+     */
+    public static void reset() {
+        sDepth = 0;
+        sFrames = 0;
+        sAllocatingFrames = 0;
+        sLastFrameAllocations = 0;
+        sMaxFrameAllocations = 0;
+    }
+
+    @SuppressWarnings("deprecation")
+    public static void beginFrame() {
+        if (sEnabled && sDepth++ == 0) {
+            sFrameStart = Debug.getThreadAllocCount();
+        }
+    }
+
+    /**
+     * Ends the frame started by the matching {@link #beginFrame()}.
+     *
+     * @param tag the tag to log an allocating frame under
+     */
+    @SuppressWarnings("deprecation")
+    public static void endFrame(String tag) {
+        if (!sEnabled || sDepth == 0 || --sDepth != 0) {
+            return;
+        }
+        final int allocations = Debug.getThreadAllocCount() - sFrameStart;
+        sFrames++;
+        sLastFrameAllocations = allocations;
+        if (allocations > 0) {
+            sAllocatingFrames++;
+            sMaxFrameAllocations = Math.max(sMaxFrameAllocations, allocations);
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(tag, "Frame allocated " + allocations + " objects");
+            }
+        }
+    }
+
+    /**
+     * Returns the number of frames counted since the counts were cleared.
+     */
+    public static int getFrameCount() {
+        return sFrames;
+    }
+
+    /**
+     * Returns the number of counted frames that allocated anything.
+     */
+    public static int getAllocatingFrameCount() {
+        return sAllocatingFrames;
+    }
+
+    public static int getLastFrameAllocations() {
+        return sLastFrameAllocations;
+    }
+
+    public static int getMaxFrameAllocations() {
+        return sMaxFrameAllocations;
+    }
+}
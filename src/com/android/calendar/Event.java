@@ -23,6 +23,7 @@ import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.CancellationSignal;
 import android.os.Debug;
 import android.provider.CalendarContract.Attendees;
 import android.provider.CalendarContract.Calendars;
@@ -34,7 +35,9 @@ import android.util.Log;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 // TODO: should Event be Parcelable so it can be passed via Intents?
@@ -59,9 +62,6 @@ public class Event implements Cloneable {
             "startDay ASC, endDay DESC, title ASC";
     private static final String DISPLAY_AS_ALLDAY = "dispAllday";
 
-    private static final String EVENTS_WHERE = DISPLAY_AS_ALLDAY + "=0";
-    private static final String ALLDAY_WHERE = DISPLAY_AS_ALLDAY + "=1";
-
     // The projection to use when querying instances to build a list of events
     public static final String[] EVENT_PROJECTION = new String[] {
             Instances.TITLE,                 // 0
@@ -117,6 +117,11 @@ public class Event implements Cloneable {
     private static String mNoTitleString;
     private static int mNoColorColor;
 
+    // Enough recycled events for a few weeks of a busy calendar
+    private static final int MAX_POOL_SIZE = 500;
+    private static final Object sPoolSync = new Object();
+    private static final ArrayList<Event> sPool = new ArrayList<Event>();
+
     public long id;
     public int color;
     public CharSequence title;
@@ -196,41 +201,99 @@ public class Event implements Cloneable {
         dest.guestsCanModify = guestsCanModify;
     }
 
+    /**
+     * Returns an event with all of its fields reset, reusing a recycled one
+     * if there is any. Events that are no longer referenced can be handed
+     * back with {@link #recycle()} or {@link #recycleAll(ArrayList)}.
+     */
     public static final Event newInstance() {
-        Event e = new Event();
+        Event e = null;
+        synchronized (sPoolSync) {
+            int size = sPool.size();
+            if (size > 0) {
+                e = sPool.remove(size - 1);
+            }
+        }
+        if (e == null) {
+            e = new Event();
+        }
 
         e.id = 0;
         e.title = null;
         e.color = 0;
         e.location = null;
         e.allDay = false;
+        e.organizer = null;
+        e.guestsCanModify = false;
         e.startDay = 0;
         e.endDay = 0;
         e.startTime = 0;
         e.endTime = 0;
         e.startMillis = 0;
         e.endMillis = 0;
+        e.mColumn = 0;
+        e.mMaxColumns = 0;
         e.hasAlarm = false;
         e.isRepeating = false;
         e.selfAttendeeStatus = Attendees.ATTENDEE_STATUS_NONE;
+        e.left = 0;
+        e.right = 0;
+        e.top = 0;
+        e.bottom = 0;
 
         return e;
     }
 
+    /**
+     * Returns this event to the pool used by {@link #newInstance()}. The
+     * caller must not use the event, or let anyone else use it, afterwards.
+     */
+    public final void recycle() {
+        // Don't keep the strings or the other events alive while pooled
+        title = null;
+        location = null;
+        organizer = null;
+        nextRight = null;
+        nextLeft = null;
+        nextUp = null;
+        nextDown = null;
+        synchronized (sPoolSync) {
+            if (sPool.size() < MAX_POOL_SIZE) {
+                sPool.add(this);
+            }
+        }
+    }
+
+    /**
+     * Recycles all the events in the list and clears it.
+     *
+     * @see #recycle()
+     */
+    public static void recycleAll(ArrayList<Event> events) {
+        for (int i = events.size() - 1; i >= 0; i--) {
+            events.get(i).recycle();
+        }
+        events.clear();
+    }
+
     /**
      * Loads <i>days</i> days worth of instances starting at <i>startDay</i>.
+     * Any events already in <i>events</i> are recycled.
+     *
+     * @param cancellationSignal Cancels the provider queries, making them
+     *            throw an {@link android.os.OperationCanceledException}.
+     *            May be null.
      */
     public static void loadEvents(Context context, ArrayList<Event> events, int startDay, int days,
-            int requestId, AtomicInteger sequenceNumber) {
+            int requestId, AtomicInteger sequenceNumber, CancellationSignal cancellationSignal) {
 
         if (PROFILE) {
             Debug.startMethodTracing("loadEvents");
         }
 
         Cursor cEvents = null;
-        Cursor cAllday = null;
 
-        events.clear();
+        recycleAll(events);
         try {
             int endDay = startDay + days - 1;
 
@@ -243,25 +306,25 @@ public class Event implements Cloneable {
             // the left side.  If the start and end times of two events are
             // the same then we sort alphabetically on the title.  This isn't
             // required for correctness, it just adds a nice touch.
+            //
+            // The all-day events come back in the same query, so the
+            // provider only expands recurrences over the range once, and
+            // are moved to the end and re-sorted by day afterwards.
 
             // Respect the preference to show/hide declined events
             SharedPreferences prefs = GeneralPreferences.getSharedPreferences(context);
             boolean hideDeclined = prefs.getBoolean(GeneralPreferences.KEY_HIDE_DECLINED,
                     false);
 
-            String where = EVENTS_WHERE;
-            String whereAllday = ALLDAY_WHERE;
+            String where = null;
             if (hideDeclined) {
-                String hideString = " AND " + Instances.SELF_ATTENDEE_STATUS + "!="
+                where = Instances.SELF_ATTENDEE_STATUS + "!="
                         + Attendees.ATTENDEE_STATUS_DECLINED;
-                where += hideString;
-                whereAllday += hideString;
             }
 
+            final long queryStart = PerfLog.start();
             cEvents = instancesQuery(context.getContentResolver(), EVENT_PROJECTION, startDay,
-                    endDay, where, null, SORT_EVENTS_BY);
-            cAllday = instancesQuery(context.getContentResolver(), EVENT_PROJECTION, startDay,
-                    endDay, whereAllday, null, SORT_ALLDAY_BY);
+                    endDay, where, null, SORT_EVENTS_BY, cancellationSignal);
 
             // Check if we should return early because there are more recent
             // load requests waiting.
@@ -270,21 +333,78 @@ public class Event implements Cloneable {
             }
 
             buildEventsFromCursor(events, cEvents, context, startDay, endDay);
-            buildEventsFromCursor(events, cAllday, context, startDay, endDay);
+            PerfLog.queryFinished(PerfLog.QUERY_INSTANCES, queryStart);
+            moveAlldayEventsToEnd(events);
 
         } finally {
             if (cEvents != null) {
                 cEvents.close();
             }
-            if (cAllday != null) {
-                cAllday.close();
-            }
             if (PROFILE) {
                 Debug.stopMethodTracing();
             }
         }
     }
 
+    /**
+     * Splits events sorted by {@link #SORT_EVENTS_BY} into the timed events
+     * followed by the all-day events sorted by {@link #SORT_ALLDAY_BY}, which
+     * is the order separate queries for each kind would give.
+     */
+    private static void moveAlldayEventsToEnd(ArrayList<Event> events) {
+        ArrayList<Event> allday = null;
+        int timed = 0;
+        for (int i = 0, size = events.size(); i < size; i++) {
+            Event e = events.get(i);
+            if (e.drawAsAllday()) {
+                if (allday == null) {
+                    allday = new ArrayList<Event>();
+                }
+                allday.add(e);
+            } else {
+                events.set(timed++, e);
+            }
+        }
+        if (allday == null) {
+            return;
+        }
+        // The sort is stable, so equal events keep their relative order
+        Collections.sort(allday, ALLDAY_COMPARATOR);
+        for (int i = 0, size = allday.size(); i < size; i++) {
+            events.set(timed + i, allday.get(i));
+        }
+    }
+
+    /**
+     * Orders all-day events like {@link #SORT_ALLDAY_BY}.
+     */
+    private static final Comparator<Event> ALLDAY_COMPARATOR = new Comparator<Event>() {
+        @Override
+        public int compare(Event lhs, Event rhs) {
+            if (lhs.startDay != rhs.startDay) {
+                return lhs.startDay < rhs.startDay ? -1 : 1;
+            }
+            if (lhs.endDay != rhs.endDay) {
+                return lhs.endDay > rhs.endDay ? -1 : 1;
+            }
+            return compareTitles(lhs, rhs);
+        }
+    };
+
+    /**
+     * Compares titles the way "title ASC" does in the provider, where events
+     * without a title sort first.
+     */
+    /* package */ static int compareTitles(Event lhs, Event rhs) {
+        // Untitled events all share the placeholder string
+        boolean lhsUntitled = lhs.title == null || lhs.title == mNoTitleString;
+        boolean rhsUntitled = rhs.title == null || rhs.title == mNoTitleString;
+        if (lhsUntitled || rhsUntitled) {
+            return lhsUntitled == rhsUntitled ? 0 : (lhsUntitled ? -1 : 1);
+        }
+        return lhs.title.toString().compareTo(rhs.title.toString());
+    }
+
     /**
      * Performs a query to return all visible instances in the given range
      * that match the given selection. This is a blocking function and
@@ -302,10 +422,12 @@ public class Event implements Cloneable {
      * @param selection Filter on the query as an SQL WHERE statement
      * @param selectionArgs Args to replace any '?'s in the selection
      * @param orderBy How to order the rows as an SQL ORDER BY statement
+     * @param cancellationSignal Signal to cancel the query with, or null
      * @return A Cursor of instances matching the selection
      */
     private static final Cursor instancesQuery(ContentResolver cr, String[] projection,
-            int startDay, int endDay, String selection, String[] selectionArgs, String orderBy) {
+            int startDay, int endDay, String selection, String[] selectionArgs, String orderBy,
+            CancellationSignal cancellationSignal) {
         String WHERE_CALENDARS_SELECTED = Calendars.VISIBLE + "=?";
         String[] WHERE_CALENDARS_ARGS = {"1"};
         String DEFAULT_SORT_ORDER = "begin ASC";
@@ -326,7 +448,7 @@ public class Event implements Cloneable {
             }
         }
         return cr.query(builder.build(), projection, selection, selectionArgs,
-                orderBy == null ? DEFAULT_SORT_ORDER : orderBy);
+                orderBy == null ? DEFAULT_SORT_ORDER : orderBy, cancellationSignal);
     }
 
     /**
@@ -358,12 +480,79 @@ public class Event implements Cloneable {
         // get sorted in the correct order
         cEvents.moveToPosition(-1);
         while (cEvents.moveToNext()) {
-            Event e = generateEventFromCursor(cEvents);
-            if (e.startDay > endDay || e.endDay < startDay) {
+            if (cEvents.getInt(PROJECTION_START_DAY_INDEX) > endDay
+                    || cEvents.getInt(PROJECTION_END_DAY_INDEX) < startDay) {
+                continue;
+            }
+            events.add(generateEventFromCursor(cEvents));
+        }
+    }
+
+    /**
+     * Adds all the events from the cursor to columns, without creating an
+     * {@link Event} for each of them.
+     *
+     * @param columns The list of events
+     * @param cEvents Events to add to the list, using {@link #EVENT_PROJECTION}
+     * @param context
+     * @param startDay
+     * @param endDay
+     */
+    public static void buildEventsFromCursor(
+            EventColumns columns, Cursor cEvents, Context context, int startDay, int endDay) {
+        if (cEvents == null || columns == null) {
+            Log.e(TAG, "buildEventsFromCursor: null cursor or null events list!");
+            return;
+        }
+
+        int count = cEvents.getCount();
+
+        if (count == 0) {
+            return;
+        }
+
+        Resources res = context.getResources();
+        mNoTitleString = res.getString(R.string.no_title_label);
+        mNoColorColor = res.getColor(R.color.event_center);
+        cEvents.moveToPosition(-1);
+        while (cEvents.moveToNext()) {
+            int eStartDay = cEvents.getInt(PROJECTION_START_DAY_INDEX);
+            int eEndDay = cEvents.getInt(PROJECTION_END_DAY_INDEX);
+            if (eStartDay > endDay || eEndDay < startDay) {
                 continue;
             }
-            events.add(e);
+
+            String title = cEvents.getString(PROJECTION_TITLE_INDEX);
+            if (title == null || title.length() == 0) {
+                title = mNoTitleString;
+            }
+            int color;
+            if (!cEvents.isNull(PROJECTION_COLOR_INDEX)) {
+                // Read the color from the database
+                color = Utils.getDisplayColorFromColor(cEvents.getInt(PROJECTION_COLOR_INDEX));
+            } else {
+                color = mNoColorColor;
+            }
+            String rrule = cEvents.getString(PROJECTION_RRULE_INDEX);
+            String rdate = cEvents.getString(PROJECTION_RDATE_INDEX);
+
+            columns.add(cEvents.getLong(PROJECTION_EVENT_ID_INDEX),
+                    cEvents.getLong(PROJECTION_BEGIN_INDEX),
+                    cEvents.getLong(PROJECTION_END_INDEX),
+                    eStartDay, eEndDay,
+                    cEvents.getInt(PROJECTION_START_MINUTE_INDEX),
+                    cEvents.getInt(PROJECTION_END_MINUTE_INDEX),
+                    color,
+                    cEvents.getInt(PROJECTION_SELF_ATTENDEE_STATUS_INDEX),
+                    title,
+                    cEvents.getString(PROJECTION_LOCATION_INDEX),
+                    cEvents.getString(PROJECTION_ORGANIZER_INDEX),
+                    cEvents.getInt(PROJECTION_ALL_DAY_INDEX) != 0,
+                    cEvents.getInt(PROJECTION_HAS_ALARM_INDEX) != 0,
+                    !TextUtils.isEmpty(rrule) || !TextUtils.isEmpty(rdate),
+                    cEvents.getInt(PROJECTION_GUESTS_CAN_INVITE_OTHERS_INDEX) != 0);
         }
+        columns.trimStrings();
     }
 
     /**
@@ -371,7 +560,7 @@ public class Event implements Cloneable {
      * @return An event created from the cursor
      */
     private static Event generateEventFromCursor(Cursor cEvents) {
-        Event e = new Event();
+        Event e = newInstance();
 
         e.id = cEvents.getLong(PROJECTION_EVENT_ID_INDEX);
         e.title = cEvents.getString(PROJECTION_TITLE_INDEX);
@@ -417,6 +606,58 @@ public class Event implements Cloneable {
         return e;
     }
 
+    /**
+     * Returns true if other is the same instance as this event and would be
+     * drawn the same way, ignoring the layout fields.
+     */
+    /* package */ boolean isUnchanged(Event other) {
+        return id == other.id && startMillis == other.startMillis
+                && endMillis == other.endMillis && allDay == other.allDay
+                && startDay == other.startDay && endDay == other.endDay
+                && startTime == other.startTime && endTime == other.endTime
+                && color == other.color && selfAttendeeStatus == other.selfAttendeeStatus
+                && TextUtils.equals(title, other.title)
+                && TextUtils.equals(location, other.location);
+    }
+
+    /**
+     * Pairs up the events of two loads of the same range, such as before and
+     * after a provider change.
+     *
+     * @return for each event in newEvents, the index in oldEvents of the
+     *         event it is {@link #isUnchanged unchanged} from, or -1 if it is
+     *         new or changed
+     */
+    /* package */ static int[] matchUnchangedEvents(ArrayList<Event> oldEvents,
+            ArrayList<Event> newEvents) {
+        final int oldCount = oldEvents.size();
+        // Chain the old events of each event id, since all the instances of
+        // a recurring event share the id
+        HashMap<Long, Integer> firstById = new HashMap<Long, Integer>();
+        int[] nextById = new int[oldCount];
+        for (int i = oldCount - 1; i >= 0; i--) {
+            Integer first = firstById.put(oldEvents.get(i).id, i);
+            nextById[i] = first == null ? -1 : first;
+        }
+
+        boolean[] used = new boolean[oldCount];
+        int[] matches = new int[newEvents.size()];
+        for (int i = 0; i < matches.length; i++) {
+            Event e = newEvents.get(i);
+            Integer first = firstById.get(e.id);
+            int match = -1;
+            for (int j = first == null ? -1 : first; j >= 0; j = nextById[j]) {
+                if (!used[j] && oldEvents.get(j).isUnchanged(e)) {
+                    used[j] = true;
+                    match = j;
+                    break;
+                }
+            }
+            matches[i] = match;
+        }
+        return matches;
+    }
+
     /**
      * Computes a position for each event.  Each event is displayed
      * as a non-overlapping rectangle.  For normal events, these rectangles
@@ -443,50 +684,62 @@ public class Event implements Cloneable {
         doComputePositions(eventsList, minimumDurationMillis, true);
     }
 
+    /**
+     * Computes the positions of just the all-day events, which don't depend
+     * on the minimum duration.
+     *
+     * @see #computePositions
+     */
+    /* package */ static void computeAllDayPositions(ArrayList<Event> eventsList) {
+        if (eventsList == null) {
+            return;
+        }
+        doComputePositions(eventsList, 0, true);
+    }
+
     private static void doComputePositions(ArrayList<Event> eventsList,
             long minimumDurationMillis, boolean doAlldayEvents) {
-        final ArrayList<Event> activeList = new ArrayList<Event>();
+        final ColumnAllocator columns = new ColumnAllocator();
         final ArrayList<Event> groupList = new ArrayList<Event>();
 
         if (minimumDurationMillis < 0) {
             minimumDurationMillis = 0;
         }
 
-        long colMask = 0;
         int maxCols = 0;
         for (Event event : eventsList) {
             // Process all-day events separately
             if (event.drawAsAllday() != doAlldayEvents)
                 continue;
 
-           if (!doAlldayEvents) {
-                colMask = removeNonAlldayActiveEvents(
-                        event, activeList.iterator(), minimumDurationMillis, colMask);
+            // Free the columns of the inactive events. An all-day event
+            // becomes inactive when its end day is less than the current
+            // event's start day, any other event when its end time is less
+            // than or equal to the current event's start time.
+            long end;
+            if (!doAlldayEvents) {
+                long start = event.getStartMillis();
+                columns.release(start);
+                end = start + Math.max(
+                        event.getEndMillis() - start, minimumDurationMillis);
             } else {
-                colMask = removeAlldayActiveEvents(event, activeList.iterator(), colMask);
+                columns.release(event.startDay - 1);
+                end = event.endDay;
             }
 
-            // If the active list is empty, then reset the max columns, clear
-            // the column bit mask, and empty the groupList.
-            if (activeList.isEmpty()) {
+            // If there are no active events, then reset the max columns and
+            // empty the groupList.
+            if (columns.isEmpty()) {
                 for (Event ev : groupList) {
                     ev.setMaxColumns(maxCols);
                 }
                 maxCols = 0;
-                colMask = 0;
                 groupList.clear();
             }
 
-            // Find the first empty column.  Empty columns are represented by
-            // zero bits in the column mask "colMask".
-            int col = findFirstZeroBit(colMask);
-            if (col == 64)
-                col = 63;
-            colMask |= (1L << col);
-            event.setColumn(col);
-            activeList.add(event);
+            event.setColumn(columns.allocate(end));
             groupList.add(event);
-            int len = activeList.size();
+            int len = columns.size();
             if (maxCols < len)
                 maxCols = len;
         }
@@ -495,45 +748,104 @@ public class Event implements Cloneable {
         }
     }
 
-    private static long removeAlldayActiveEvents(Event event, Iterator<Event> iter, long colMask) {
-        // Remove the inactive allday events. An event on the active list
-        // becomes inactive when the end day is less than the current event's
-        // start day.
-        while (iter.hasNext()) {
-            final Event active = iter.next();
-            if (active.endDay < event.startDay) {
-                colMask &= ~(1L << active.getColumn());
-                iter.remove();
+    /**
+     * Hands out the lowest free column to each event in a sweep over events
+     * sorted by start, keeping the active events in a min-heap on their end
+     * so the ones that ended can be released without scanning all of them.
+     */
+    private static final class ColumnAllocator {
+        // Heap of the active events' ends and the columns they hold
+        private long[] mEnds = new long[16];
+        private int[] mColumns = new int[16];
+        private int mSize;
+        // One bit per column, set while the column is in use
+        private long[] mUsed = new long[1];
+
+        boolean isEmpty() {
+            return mSize == 0;
+        }
+
+        int size() {
+            return mSize;
+        }
+
+        /**
+         * Releases the columns of all the events ending at or before end.
+         */
+        void release(long end) {
+            while (mSize > 0 && mEnds[0] <= end) {
+                int col = mColumns[0];
+                mUsed[col >> 6] &= ~(1L << col);
+                mSize--;
+                if (mSize > 0) {
+                    siftDown(mEnds[mSize], mColumns[mSize]);
+                }
             }
         }
-        return colMask;
-    }
 
-    private static long removeNonAlldayActiveEvents(
-            Event event, Iterator<Event> iter, long minDurationMillis, long colMask) {
-        long start = event.getStartMillis();
-        // Remove the inactive events. An event on the active list
-        // becomes inactive when its end time is less than or equal to
-        // the current event's start time.
-        while (iter.hasNext()) {
-            final Event active = iter.next();
+        /**
+         * Takes the lowest free column for an event ending at end.
+         */
+        int allocate(long end) {
+            int col = -1;
+            for (int i = 0; i < mUsed.length; i++) {
+                if (mUsed[i] != -1L) {
+                    col = (i << 6) + findFirstZeroBit(mUsed[i]);
+                    break;
+                }
+            }
+            if (col < 0) {
+                col = mUsed.length << 6;
+                mUsed = Arrays.copyOf(mUsed, mUsed.length * 2);
+            }
+            mUsed[col >> 6] |= 1L << col;
 
-            final long duration = Math.max(
-                    active.getEndMillis() - active.getStartMillis(), minDurationMillis);
-            if ((active.getStartMillis() + duration) <= start) {
-                colMask &= ~(1L << active.getColumn());
-                iter.remove();
+            if (mSize == mEnds.length) {
+                mEnds = Arrays.copyOf(mEnds, mSize * 2);
+                mColumns = Arrays.copyOf(mColumns, mSize * 2);
             }
+            siftUp(mSize++, end, col);
+            return col;
+        }
+
+        private void siftUp(int i, long end, int col) {
+            while (i > 0) {
+                int parent = (i - 1) >> 1;
+                if (mEnds[parent] <= end) {
+                    break;
+                }
+                mEnds[i] = mEnds[parent];
+                mColumns[i] = mColumns[parent];
+                i = parent;
+            }
+            mEnds[i] = end;
+            mColumns[i] = col;
+        }
+
+        private void siftDown(long end, int col) {
+            int i = 0;
+            int half = mSize >> 1;
+            while (i < half) {
+                int child = (i << 1) + 1;
+                int right = child + 1;
+                if (right < mSize && mEnds[right] < mEnds[child]) {
+                    child = right;
+                }
+                if (end <= mEnds[child]) {
+                    break;
+                }
+                mEnds[i] = mEnds[child];
+                mColumns[i] = mColumns[child];
+                i = child;
+            }
+            mEnds[i] = end;
+            mColumns[i] = col;
         }
-        return colMask;
     }
 
     public static int findFirstZeroBit(long val) {
-        for (int ii = 0; ii < 64; ++ii) {
-            if ((val & (1L << ii)) == 0)
-                return ii;
-        }
-        return 64;
+        // 64 if all the bits are set
+        return Long.numberOfTrailingZeros(~val);
     }
 
     public final void dump() {
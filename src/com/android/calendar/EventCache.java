@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.calendar;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.provider.CalendarContract;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A process-wide cache of {@link Event}s keyed by julian day. Each cached day
+ * holds every instance that intersects that day, so a multi-day event is
+ * referenced from each of the days it covers.
+ *
+ * The cache is bounded both by the number of days and by the total number of
+ * day entries, and evicts the least recently used days first. Any provider
+ * change marks the whole cache stale, as the provider mostly notifies
+ * {@link CalendarContract#CONTENT_URI} itself, which doesn't say what
+ * changed. The cache is emptied on its next use, so a burst of changes, as
+ * during a sync, costs a single clear.
+ *
+ * Events stored in and returned from the cache are always copies, since the
+ * views mutate the layout fields of the events they are given.
+ */
+public class EventCache {
+    private static final String TAG = "EventCache";
+    private static final boolean DEBUG = false;
+
+    // Enough for a month view with its buffer weeks, or for a 28 day view
+    // along with the ranges prefetched on either side of it
+    private static final int MAX_CACHED_DAYS = 168;
+    // Upper bound on the sum of the per day list sizes
+    private static final int MAX_CACHED_ENTRIES = 20000;
+
+    private static EventCache sInstance;
+
+    private final Context mContext;
+    private final LinkedHashMap<Integer, ArrayList<Event>> mDays;
+    private int mEntryCount;
+    private int mVersion;
+    // Set by provider changes, to empty the cache the next time it is used
+    private boolean mStale;
+
+    // The settings the cached days were loaded with
+    private String mTimeZone;
+    private boolean mHideDeclined;
+
+    private final ContentObserver mObserver = new ContentObserver(null) {
+        @Override
+        public boolean deliverSelfNotifications() {
+            return true;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            if (DEBUG) {
+                Log.d(TAG, "Provider changed, invalidating all days");
+            }
+            markStale();
+        }
+    };
+
+    /**
+     * Orders events the same way {@link Event#loadEvents} does: all the
+     * timed events by begin, end and title followed by the all-day events by
+     * start day, end day and title.
+     */
+    private static final Comparator<Event> EVENT_ORDER = new Comparator<Event>() {
+        @Override
+        public int compare(Event lhs, Event rhs) {
+            boolean lhsAllday = lhs.drawAsAllday();
+            boolean rhsAllday = rhs.drawAsAllday();
+            if (lhsAllday != rhsAllday) {
+                return lhsAllday ? 1 : -1;
+            }
+            if (lhsAllday) {
+                if (lhs.startDay != rhs.startDay) {
+                    return lhs.startDay < rhs.startDay ? -1 : 1;
+                }
+                if (lhs.endDay != rhs.endDay) {
+                    return lhs.endDay > rhs.endDay ? -1 : 1;
+                }
+            } else {
+                if (lhs.startMillis != rhs.startMillis) {
+                    return lhs.startMillis < rhs.startMillis ? -1 : 1;
+                }
+                if (lhs.endMillis != rhs.endMillis) {
+                    return lhs.endMillis > rhs.endMillis ? -1 : 1;
+                }
+            }
+            return Event.compareTitles(lhs, rhs);
+        }
+    };
+
+    public static synchronized EventCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new EventCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private EventCache(Context context) {
+        mContext = context;
+        mDays = new LinkedHashMap<Integer, ArrayList<Event>>(MAX_CACHED_DAYS, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ArrayList<Event>> eldest) {
+                if (size() > MAX_CACHED_DAYS) {
+                    mEntryCount -= eldest.getValue().size();
+                    return true;
+                }
+                return false;
+            }
+        };
+        mTimeZone = Utils.getTimeZone(context, null);
+        mHideDeclined = Utils.getHideDeclinedEvents(context);
+        context.getContentResolver().registerContentObserver(CalendarContract.CONTENT_URI, true,
+                mObserver);
+    }
+
+    /**
+     * Returns the version of the cached data. Callers should read it before
+     * querying the provider and pass it back to
+     * {@link #putEvents(int, int, ArrayList, int)} so that results which raced
+     * with a provider change are not cached.
+     */
+    public synchronized int getVersion() {
+        checkSettings();
+        return mVersion;
+    }
+
+    /**
+     * Adds the ranges of days in [startDay, endDay] that are not in the cache
+     * to ranges, as {start, end} pairs in increasing order.
+     *
+     * @return true if every day in the range is cached
+     */
+    public synchronized boolean getMissingRanges(int startDay, int endDay,
+            ArrayList<int[]> ranges) {
+        checkSettings();
+        int rangeStart = -1;
+        boolean complete = true;
+        for (int day = startDay; day <= endDay; day++) {
+            boolean cached = mDays.containsKey(day);
+            if (!cached && rangeStart == -1) {
+                rangeStart = day;
+                complete = false;
+            } else if (cached && rangeStart != -1) {
+                ranges.add(new int[] {rangeStart, day - 1});
+                rangeStart = -1;
+            }
+        }
+        if (rangeStart != -1) {
+            ranges.add(new int[] {rangeStart, endDay});
+        }
+        return complete;
+    }
+
+    /**
+     * Fills events with copies of the cached events intersecting [startDay,
+     * endDay], in the same order as {@link Event#loadEvents}. Nothing is added
+     * unless every day in the range is cached.
+     *
+     * @return true if the whole range was available
+     */
+    public synchronized boolean getEvents(int startDay, int endDay, ArrayList<Event> events) {
+        checkSettings();
+        for (int day = startDay; day <= endDay; day++) {
+            if (!mDays.containsKey(day)) {
+                return false;
+            }
+        }
+
+        int size = events.size();
+        for (int day = startDay; day <= endDay; day++) {
+            for (Event e : mDays.get(day)) {
+                // A multi-day event is in each day it covers, and possibly
+                // as separate copies if the days were loaded separately, so
+                // only take it from the first day of the range it is on.
+                if (day != Math.max(e.startDay, startDay)) {
+                    continue;
+                }
+                Event copy = Event.newInstance();
+                e.copyTo(copy);
+                events.add(copy);
+            }
+        }
+        Collections.sort(events.subList(size, events.size()), EVENT_ORDER);
+        return true;
+    }
+
+    /**
+     * Caches copies of events as the complete contents of [startDay, endDay].
+     * Events outside of the range are ignored.
+     *
+     * @param version The value of {@link #getVersion()} from before the
+     *            events were queried
+     */
+    public synchronized void putEvents(int startDay, int endDay, ArrayList<Event> events,
+            int version) {
+        ArrayList<ArrayList<Event>> days = startPut(startDay, endDay, version);
+        if (days == null) {
+            return;
+        }
+        for (Event e : events) {
+            Event copy = Event.newInstance();
+            e.copyTo(copy);
+            addToDays(days, startDay, copy);
+        }
+        finishPut(startDay, days);
+    }
+
+    /**
+     * Caches the events in columns as the complete contents of [startDay,
+     * endDay], like {@link #putEvents(int, int, ArrayList, int)}.
+     */
+    public synchronized void putEvents(int startDay, int endDay, EventColumns columns,
+            int version) {
+        ArrayList<ArrayList<Event>> days = startPut(startDay, endDay, version);
+        if (days == null) {
+            return;
+        }
+        for (int i = 0, size = columns.size(); i < size; i++) {
+            Event copy = Event.newInstance();
+            columns.copyTo(i, copy);
+            addToDays(days, startDay, copy);
+        }
+        finishPut(startDay, days);
+    }
+
+    /**
+     * Returns an empty list for each day to be cached, or null if the
+     * events shouldn't be cached.
+     */
+    private ArrayList<ArrayList<Event>> startPut(int startDay, int endDay, int version) {
+        checkSettings();
+        if (version != mVersion) {
+            if (DEBUG) {
+                Log.d(TAG, "Dropping stale events for " + startDay + "-" + endDay);
+            }
+            return null;
+        }
+        if (endDay - startDay + 1 > MAX_CACHED_DAYS) {
+            endDay = startDay + MAX_CACHED_DAYS - 1;
+        }
+
+        int numDays = endDay - startDay + 1;
+        ArrayList<ArrayList<Event>> days = new ArrayList<ArrayList<Event>>(numDays);
+        for (int i = 0; i < numDays; i++) {
+            days.add(new ArrayList<Event>());
+        }
+        return days;
+    }
+
+    private static void addToDays(ArrayList<ArrayList<Event>> days, int startDay, Event e) {
+        int first = Math.max(e.startDay, startDay);
+        int last = Math.min(e.endDay, startDay + days.size() - 1);
+        for (int day = first; day <= last; day++) {
+            days.get(day - startDay).add(e);
+        }
+    }
+
+    private void finishPut(int startDay, ArrayList<ArrayList<Event>> days) {
+        for (int i = 0, numDays = days.size(); i < numDays; i++) {
+            ArrayList<Event> dayEvents = days.get(i);
+            ArrayList<Event> old = mDays.put(startDay + i, dayEvents);
+            if (old != null) {
+                mEntryCount -= old.size();
+            }
+            mEntryCount += dayEvents.size();
+        }
+        trimToSize();
+    }
+
+    /**
+     * Removes everything from the cache.
+     */
+    public synchronized void invalidateAll() {
+        mVersion++;
+        mStale = false;
+        mDays.clear();
+        mEntryCount = 0;
+    }
+
+    private void trimToSize() {
+        Iterator<ArrayList<Event>> iter = mDays.values().iterator();
+        while (mEntryCount > MAX_CACHED_ENTRIES && iter.hasNext()) {
+            mEntryCount -= iter.next().size();
+            iter.remove();
+        }
+    }
+
+    /**
+     * Marks every day as changed without emptying the cache yet.
+     */
+    private synchronized void markStale() {
+        mVersion++;
+        mStale = true;
+    }
+
+    /**
+     * Clears the cache if it was marked stale, or if any of the settings that
+     * change the query results or the julian day bucketing have changed since
+     * the days were loaded.
+     */
+    private void checkSettings() {
+        if (mStale) {
+            invalidateAll();
+        }
+        String timeZone = Utils.getTimeZone(mContext, null);
+        boolean hideDeclined = Utils.getHideDeclinedEvents(mContext);
+        if (!TextUtils.equals(timeZone, mTimeZone) || hideDeclined != mHideDeclined) {
+            mTimeZone = timeZone;
+            mHideDeclined = hideDeclined;
+            invalidateAll();
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.calendar;
+
+import android.text.format.DateUtils;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * A list of events stored column by column in primitive arrays, for views
+ * that only read events and can't afford an {@link Event} object per
+ * instance. Events are addressed by their index, in the order they were
+ * added.
+ *
+ * Titles, locations and organizers are interned while the list is built, so
+ * the instances of a recurring event share their strings.
+ */
+public class EventColumns {
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private int mSize;
+
+    private long[] mIds;
+    private long[] mStartMillis;
+    private long[] mEndMillis;
+    private int[] mStartDays;
+    private int[] mEndDays;
+    private int[] mStartTimes;
+    private int[] mEndTimes;
+    private int[] mColors;
+    private int[] mSelfAttendeeStatuses;
+    private String[] mTitles;
+    private String[] mLocations;
+    private String[] mOrganizers;
+
+    private final BitSet mAllDay = new BitSet();
+    private final BitSet mHasAlarm = new BitSet();
+    private final BitSet mIsRepeating = new BitSet();
+    private final BitSet mGuestsCanModify = new BitSet();
+
+    // Only used while adding events
+    private HashMap<String, String> mStrings = new HashMap<String, String>();
+
+    public EventColumns() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public EventColumns(int capacity) {
+        if (capacity < 1) {
+            capacity = 1;
+        }
+        mIds = new long[capacity];
+        mStartMillis = new long[capacity];
+        mEndMillis = new long[capacity];
+        mStartDays = new int[capacity];
+        mEndDays = new int[capacity];
+        mStartTimes = new int[capacity];
+        mEndTimes = new int[capacity];
+        mColors = new int[capacity];
+        mSelfAttendeeStatuses = new int[capacity];
+        mTitles = new String[capacity];
+        mLocations = new String[capacity];
+        mOrganizers = new String[capacity];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * Removes all the events, keeping the allocated arrays.
+     */
+    public void clear() {
+        Arrays.fill(mTitles, 0, mSize, null);
+        Arrays.fill(mLocations, 0, mSize, null);
+        Arrays.fill(mOrganizers, 0, mSize, null);
+        mAllDay.clear();
+        mHasAlarm.clear();
+        mIsRepeating.clear();
+        mGuestsCanModify.clear();
+        mStrings.clear();
+        mSize = 0;
+    }
+
+    /**
+     * Appends an event and returns its index.
+     */
+    public int add(long id, long startMillis, long endMillis, int startDay, int endDay,
+            int startTime, int endTime, int color, int selfAttendeeStatus, String title,
+            String location, String organizer, boolean allDay, boolean hasAlarm,
+            boolean isRepeating, boolean guestsCanModify) {
+        ensureCapacity(mSize + 1);
+        int i = mSize++;
+        mIds[i] = id;
+        mStartMillis[i] = startMillis;
+        mEndMillis[i] = endMillis;
+        mStartDays[i] = startDay;
+        mEndDays[i] = endDay;
+        mStartTimes[i] = startTime;
+        mEndTimes[i] = endTime;
+        mColors[i] = color;
+        mSelfAttendeeStatuses[i] = selfAttendeeStatus;
+        mTitles[i] = intern(title);
+        mLocations[i] = intern(location);
+        mOrganizers[i] = intern(organizer);
+        mAllDay.set(i, allDay);
+        mHasAlarm.set(i, hasAlarm);
+        mIsRepeating.set(i, isRepeating);
+        mGuestsCanModify.set(i, guestsCanModify);
+        return i;
+    }
+
+    /**
+     * Appends the fields of an {@link Event} and returns its index.
+     */
+    public int add(Event e) {
+        return add(e.id, e.startMillis, e.endMillis, e.startDay, e.endDay, e.startTime,
+                e.endTime, e.color, e.selfAttendeeStatus,
+                e.title == null ? null : e.title.toString(),
+                e.location == null ? null : e.location.toString(), e.organizer, e.allDay,
+                e.hasAlarm, e.isRepeating, e.guestsCanModify);
+    }
+
+    public long getId(int i) {
+        return mIds[i];
+    }
+
+    public long getStartMillis(int i) {
+        return mStartMillis[i];
+    }
+
+    public long getEndMillis(int i) {
+        return mEndMillis[i];
+    }
+
+    public int getStartDay(int i) {
+        return mStartDays[i];
+    }
+
+    public int getEndDay(int i) {
+        return mEndDays[i];
+    }
+
+    public int getStartTime(int i) {
+        return mStartTimes[i];
+    }
+
+    public int getEndTime(int i) {
+        return mEndTimes[i];
+    }
+
+    public int getColor(int i) {
+        return mColors[i];
+    }
+
+    public int getSelfAttendeeStatus(int i) {
+        return mSelfAttendeeStatuses[i];
+    }
+
+    public String getTitle(int i) {
+        return mTitles[i];
+    }
+
+    public String getLocation(int i) {
+        return mLocations[i];
+    }
+
+    public String getOrganizer(int i) {
+        return mOrganizers[i];
+    }
+
+    public boolean isAllDay(int i) {
+        return mAllDay.get(i);
+    }
+
+    public boolean hasAlarm(int i) {
+        return mHasAlarm.get(i);
+    }
+
+    public boolean isRepeating(int i) {
+        return mIsRepeating.get(i);
+    }
+
+    public boolean guestsCanModify(int i) {
+        return mGuestsCanModify.get(i);
+    }
+
+    /**
+     * @see Event#drawAsAllday()
+     */
+    public boolean drawAsAllday(int i) {
+        // Use >= so we'll pick up Exchange allday events
+        return mAllDay.get(i) || mEndMillis[i] - mStartMillis[i] >= DateUtils.DAY_IN_MILLIS;
+    }
+
+    /**
+     * @see Event#getTitleAndLocation()
+     */
+    public String getTitleAndLocation(int i) {
+        String text = mTitles[i];
+        String location = mLocations[i];
+        if (location != null && !text.endsWith(location)) {
+            text += ", " + location;
+        }
+        return text;
+    }
+
+    /**
+     * Copies the event at index i into dest, for code that still works on
+     * {@link Event}s. The layout fields of dest are left alone.
+     */
+    public void copyTo(int i, Event dest) {
+        dest.id = mIds[i];
+        dest.title = mTitles[i];
+        dest.color = mColors[i];
+        dest.location = mLocations[i];
+        dest.allDay = mAllDay.get(i);
+        dest.startDay = mStartDays[i];
+        dest.endDay = mEndDays[i];
+        dest.startTime = mStartTimes[i];
+        dest.endTime = mEndTimes[i];
+        dest.startMillis = mStartMillis[i];
+        dest.endMillis = mEndMillis[i];
+        dest.hasAlarm = mHasAlarm.get(i);
+        dest.isRepeating = mIsRepeating.get(i);
+        dest.selfAttendeeStatus = mSelfAttendeeStatuses[i];
+        dest.organizer = mOrganizers[i];
+        dest.guestsCanModify = mGuestsCanModify.get(i);
+    }
+
+    private String intern(String s) {
+        if (s == null) {
+            return null;
+        }
+        String interned = mStrings.get(s);
+        if (interned == null) {
+            mStrings.put(s, s);
+            interned = s;
+        }
+        return interned;
+    }
+
+    private void ensureCapacity(int capacity) {
+        int length = mIds.length;
+        if (capacity <= length) {
+            return;
+        }
+        int newLength = Math.max(capacity, length * 2);
+        mIds = Arrays.copyOf(mIds, newLength);
+        mStartMillis = Arrays.copyOf(mStartMillis, newLength);
+        mEndMillis = Arrays.copyOf(mEndMillis, newLength);
+        mStartDays = Arrays.copyOf(mStartDays, newLength);
+        mEndDays = Arrays.copyOf(mEndDays, newLength);
+        mStartTimes = Arrays.copyOf(mStartTimes, newLength);
+        mEndTimes = Arrays.copyOf(mEndTimes, newLength);
+        mColors = Arrays.copyOf(mColors, newLength);
+        mSelfAttendeeStatuses = Arrays.copyOf(mSelfAttendeeStatuses, newLength);
+        mTitles = Arrays.copyOf(mTitles, newLength);
+        mLocations = Arrays.copyOf(mLocations, newLength);
+        mOrganizers = Arrays.copyOf(mOrganizers, newLength);
+    }
+
+    /**
+     * Drops the string table used for interning once the list is complete.
+     */
+    public void trimStrings() {
+        mStrings.clear();
+    }
+}
@@ -43,6 +43,18 @@ public class EventGeometry {
         mMinuteHeight = height / 60.0f;
     }
 
+    public float getMinEventHeight() {
+        return mMinEventHeight;
+    }
+
+    // Returns the y coordinate computeEventRect() gives the top of an event
+    // starting at the given minute of the day. It is also the lowest the
+    // bottom of an event ending at that minute can be, before the minimum
+    // height is applied.
+    public float getMinuteY(int top, int minute) {
+        return top + (int) (minute * mMinuteHeight) + (minute / 60) * mHourGap;
+    }
+
     // Computes the rectangle coordinates of the given event on the screen.
     // Returns true if the rectangle is visible on the screen.
     public boolean computeEventRect(int date, int left, int top, int cellWidth, Event event) {
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.calendar;
+
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.provider.CalendarContract.Attendees;
+import android.text.Layout.Alignment;
+import android.text.SpannableStringBuilder;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.text.style.StyleSpan;
+import android.util.LruCache;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A process-wide cache of the text layouts drawn in the event rectangles of
+ * {@link DayView}, shared by the views of a ViewSwitcher.
+ *
+ * Layouts are keyed by event id, attendee status and width rounded down to a
+ * multiple of {@link #WIDTH_BUCKET} pixels, so the instances of a recurring
+ * event share a layout and small changes in the width of an event, such as
+ * while zooming, don't lay the text out again. The text and colors a layout
+ * was built with are checked on every lookup, so an edited event gets a new
+ * layout without the cache having to watch the provider.
+ *
+ * Layouts may be built on any thread, which lets the loader thread lay out
+ * the text of newly loaded events before they are first drawn.
+ */
+/* package */ final class EventLayoutCache {
+    /* package */ static final int WIDTH_BUCKET = 8;
+
+    private static final int MAX_SIZE = 512;
+    private static final int MAX_EVENT_TEXT_LEN = 500;
+    private static final int MAX_KEY_WIDTH = (1 << 17) - 1;
+
+    private static final Pattern DRAW_TEXT_SANITIZER_FILTER = Pattern.compile("[\t\n],");
+
+    private static EventLayoutCache sInstance;
+
+    private final LruCache<Long, Entry> mLayouts = new LruCache<Long, Entry>(MAX_SIZE);
+
+    private static final class Entry {
+        final StaticLayout layout;
+        final CharSequence title;
+        final CharSequence location;
+        final int color;
+        final int textColor;
+        final float textSize;
+        final Typeface typeface;
+
+        Entry(StaticLayout layout, Event event, int textColor, Paint paint) {
+            this.layout = layout;
+            this.title = event.title;
+            this.location = event.location;
+            this.color = event.color;
+            this.textColor = textColor;
+            this.textSize = paint.getTextSize();
+            this.typeface = paint.getTypeface();
+        }
+
+        boolean matches(Event event, int textColor, Paint paint) {
+            return color == event.color && this.textColor == textColor
+                    && textSize == paint.getTextSize() && typeface == paint.getTypeface()
+                    && TextUtils.equals(title, event.title)
+                    && TextUtils.equals(location, event.location);
+        }
+    }
+
+    public static synchronized EventLayoutCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new EventLayoutCache();
+        }
+        return sInstance;
+    }
+
+    private EventLayoutCache() {
+    }
+
+    /**
+     * Returns the width the layouts for a text area of the given width are
+     * built at.
+     */
+    /* package */ static int getBucketWidth(int width) {
+        if (width < WIDTH_BUCKET) {
+            return Math.max(width, 0);
+        }
+        return width - width % WIDTH_BUCKET;
+    }
+
+    /**
+     * Returns the layout of the title and location of event for a text area
+     * of the given width, building it if it isn't cached yet.
+     *
+     * @param paint the paint to lay the text out with, which is only read
+     * @param textColor the color of the text of events that aren't
+     *            invitations
+     */
+    /* package */ StaticLayout getLayout(Event event, int width, Paint paint, int textColor) {
+        final int bucketWidth = getBucketWidth(width);
+        final Long key = getKey(event, bucketWidth);
+        Entry entry = mLayouts.get(key);
+        if (entry != null && entry.matches(event, textColor, paint)) {
+            return entry.layout;
+        }
+
+        StaticLayout layout = buildLayout(event, bucketWidth, paint, textColor);
+        mLayouts.put(key, new Entry(layout, event, textColor, paint));
+        return layout;
+    }
+
+    /**
+     * Drops all the layouts.
+     */
+    /* package */ void clear() {
+        mLayouts.evictAll();
+    }
+
+    private static Long getKey(Event event, int bucketWidth) {
+        return (event.id << 20) | (Math.min(bucketWidth, MAX_KEY_WIDTH) << 3)
+                | (event.selfAttendeeStatus & 7);
+    }
+
+    private static StaticLayout buildLayout(Event event, int width, Paint paint, int textColor) {
+        SpannableStringBuilder bob = new SpannableStringBuilder();
+        if (event.title != null) {
+            // MAX - 1 since we add a space
+            bob.append(drawTextSanitizer(event.title.toString(), MAX_EVENT_TEXT_LEN - 1));
+            bob.setSpan(new StyleSpan(Typeface.BOLD), 0, bob.length(), 0);
+            bob.append(' ');
+        }
+        if (event.location != null) {
+            bob.append(drawTextSanitizer(event.location.toString(),
+                    MAX_EVENT_TEXT_LEN - bob.length()));
+        }
+
+        TextPaint textPaint = new TextPaint(paint);
+        switch (event.selfAttendeeStatus) {
+            case Attendees.ATTENDEE_STATUS_INVITED:
+                textPaint.setColor(event.color);
+                break;
+            case Attendees.ATTENDEE_STATUS_DECLINED:
+                textPaint.setColor(textColor);
+                textPaint.setAlpha(Utils.DECLINED_EVENT_TEXT_ALPHA);
+                break;
+            case Attendees.ATTENDEE_STATUS_NONE: // Your own events
+            case Attendees.ATTENDEE_STATUS_ACCEPTED:
+            case Attendees.ATTENDEE_STATUS_TENTATIVE:
+            default:
+                textPaint.setColor(textColor);
+                break;
+        }
+
+        return new StaticLayout(bob, 0, bob.length(), textPaint, width,
+                Alignment.ALIGN_NORMAL, 1.0f, 0.0f, true, null, width);
+    }
+
+    // Sanitize a string before passing it to drawText or else we get little
+    // squares. For newlines and tabs before a comma, delete the character.
+    // Otherwise, just replace them with a space.
+    private static String drawTextSanitizer(String string, int maxEventTextLen) {
+        Matcher m = DRAW_TEXT_SANITIZER_FILTER.matcher(string);
+        string = m.replaceAll(",");
+
+        int len = string.length();
+        if (maxEventTextLen <= 0) {
+            string = "";
+            len = 0;
+        } else if (len > maxEventTextLen) {
+            string = string.substring(0, maxEventTextLen);
+            len = maxEventTextLen;
+        }
+
+        return string.replace('\n', ' ');
+    }
+}
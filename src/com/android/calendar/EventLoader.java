@@ -19,7 +19,9 @@ package com.android.calendar;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.database.Cursor;
+import android.os.CancellationSignal;
 import android.os.Handler;
+import android.os.OperationCanceledException;
 import android.os.Process;
 import android.provider.CalendarContract;
 import android.provider.CalendarContract.EventDays;
@@ -27,32 +29,52 @@ import android.util.Log;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class EventLoader {
 
+    // The lanes requests are queued in, highest priority first. Each lane
+    // only keeps its newest request, so a request can only ever be made
+    // stale by a newer one of the same kind.
+    private static final int LANE_VISIBLE = 0;
+    private static final int LANE_EVENT_DAYS = 1;
+    private static final int LANE_PREFETCH = 2;
+    private static final int NUM_LANES = 3;
+
+    // The most days queried from the provider at once. Longer missing ranges
+    // are loaded a week at a time, so a view showing several weeks fills the
+    // cache in steps that a newer request can interrupt between.
+    private static final int MAX_QUERY_DAYS = 7;
+
     private Context mContext;
     private Handler mHandler = new Handler();
     private AtomicInteger mSequenceNumber = new AtomicInteger();
 
-    private LinkedBlockingQueue<LoadRequest> mLoaderQueue;
+    // mLock guards the pending and running requests
+    private final Object mLock = new Object();
+    private final LoadRequest[] mPendingRequests = new LoadRequest[NUM_LANES];
+    private int mRunningLane = -1;
+    private CancellationSignal mRunningSignal;
+
     private LoaderThread mLoaderThread;
     private ContentResolver mResolver;
+    private EventCache mEventCache;
+
+    // Which neighbouring range to prefetch first, set from the last swipe
+    private volatile boolean mPrefetchForward = true;
 
     private static interface LoadRequest {
-        public void processRequest(EventLoader eventLoader);
+        /**
+         * Runs the request on the loader thread. Queries should pass
+         * cancellationSignal to the provider; if it is cancelled the
+         * resulting {@link OperationCanceledException} makes the request
+         * count as skipped.
+         */
+        public void processRequest(EventLoader eventLoader,
+                CancellationSignal cancellationSignal);
         public void skipRequest(EventLoader eventLoader);
     }
 
-    private static class ShutdownRequest implements LoadRequest {
-        public void processRequest(EventLoader eventLoader) {
-        }
-
-        public void skipRequest(EventLoader eventLoader) {
-        }
-    }
-
     /**
      *
      * Code for handling requests to get whether days have an event or not
@@ -82,7 +104,8 @@ public class EventLoader {
         }
 
         @Override
-        public void processRequest(EventLoader eventLoader)
+        public void processRequest(EventLoader eventLoader,
+                CancellationSignal cancellationSignal)
         {
             final Handler handler = eventLoader.mHandler;
             ContentResolver cr = eventLoader.mResolver;
@@ -91,7 +114,11 @@ public class EventLoader {
             Arrays.fill(eventDays, false);
 
             //query which days have events
+            final long queryStart = PerfLog.start();
             Cursor cursor = EventDays.query(cr, startDay, numDays, PROJECTION);
+            if (cursor == null) {
+                return;
+            }
             try {
                 int startDayColumnIndex = cursor.getColumnIndexOrThrow(EventDays.STARTDAY);
                 int endDayColumnIndex = cursor.getColumnIndexOrThrow(EventDays.ENDDAY);
@@ -100,19 +127,21 @@ public class EventLoader {
                 while (cursor.moveToNext()) {
                     int firstDay = cursor.getInt(startDayColumnIndex);
                     int lastDay = cursor.getInt(endDayColumnIndex);
-                    //we want the entire range the event occurs, but only within the month
+                    //we want the entire range the event occurs, but only within the range
                     int firstIndex = Math.max(firstDay - startDay, 0);
-                    int lastIndex = Math.min(lastDay - startDay, 30);
+                    int lastIndex = Math.min(lastDay - startDay, numDays - 1);
 
                     for(int i = firstIndex; i <= lastIndex; i++) {
                         eventDays[i] = true;
                     }
                 }
             } finally {
-                if (cursor != null) {
-                    cursor.close();
-                }
+                cursor.close();
             }
+            PerfLog.queryFinished(PerfLog.QUERY_EVENT_DAYS, queryStart);
+            // EventDays can't take the signal itself, but don't report days
+            // for a request that has been replaced in the meantime.
+            cancellationSignal.throwIfCanceled();
             handler.post(uiCallback);
         }
 
@@ -127,26 +156,79 @@ public class EventLoader {
         public int startDay;
         public int numDays;
         public ArrayList<Event> events;
+        public Runnable prepareCallback;
         public Runnable successCallback;
         public Runnable cancelCallback;
 
         public LoadEventsRequest(int id, int startDay, int numDays, ArrayList<Event> events,
-                final Runnable successCallback, final Runnable cancelCallback) {
+                final Runnable prepareCallback, final Runnable successCallback,
+                final Runnable cancelCallback) {
             this.id = id;
             this.startDay = startDay;
             this.numDays = numDays;
             this.events = events;
+            this.prepareCallback = prepareCallback;
             this.successCallback = successCallback;
             this.cancelCallback = cancelCallback;
         }
 
-        public void processRequest(EventLoader eventLoader) {
-            Event.loadEvents(eventLoader.mContext, events, startDay,
-                    numDays, id, eventLoader.mSequenceNumber);
+        public void processRequest(EventLoader eventLoader,
+                CancellationSignal cancellationSignal) {
+            final EventCache cache = eventLoader.mEventCache;
+            final AtomicInteger sequenceNumber = eventLoader.mSequenceNumber;
+            final int endDay = startDay + numDays - 1;
+
+            events.clear();
+            ArrayList<int[]> missing = new ArrayList<int[]>();
+            if (!cache.getMissingRanges(startDay, endDay, missing)) {
+                // Only query the provider for the days we don't have yet
+                splitRanges(missing);
+                int version = cache.getVersion();
+                if (missing.size() == 1 && missing.get(0)[0] == startDay
+                        && missing.get(0)[1] == endDay) {
+                    Event.loadEvents(eventLoader.mContext, events, startDay,
+                            numDays, id, sequenceNumber, cancellationSignal);
+                    if (id == sequenceNumber.get()) {
+                        cache.putEvents(startDay, endDay, events, version);
+                    }
+                } else {
+                    ArrayList<Event> rangeEvents = new ArrayList<Event>();
+                    for (int[] range : missing) {
+                        if (id != sequenceNumber.get()) {
+                            break;
+                        }
+                        Event.loadEvents(eventLoader.mContext, rangeEvents, range[0],
+                                range[1] - range[0] + 1, id, sequenceNumber,
+                                cancellationSignal);
+                        if (id == sequenceNumber.get()) {
+                            cache.putEvents(range[0], range[1], rangeEvents, version);
+                        }
+                    }
+                    // The cache keeps its own copies
+                    Event.recycleAll(rangeEvents);
+                    if (id == sequenceNumber.get()
+                            && !cache.getEvents(startDay, endDay, events)) {
+                        // Part of the range was evicted or changed while we
+                        // were loading, so fall back to a full query.
+                        Event.loadEvents(eventLoader.mContext, events, startDay,
+                                numDays, id, sequenceNumber, cancellationSignal);
+                    }
+                }
+            } else if (!cache.getEvents(startDay, endDay, events)) {
+                Event.loadEvents(eventLoader.mContext, events, startDay,
+                        numDays, id, sequenceNumber, cancellationSignal);
+            }
+
+            // Let the caller process the events off the UI thread
+            if (prepareCallback != null && id == sequenceNumber.get()) {
+                prepareCallback.run();
+            }
 
             // Check if we are still the most recent request.
-            if (id == eventLoader.mSequenceNumber.get()) {
+            if (id == sequenceNumber.get()) {
                 eventLoader.mHandler.post(successCallback);
+                eventLoader.enqueue(LANE_PREFETCH, new PrefetchRequest(id, startDay, numDays,
+                        eventLoader.mPrefetchForward));
             } else {
                 eventLoader.mHandler.post(cancelCallback);
             }
@@ -157,50 +239,149 @@ public class EventLoader {
         }
     }
 
+    /**
+     * Loads the ranges of "numDays" days before and after a visible range
+     * into the {@link EventCache}, so swiping to them doesn't have to wait for
+     * a query. Runs in the lowest priority lane and gives up as soon as
+     * another visible range is requested.
+     */
+    private static class PrefetchRequest implements LoadRequest {
+        public int id;
+        public int startDay;
+        public int numDays;
+        public boolean forward;
+
+        public PrefetchRequest(int id, int startDay, int numDays, boolean forward) {
+            this.id = id;
+            this.startDay = startDay;
+            this.numDays = numDays;
+            this.forward = forward;
+        }
+
+        public void processRequest(EventLoader eventLoader,
+                CancellationSignal cancellationSignal) {
+            int before = startDay - numDays;
+            int after = startDay + numDays;
+            if (forward) {
+                prefetch(eventLoader, after, cancellationSignal);
+                prefetch(eventLoader, before, cancellationSignal);
+            } else {
+                prefetch(eventLoader, before, cancellationSignal);
+                prefetch(eventLoader, after, cancellationSignal);
+            }
+        }
+
+        private void prefetch(EventLoader eventLoader, int firstDay,
+                CancellationSignal cancellationSignal) {
+            final EventCache cache = eventLoader.mEventCache;
+            final AtomicInteger sequenceNumber = eventLoader.mSequenceNumber;
+            ArrayList<int[]> missing = new ArrayList<int[]>();
+            if (cache.getMissingRanges(firstDay, firstDay + numDays - 1, missing)) {
+                return;
+            }
+            splitRanges(missing);
+            int version = cache.getVersion();
+            ArrayList<Event> events = new ArrayList<Event>();
+            for (int[] range : missing) {
+                if (id != sequenceNumber.get()) {
+                    break;
+                }
+                Event.loadEvents(eventLoader.mContext, events, range[0],
+                        range[1] - range[0] + 1, id, sequenceNumber, cancellationSignal);
+                if (id == sequenceNumber.get()) {
+                    cache.putEvents(range[0], range[1], events, version);
+                }
+            }
+            // The cache keeps its own copies
+            Event.recycleAll(events);
+        }
+
+        public void skipRequest(EventLoader eventLoader) {
+        }
+    }
+
+    /**
+     * Splits the ranges of days, given as {first, last} pairs, that are longer
+     * than {@link #MAX_QUERY_DAYS} into ranges of at most that many days.
+     */
+    private static void splitRanges(ArrayList<int[]> ranges) {
+        for (int i = 0; i < ranges.size(); i++) {
+            int[] range = ranges.get(i);
+            if (range[1] - range[0] + 1 > MAX_QUERY_DAYS) {
+                int last = range[1];
+                range[1] = range[0] + MAX_QUERY_DAYS - 1;
+                ranges.add(i + 1, new int[] { range[1] + 1, last });
+            }
+        }
+    }
+
+    /**
+     * Runs the pending requests, highest priority lane first, until it is
+     * shut down.
+     */
     private static class LoaderThread extends Thread {
-        LinkedBlockingQueue<LoadRequest> mQueue;
         EventLoader mEventLoader;
+        boolean mQuit;
 
-        public LoaderThread(LinkedBlockingQueue<LoadRequest> queue, EventLoader eventLoader) {
-            mQueue = queue;
+        public LoaderThread(EventLoader eventLoader) {
             mEventLoader = eventLoader;
         }
 
         public void shutdown() {
-            try {
-                mQueue.put(new ShutdownRequest());
-            } catch (InterruptedException ex) {
-                // The put() method fails with InterruptedException if the
-                // queue is full. This should never happen because the queue
-                // has no limit.
-                Log.e("Cal", "LoaderThread.shutdown() interrupted!");
+            synchronized (mEventLoader.mLock) {
+                mQuit = true;
+                mEventLoader.mLock.notifyAll();
             }
         }
 
         @Override
         public void run() {
-            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            final Object lock = mEventLoader.mLock;
+            final LoadRequest[] pending = mEventLoader.mPendingRequests;
             while (true) {
-                try {
-                    // Wait for the next request
-                    LoadRequest request = mQueue.take();
-
-                    // If there are a bunch of requests already waiting, then
-                    // skip all but the most recent request.
-                    while (!mQueue.isEmpty()) {
-                        // Let the request know that it was skipped
-                        request.skipRequest(mEventLoader);
-
-                        // Skip to the next request
-                        request = mQueue.take();
+                LoadRequest request = null;
+                int lane = -1;
+                CancellationSignal signal;
+                synchronized (lock) {
+                    while (!mQuit && request == null) {
+                        for (lane = 0; lane < NUM_LANES; lane++) {
+                            if (pending[lane] != null) {
+                                request = pending[lane];
+                                pending[lane] = null;
+                                break;
+                            }
+                        }
+                        if (request == null) {
+                            try {
+                                lock.wait();
+                            } catch (InterruptedException ex) {
+                                Log.e("Cal", "background LoaderThread interrupted!");
+                            }
+                        }
                     }
-
-                    if (request instanceof ShutdownRequest) {
+                    if (mQuit) {
                         return;
                     }
-                    request.processRequest(mEventLoader);
-                } catch (InterruptedException ex) {
-                    Log.e("Cal", "background LoaderThread interrupted!");
+                    signal = new CancellationSignal();
+                    mEventLoader.mRunningLane = lane;
+                    mEventLoader.mRunningSignal = signal;
+                }
+
+                Process.setThreadPriority(lane == LANE_PREFETCH
+                        ? Process.THREAD_PRIORITY_LOWEST : Process.THREAD_PRIORITY_BACKGROUND);
+                try {
+                    request.processRequest(mEventLoader, signal);
+                } catch (OperationCanceledException ex) {
+                    request.skipRequest(mEventLoader);
+                } finally {
+                    synchronized (lock) {
+                        // After a stop and start, a new thread may already
+                        // be running a request of its own
+                        if (mEventLoader.mRunningSignal == signal) {
+                            mEventLoader.mRunningLane = -1;
+                            mEventLoader.mRunningSignal = null;
+                        }
+                    }
                 }
             }
         }
@@ -208,15 +389,15 @@ public class EventLoader {
 
     public EventLoader(Context context) {
         mContext = context;
-        mLoaderQueue = new LinkedBlockingQueue<LoadRequest>();
         mResolver = context.getContentResolver();
+        mEventCache = EventCache.getInstance(context);
     }
 
     /**
      * Call this from the activity's onResume()
      */
     public void startBackgroundThread() {
-        mLoaderThread = new LoaderThread(mLoaderQueue, this);
+        mLoaderThread = new LoaderThread(this);
         mLoaderThread.start();
     }
 
@@ -224,11 +405,45 @@ public class EventLoader {
      * Call this from the activity's onPause()
      */
     public void stopBackgroundThread() {
+        synchronized (mLock) {
+            for (int lane = 0; lane < NUM_LANES; lane++) {
+                if (mPendingRequests[lane] != null) {
+                    mPendingRequests[lane].skipRequest(this);
+                    mPendingRequests[lane] = null;
+                }
+            }
+            if (mRunningSignal != null) {
+                mRunningSignal.cancel();
+            }
+        }
         mLoaderThread.shutdown();
     }
 
+    /**
+     * Queues request in lane, replacing and skipping any request already
+     * waiting there. A running request of the same lane is cancelled since
+     * its result is stale now, and so is a running prefetch, so that it
+     * doesn't hold up anything the user is waiting for.
+     */
+    private void enqueue(int lane, LoadRequest request) {
+        synchronized (mLock) {
+            LoadRequest old = mPendingRequests[lane];
+            mPendingRequests[lane] = request;
+            if (old != null) {
+                old.skipRequest(this);
+            }
+            if (mRunningSignal != null
+                    && (mRunningLane == lane || mRunningLane == LANE_PREFETCH)) {
+                mRunningSignal.cancel();
+            }
+            mLock.notifyAll();
+        }
+    }
+
     /**
      * Loads "numDays" days worth of events, starting at start, into events.
+     * Days that are already in the {@link EventCache} are not queried again,
+     * and the neighbouring ranges are prefetched into it afterwards.
      * Posts uiCallback to the {@link Handler} for this view, which will run in the UI thread.
      * Reuses an existing background thread, if events were already being loaded in the background.
      * NOTE: events and uiCallback are not used if an existing background thread gets reused --
@@ -238,6 +453,19 @@ public class EventLoader {
      */
     public void loadEventsInBackground(final int numDays, final ArrayList<Event> events,
             int startDay, final Runnable successCallback, final Runnable cancelCallback) {
+        loadEventsInBackground(numDays, events, startDay, null, successCallback,
+                cancelCallback);
+    }
+
+    /**
+     * Like {@link #loadEventsInBackground(int, ArrayList, int, Runnable, Runnable)},
+     * but also runs prepareCallback on the background thread once the events
+     * are loaded, before successCallback is posted. It is not run if the
+     * request is superseded first.
+     */
+    public void loadEventsInBackground(final int numDays, final ArrayList<Event> events,
+            int startDay, final Runnable prepareCallback, final Runnable successCallback,
+            final Runnable cancelCallback) {
 
         // Increment the sequence number for requests.  We don't care if the
         // sequence numbers wrap around because we test for equality with the
@@ -246,16 +474,18 @@ public class EventLoader {
 
         // Send the load request to the background thread
         LoadEventsRequest request = new LoadEventsRequest(id, startDay, numDays,
-                events, successCallback, cancelCallback);
-
-        try {
-            mLoaderQueue.put(request);
-        } catch (InterruptedException ex) {
-            // The put() method fails with InterruptedException if the
-            // queue is full. This should never happen because the queue
-            // has no limit.
-            Log.e("Cal", "loadEventsInBackground() interrupted!");
-        }
+                events, prepareCallback, successCallback, cancelCallback);
+        enqueue(LANE_VISIBLE, request);
+    }
+
+    /**
+     * Sets the direction the user is moving in, so that the range they are
+     * likely to see next gets prefetched first.
+     *
+     * @param forward true if moving to later days
+     */
+    public void setPrefetchDirection(boolean forward) {
+        mPrefetchForward = forward;
     }
 
     /**
@@ -274,13 +504,6 @@ public class EventLoader {
         // Send load request to the background thread
         LoadEventDaysRequest request = new LoadEventDaysRequest(startDay, numDays,
                 eventDays, uiCallback);
-        try {
-            mLoaderQueue.put(request);
-        } catch (InterruptedException ex) {
-            // The put() method fails with InterruptedException if the
-            // queue is full. This should never happen because the queue
-            // has no limit.
-            Log.e("Cal", "loadEventDaysInBackground() interrupted!");
-        }
+        enqueue(LANE_EVENT_DAYS, request);
     }
 }
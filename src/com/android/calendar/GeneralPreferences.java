@@ -69,6 +69,7 @@ public class GeneralPreferences extends PreferenceFragment implements
     public static final String KEY_DEFAULT_START = "preferences_default_start";
     public static final String KEY_HIDE_DECLINED = "preferences_hide_declined";
     public static final String KEY_WEEK_START_DAY = "preferences_week_start_day";
+    public static final String KEY_WEEK_VIEW_DAYS = "preferences_week_view_days";
     public static final String KEY_SHOW_WEEK_NUM = "preferences_show_week_num";
     public static final String KEY_DAYS_PER_WEEK = "preferences_days_per_week";
     public static final String KEY_SKIP_SETUP = "preferences_skip_setup";
@@ -123,6 +124,7 @@ public class GeneralPreferences extends PreferenceFragment implements
     public static final int DEFAULT_START_VIEW = CalendarController.ViewType.WEEK;
     public static final int DEFAULT_DETAILED_VIEW = CalendarController.ViewType.DAY;
     public static final boolean DEFAULT_SHOW_WEEK_NUM = false;
+    public static final String DEFAULT_WEEK_VIEW_DAYS = "7";
     // This should match the XML file.
     public static final String DEFAULT_RINGTONE = "content://settings/system/notification_sound";
 
@@ -142,6 +144,7 @@ public class GeneralPreferences extends PreferenceFragment implements
     ListPreference mDefaultReminder;
     ListPreference mSnoozeDelay;
     ListPreference mDefaultStart;
+    ListPreference mWeekViewDays;
 
     private String mTimeZoneId;
 
@@ -202,6 +205,9 @@ public class GeneralPreferences extends PreferenceFragment implements
         mDefaultStart = (ListPreference) preferenceScreen.findPreference(KEY_DEFAULT_START);
         mDefaultStart.setOnPreferenceChangeListener(this);
 
+        mWeekViewDays = (ListPreference) preferenceScreen.findPreference(KEY_WEEK_VIEW_DAYS);
+        mWeekViewDays.setOnPreferenceChangeListener(this);
+
         mSnoozeDelay = (ListPreference) preferenceScreen.findPreference(KEY_DEFAULT_SNOOZE_DELAY);
         buildSnoozeDelayEntries();
 
@@ -209,6 +215,7 @@ public class GeneralPreferences extends PreferenceFragment implements
         mDefaultReminder.setSummary(mDefaultReminder.getEntry());
         mSnoozeDelay.setSummary(mSnoozeDelay.getEntry());
         mDefaultStart.setSummary(mDefaultStart.getEntry());
+        mWeekViewDays.setSummary(mWeekViewDays.getEntry());
 
         // This triggers an asynchronous call to the provider to refresh the data in shared pref
         mTimeZoneId = Utils.getTimeZone(activity, null);
@@ -368,6 +375,10 @@ public class GeneralPreferences extends PreferenceFragment implements
             int i = mDefaultStart.findIndexOfValue((String) newValue);
             mDefaultStart.setSummary(mDefaultStart.getEntries()[i]);
             return true;
+        } else if (preference == mWeekViewDays) {
+            int i = mWeekViewDays.findIndexOfValue((String) newValue);
+            mWeekViewDays.setSummary(mWeekViewDays.getEntries()[i]);
+            return true;
         } else {
             return true;
         }
@@ -60,10 +60,10 @@ public class LunarUtils {
      * language is zh-cn.
      */
     public static boolean showLunar(Context context) {
+        // Called while drawing, so compare without allocating
         Locale locale = Locale.getDefault();
-        String language = locale.getLanguage().toLowerCase();
-        String country = locale.getCountry().toLowerCase();
-        return ("zh".equals(language) && "cn".equals(country));
+        return "zh".equalsIgnoreCase(locale.getLanguage())
+                && "cn".equalsIgnoreCase(locale.getCountry());
     }
 
     /**
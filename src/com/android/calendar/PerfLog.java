@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.calendar;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Records how long the calendar views take to draw their frames, how long
+ * after their events were requested they first draw them, and how long the
+ * provider queries behind them take, so releases can be compared on the same
+ * calendars.
+ *
+ * Records go into a fixed size ring buffer without allocating, and are
+ * summarized by {@link #dump}, which backs
+ * "adb shell dumpsys activity com.android.calendar/.AllInOneActivity".
+ * Passing "--perf-reset" to the dump clears the buffer afterwards, and
+ * "--perf-raw" lists every record. Recording is off unless enabled with
+ * "adb shell setprop log.tag.PerfLog DEBUG" before the app starts.
+ */
+public final class PerfLog {
+    private static final String TAG = "PerfLog";
+
+    public static final int VIEW_DAY = 0;
+    public static final int VIEW_MONTH = 1;
+    public static final int VIEW_AGENDA = 2;
+    public static final int VIEW_YEAR = 3;
+    private static final String[] VIEW_NAMES = {
+            "day", "month", "agenda", "year"
+    };
+
+    public static final int QUERY_INSTANCES = 0;
+    public static final int QUERY_EVENT_DAYS = 1;
+    public static final int QUERY_MONTH = 2;
+    public static final int QUERY_AGENDA = 3;
+    private static final String[] QUERY_NAMES = {
+            "instances", "event days", "month", "agenda"
+    };
+
+    private static final int KIND_FRAME = 0;
+    private static final int KIND_LOAD_TO_DRAW = 1;
+    private static final int KIND_QUERY = 2;
+    private static final String[] KIND_NAMES = {
+            "frame", "load to first draw", "query"
+    };
+
+    private static final int CAPACITY = 4096;
+    // Frames taking longer than this miss a vsync at 60Hz
+    private static final long JANK_NANOS = 16666667;
+
+    private static final boolean sEnabled = Log.isLoggable(TAG, Log.DEBUG);
+
+    // The ring buffer, with the next record going at sNext
+    private static final long[] sEndNanos = new long[CAPACITY];
+    private static final long[] sDurationNanos = new long[CAPACITY];
+    private static final byte[] sKinds = new byte[CAPACITY];
+    private static final byte[] sIds = new byte[CAPACITY];
+    private static int sNext;
+    private static int sCount;
+
+    // When the events shown by each view were last requested, or 0, and
+    // whether they have arrived since
+    private static final long[] sLoadRequestNanos = new long[VIEW_NAMES.length];
+    private static final boolean[] sLoadFinished = new boolean[VIEW_NAMES.length];
+
+    private PerfLog() {
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Returns the time to pass to the recording methods as a start time, or
+     * 0 if recording is off.
+     */
+    public static long start() {
+        return sEnabled ? SystemClock.elapsedRealtimeNanos() : 0;
+    }
+
+    /**
+     * Records a frame of view that started drawing at startNanos.
+     */
+    public static void frameDrawn(int view, long startNanos) {
+        if (sEnabled) {
+            record(KIND_FRAME, view, startNanos);
+        }
+    }
+
+    /**
+     * Records a provider query that started at startNanos.
+     */
+    public static void queryFinished(int query, long startNanos) {
+        if (sEnabled) {
+            record(KIND_QUERY, query, startNanos);
+        }
+    }
+
+    /**
+     * Notes that view asked for the events to show, which starts the
+     * latency recorded by {@link #drawnWithData}.
+     */
+    public static void loadRequested(int view) {
+        if (sEnabled) {
+            synchronized (PerfLog.class) {
+                sLoadRequestNanos[view] = SystemClock.elapsedRealtimeNanos();
+                sLoadFinished[view] = false;
+            }
+        }
+    }
+
+    /**
+     * Notes that the events view asked for have been handed to it.
+     */
+    public static void loadFinished(int view) {
+        if (sEnabled) {
+            synchronized (PerfLog.class) {
+                if (sLoadRequestNanos[view] != 0) {
+                    sLoadFinished[view] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Called when view draws with events, to record the time since they were
+     * requested if this is the first draw since they arrived.
+     */
+    public static void drawnWithData(int view) {
+        if (sEnabled) {
+            synchronized (PerfLog.class) {
+                if (!sLoadFinished[view]) {
+                    return;
+                }
+                record(KIND_LOAD_TO_DRAW, view, sLoadRequestNanos[view]);
+                sLoadRequestNanos[view] = 0;
+                sLoadFinished[view] = false;
+            }
+        }
+    }
+
+    private static synchronized void record(int kind, int id, long startNanos) {
+        final long now = SystemClock.elapsedRealtimeNanos();
+        sEndNanos[sNext] = now;
+        sDurationNanos[sNext] = now - startNanos;
+        sKinds[sNext] = (byte) kind;
+        sIds[sNext] = (byte) id;
+        sNext = (sNext + 1) % CAPACITY;
+        if (sCount < CAPACITY) {
+            sCount++;
+        }
+    }
+
+    /**
+     * Prints a summary of the records for each view and query, as dumpsys
+     * calls {@link android.app.Activity#dump}.
+     */
+    public static synchronized void dump(String prefix, PrintWriter writer, String[] args) {
+        boolean raw = false;
+        boolean reset = false;
+        if (args != null) {
+            for (String arg : args) {
+                if ("--perf-raw".equals(arg)) {
+                    raw = true;
+                } else if ("--perf-reset".equals(arg)) {
+                    reset = true;
+                }
+            }
+        }
+
+        writer.print(prefix);
+        writer.println("PerfLog:");
+        final String innerPrefix = prefix + "  ";
+        if (!sEnabled) {
+            writer.print(innerPrefix);
+            writer.println("disabled, enable with: setprop log.tag." + TAG + " DEBUG");
+            return;
+        }
+        writer.print(innerPrefix);
+        writer.println(sCount + " records, durations in ms");
+
+        final int first = (sNext - sCount + CAPACITY) % CAPACITY;
+        long[] durations = new long[sCount];
+        for (int kind = 0; kind < KIND_NAMES.length; kind++) {
+            final String[] names = kind == KIND_QUERY ? QUERY_NAMES : VIEW_NAMES;
+            for (int id = 0; id < names.length; id++) {
+                int count = 0;
+                int janky = 0;
+                for (int i = 0; i < sCount; i++) {
+                    int pos = (first + i) % CAPACITY;
+                    if (sKinds[pos] == kind && sIds[pos] == id) {
+                        durations[count++] = sDurationNanos[pos];
+                        if (sDurationNanos[pos] > JANK_NANOS) {
+                            janky++;
+                        }
+                    }
+                }
+                if (count == 0) {
+                    continue;
+                }
+                Arrays.sort(durations, 0, count);
+                writer.print(innerPrefix);
+                writer.print(names[id] + " " + KIND_NAMES[kind] + ": n=" + count
+                        + " p50=" + millis(durations[count / 2])
+                        + " p90=" + millis(durations[count * 9 / 10])
+                        + " p99=" + millis(durations[count * 99 / 100])
+                        + " max=" + millis(durations[count - 1]));
+                if (kind == KIND_FRAME) {
+                    writer.print(" janky=" + janky);
+                }
+                writer.println();
+            }
+        }
+
+        if (raw) {
+            for (int i = 0; i < sCount; i++) {
+                int pos = (first + i) % CAPACITY;
+                String[] names = sKinds[pos] == KIND_QUERY ? QUERY_NAMES : VIEW_NAMES;
+                writer.print(innerPrefix);
+                writer.println(sEndNanos[pos] / 1000000 + " " + names[sIds[pos]] + " "
+                        + KIND_NAMES[sKinds[pos]] + " " + millis(sDurationNanos[pos]));
+            }
+        }
+
+        if (reset) {
+            sNext = 0;
+            sCount = 0;
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.US, "%.2f", nanos / 1000000.0);
+    }
+}
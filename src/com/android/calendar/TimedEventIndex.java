@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.calendar;
+
+import java.util.ArrayList;
+
+/**
+ * Indexes the events that are drawn in the day columns of a {@link DayView},
+ * by day and by start minute, so that only the events intersecting a range of
+ * rows need to be looked at when drawing or hit testing.
+ *
+ * For each day the events are sorted by the minute they start at on that day,
+ * along with a running maximum of the minutes they end at. Events that end
+ * above a range can then be skipped with a binary search on the running
+ * maximum, and events that start below it with one on the starts.
+ */
+/* package */ final class TimedEventIndex {
+    private int mFirstJulianDay;
+    private int mNumDays;
+
+    // Positions [mOffsets[day], mOffsets[day + 1]) hold the events of a day
+    private int[] mOffsets = new int[1];
+    // The index in the events list of the event at each position
+    private int[] mEvents = new int[0];
+    // The start minute of each event, clipped to its day
+    private int[] mStarts = new int[0];
+    // The latest end minute, clipped to the day, of any event up to here
+    private int[] mMaxEnds = new int[0];
+
+    /**
+     * Indexes the events that aren't drawn as all-day events on each of the
+     * numDays days starting at firstJulianDay.
+     */
+    void build(ArrayList<Event> events, int firstJulianDay, int numDays) {
+        mFirstJulianDay = firstJulianDay;
+        mNumDays = numDays;
+        final int lastJulianDay = firstJulianDay + numDays - 1;
+        final int count = events.size();
+
+        // Count the events on each day
+        int[] offsets = new int[numDays + 1];
+        for (int i = 0; i < count; i++) {
+            Event e = events.get(i);
+            if (e.drawAsAllday() || e.startDay > lastJulianDay || e.endDay < firstJulianDay) {
+                continue;
+            }
+            int first = Math.max(e.startDay, firstJulianDay) - firstJulianDay;
+            int last = Math.min(e.endDay, lastJulianDay) - firstJulianDay;
+            for (int day = first; day <= last; day++) {
+                offsets[day + 1]++;
+            }
+        }
+        for (int day = 0; day < numDays; day++) {
+            offsets[day + 1] += offsets[day];
+        }
+
+        // Fill in each day in the order of the list, then sort by start
+        final int total = offsets[numDays];
+        int[] indices = new int[total];
+        int[] starts = new int[total];
+        int[] ends = new int[total];
+        int[] next = new int[numDays];
+        System.arraycopy(offsets, 0, next, 0, numDays);
+        for (int i = 0; i < count; i++) {
+            Event e = events.get(i);
+            if (e.drawAsAllday() || e.startDay > lastJulianDay || e.endDay < firstJulianDay) {
+                continue;
+            }
+            int first = Math.max(e.startDay, firstJulianDay);
+            int last = Math.min(e.endDay, lastJulianDay);
+            for (int date = first; date <= last; date++) {
+                int pos = next[date - firstJulianDay]++;
+                indices[pos] = i;
+                starts[pos] = e.startDay < date ? 0 : e.startTime;
+                ends[pos] = e.endDay > date ? DayView.MINUTES_PER_DAY : e.endTime;
+            }
+        }
+        int[] maxEnds = new int[total];
+        for (int day = 0; day < numDays; day++) {
+            int from = offsets[day];
+            int to = offsets[day + 1];
+            sortByStart(indices, starts, ends, from, to);
+            int maxEnd = 0;
+            for (int pos = from; pos < to; pos++) {
+                maxEnd = Math.max(maxEnd, ends[pos]);
+                maxEnds[pos] = maxEnd;
+            }
+        }
+
+        mOffsets = offsets;
+        mEvents = indices;
+        mStarts = starts;
+        mMaxEnds = maxEnds;
+    }
+
+    /**
+     * Returns the first position of the events on date that may reach
+     * down to y or below, for events laid out by geometry from top.
+     */
+    int findFirst(int date, float y, int top, EventGeometry geometry) {
+        int day = date - mFirstJulianDay;
+        if (day < 0 || day >= mNumDays) {
+            return 0;
+        }
+        // The bottom computed for an event is at most the later of where its
+        // end minute starts and its minimum height below its top.
+        int lo = mOffsets[day];
+        int hi = mOffsets[day + 1];
+        final float minHeight = geometry.getMinEventHeight();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            float bottom = Math.max(geometry.getMinuteY(top, mMaxEnds[mid]),
+                    geometry.getMinuteY(top, mStarts[mid]) + minHeight);
+            if (bottom < y) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the position after the last event on date that starts at or
+     * above y, for events laid out by geometry from top.
+     */
+    int findEnd(int date, float y, int top, EventGeometry geometry) {
+        int day = date - mFirstJulianDay;
+        if (day < 0 || day >= mNumDays) {
+            return 0;
+        }
+        int lo = mOffsets[day];
+        int hi = mOffsets[day + 1];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (geometry.getMinuteY(top, mStarts[mid]) <= y) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the index in the events list of the event at position pos.
+     */
+    int getEventIndex(int pos) {
+        return mEvents[pos];
+    }
+
+    /**
+     * Sorts the positions [from, to) by start minute, keeping the list order
+     * for equal starts. Insertion sort, since the list is already sorted by
+     * start time except around daylight saving changes.
+     */
+    private static void sortByStart(int[] indices, int[] starts, int[] ends, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            int index = indices[i];
+            int start = starts[i];
+            int end = ends[i];
+            int j = i - 1;
+            while (j >= from && starts[j] > start) {
+                indices[j + 1] = indices[j];
+                starts[j + 1] = starts[j];
+                ends[j + 1] = ends[j];
+                j--;
+            }
+            indices[j + 1] = index;
+            starts[j + 1] = start;
+            ends[j + 1] = end;
+        }
+    }
+}
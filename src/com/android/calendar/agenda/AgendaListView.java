@@ -19,6 +19,7 @@ package com.android.calendar.agenda;
 import com.android.calendar.CalendarController;
 import com.android.calendar.CalendarController.EventType;
 import com.android.calendar.DeleteEventHelper;
+import com.android.calendar.PerfLog;
 import com.android.calendar.R;
 import com.android.calendar.CalendarUtils.ShareEventListener;
 import com.android.calendar.CalendarUtils.Triple;
@@ -28,6 +29,7 @@ import com.android.calendar.agenda.AgendaWindowAdapter.DayAdapterInfo;
 import com.android.calendar.agenda.AgendaWindowAdapter.AgendaItem;
 
 import android.content.Context;
+import android.graphics.Canvas;
 import android.graphics.Rect;
 import android.os.Handler;
 import android.provider.CalendarContract.Attendees;
@@ -463,4 +465,14 @@ public class AgendaListView extends ListView implements OnItemClickListener {
         Utils.resetMidnightUpdater(mHandler, mMidnightUpdater);
         resetPastEventsUpdater();
     }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        final long frameStart = PerfLog.start();
+        super.dispatchDraw(canvas);
+        PerfLog.frameDrawn(PerfLog.VIEW_AGENDA, frameStart);
+        if (getCount() > 0) {
+            PerfLog.drawnWithData(PerfLog.VIEW_AGENDA);
+        }
+    }
 }
@@ -44,6 +44,7 @@ import android.widget.TextView;
 import com.android.calendar.CalendarController;
 import com.android.calendar.CalendarController.EventType;
 import com.android.calendar.CalendarController.ViewType;
+import com.android.calendar.PerfLog;
 import com.android.calendar.R;
 import com.android.calendar.StickyHeaderListView;
 import com.android.calendar.Utils;
@@ -246,6 +247,9 @@ public class AgendaWindowAdapter extends BaseAdapter
         String searchQuery;
         int queryType;
         long id;
+        // When the query was handed to the query handler, for PerfLog. Not
+        // part of equals, since it doesn't change what is queried.
+        long requestNanos;
 
         public QuerySpec(int queryType) {
             this.queryType = queryType;
@@ -962,6 +966,8 @@ public class AgendaWindowAdapter extends BaseAdapter
 
         Uri queryUri = buildQueryUri(
                 queryData.start, queryData.end, queryData.searchQuery);
+        queryData.requestNanos = PerfLog.start();
+        PerfLog.loadRequested(PerfLog.VIEW_AGENDA);
         mQueryHandler.startQuery(0, queryData, queryUri,
                 PROJECTION, buildQuerySelection(), null,
                 AGENDA_SORT_ORDER);
@@ -1003,6 +1009,9 @@ public class AgendaWindowAdapter extends BaseAdapter
               }
               return;
             }
+            // Includes the time spent waiting on the query handler's threads
+            PerfLog.queryFinished(PerfLog.QUERY_AGENDA, data.requestNanos);
+            PerfLog.loadFinished(PerfLog.VIEW_AGENDA);
 
             if (BASICLOG) {
                 long queryEndMillis = System.nanoTime();
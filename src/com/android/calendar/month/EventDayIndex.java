@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.calendar.month;
+
+import com.android.calendar.EventColumns;
+
+/**
+ * The events on each day of a loaded range of the month view, stored as one
+ * array of event indices with the positions each day starts at, rather than
+ * an array per day. Days are addressed by their index in the range.
+ *
+ * The index is immutable once built, so it can be built on a background
+ * thread and shared by all the weeks of the month view, each of which only
+ * keeps the day its own days start at.
+ */
+public final class EventDayIndex {
+    private final int mNumDays;
+    // Positions [mOffsets[day], mOffsets[day + 1]) of mEvents hold the
+    // events of a day
+    private final int[] mOffsets;
+    // The index in the EventColumns of the event at each position, in the
+    // order the events were added
+    private final int[] mEvents;
+
+    private EventDayIndex(int numDays, int[] offsets, int[] events) {
+        mNumDays = numDays;
+        mOffsets = offsets;
+        mEvents = events;
+    }
+
+    /**
+     * Indexes the events of events on each of the numDays days starting at
+     * firstJulianDay.
+     */
+    public static EventDayIndex build(EventColumns events, int firstJulianDay, int numDays) {
+        final int size = events == null ? 0 : events.size();
+
+        // Count the events starting and ending on each day, so long events
+        // don't cost more to count than short ones. A running sum turns the
+        // counts into the number of events on each day, and a second one
+        // into the position each day starts at.
+        int[] offsets = new int[numDays + 1];
+        for (int i = 0; i < size; i++) {
+            int startDay = Math.max(events.getStartDay(i) - firstJulianDay, 0);
+            int endDay = Math.min(events.getEndDay(i) - firstJulianDay + 1, numDays);
+            if (startDay < endDay) {
+                offsets[startDay + 1]++;
+                if (endDay < numDays) {
+                    offsets[endDay + 1]--;
+                }
+            }
+        }
+        for (int day = 1; day <= numDays; day++) {
+            offsets[day] += offsets[day - 1];
+        }
+        for (int day = 1; day <= numDays; day++) {
+            offsets[day] += offsets[day - 1];
+        }
+
+        // Fill in the events of each day
+        int[] indices = new int[offsets[numDays]];
+        int[] next = new int[numDays];
+        System.arraycopy(offsets, 0, next, 0, numDays);
+        for (int i = 0; i < size; i++) {
+            int startDay = Math.max(events.getStartDay(i) - firstJulianDay, 0);
+            int endDay = Math.min(events.getEndDay(i) - firstJulianDay + 1, numDays);
+            for (int day = startDay; day < endDay; day++) {
+                indices[next[day]++] = i;
+            }
+        }
+        return new EventDayIndex(numDays, offsets, indices);
+    }
+
+    public int getNumDays() {
+        return mNumDays;
+    }
+
+    /**
+     * Returns the number of events on the day at index day.
+     */
+    public int getCount(int day) {
+        return mOffsets[day + 1] - mOffsets[day];
+    }
+
+    /**
+     * Returns the index in the events of the event at position pos of the
+     * day at index day.
+     */
+    public int getEvent(int day, int pos) {
+        return mEvents[mOffsets[day] + pos];
+    }
+}
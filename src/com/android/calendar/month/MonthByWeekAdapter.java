@@ -33,11 +33,10 @@ import android.widget.AbsListView.LayoutParams;
 import com.android.calendar.CalendarController;
 import com.android.calendar.CalendarController.EventType;
 import com.android.calendar.CalendarController.ViewType;
-import com.android.calendar.Event;
+import com.android.calendar.EventColumns;
 import com.android.calendar.R;
 import com.android.calendar.Utils;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 
 public class MonthByWeekAdapter extends SimpleWeeksAdapter {
@@ -57,8 +56,11 @@ public class MonthByWeekAdapter extends SimpleWeeksAdapter {
     protected int mOrientation = Configuration.ORIENTATION_LANDSCAPE;
     private final boolean mShowAgendaWithMonth;
 
-    protected ArrayList<ArrayList<Event>> mEventDayList = new ArrayList<ArrayList<Event>>();
-    protected ArrayList<Event> mEvents = null;
+    // The events of mEvents on each loaded day, or null if none were loaded
+    protected EventDayIndex mEventDayIndex = null;
+    protected EventColumns mEvents = null;
+    // The time range labels of mEvents, or null if they weren't formatted
+    protected String[] mEventTimeLabels = null;
 
     private boolean mAnimateToday = false;
     private long mAnimateTime = 0;
@@ -127,7 +129,19 @@ public class MonthByWeekAdapter extends SimpleWeeksAdapter {
         notifyDataSetChanged();
     }
 
-    public void setEvents(int firstJulianDay, int numDays, ArrayList<Event> events) {
+    public void setEvents(int firstJulianDay, int numDays, EventColumns events) {
+        setEvents(firstJulianDay, numDays, events,
+                EventDayIndex.build(events, firstJulianDay, numDays), null);
+    }
+
+    /**
+     * Sets the events loaded for the numDays days starting at firstJulianDay
+     * along with the index of the events on each day and their time range
+     * labels, which the caller may have built off the UI thread. The weeks
+     * format the labels they show themselves if timeLabels is null.
+     */
+    public void setEvents(int firstJulianDay, int numDays, EventColumns events,
+            EventDayIndex eventDayIndex, String[] timeLabels) {
         if (mIsMiniMonth) {
             if (Log.isLoggable(TAG, Log.ERROR)) {
                 Log.e(TAG, "Attempted to set events for mini view. Events only supported in full"
@@ -138,61 +152,26 @@ public class MonthByWeekAdapter extends SimpleWeeksAdapter {
         mEvents = events;
         mFirstJulianDay = firstJulianDay;
         mQueryDays = numDays;
-        // Create a new list, this is necessary since the weeks are referencing
-        // pieces of the old list
-        ArrayList<ArrayList<Event>> eventDayList = new ArrayList<ArrayList<Event>>();
-        for (int i = 0; i < numDays; i++) {
-            eventDayList.add(new ArrayList<Event>());
-        }
-
-        if (events == null || events.size() == 0) {
-            if(Log.isLoggable(TAG, Log.DEBUG)) {
+        // The weeks keep referencing the old index, so it is replaced rather
+        // than updated
+        mEventDayIndex = eventDayIndex;
+        mEventTimeLabels = timeLabels;
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            if (events == null || events.size() == 0) {
                 Log.d(TAG, "No events. Returning early--go schedule something fun.");
-            }
-            mEventDayList = eventDayList;
-            refresh();
-            return;
-        }
-
-        // Compute the new set of days with events
-        for (Event event : events) {
-            int startDay = event.startDay - mFirstJulianDay;
-            int endDay = event.endDay - mFirstJulianDay + 1;
-            if (startDay < numDays || endDay >= 0) {
-                if (startDay < 0) {
-                    startDay = 0;
-                }
-                if (startDay > numDays) {
-                    continue;
-                }
-                if (endDay < 0) {
-                    continue;
-                }
-                if (endDay > numDays) {
-                    endDay = numDays;
-                }
-                for (int j = startDay; j < endDay; j++) {
-                    eventDayList.get(j).add(event);
-                }
+            } else {
+                Log.d(TAG, "Processed " + events.size() + " events.");
             }
         }
-        if(Log.isLoggable(TAG, Log.DEBUG)) {
-            Log.d(TAG, "Processed " + events.size() + " events.");
-        }
-        mEventDayList = eventDayList;
         refresh();
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
         if (mIsMiniMonth) {
             return super.getView(position, convertView, parent);
         }
         MonthWeekEventsView v;
-        LayoutParams params = new LayoutParams(
-                LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT);
-        HashMap<String, Integer> drawingParams = null;
         boolean isAnimatingToday = false;
         if (convertView != null) {
             v = (MonthWeekEventsView) convertView;
@@ -208,42 +187,35 @@ public class MonthByWeekAdapter extends SimpleWeeksAdapter {
                     mAnimateTime = 0;
                 } else {
                     isAnimatingToday = true;
-                    // There is a bug that causes invalidates to not work some
-                    // of the time unless we recreate the view.
-                    v = new MonthWeekEventsView(mContext);
-               }
-            } else {
-                drawingParams = (HashMap<String, Integer>) v.getTag();
+                }
             }
         } else {
             v = new MonthWeekEventsView(mContext);
+            v.setLayoutParams(new LayoutParams(
+                    LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+            v.setClickable(true);
+            v.setOnTouchListener(this);
         }
-        if (drawingParams == null) {
-            drawingParams = new HashMap<String, Integer>();
-        }
-        drawingParams.clear();
-
-        v.setLayoutParams(params);
-        v.setClickable(true);
-        v.setOnTouchListener(this);
 
         int selectedDay = -1;
         if (mSelectedWeek == position) {
             selectedDay = mSelectedDay.weekDay;
         }
 
-        drawingParams.put(SimpleWeekView.VIEW_PARAMS_HEIGHT,
-                (parent.getHeight() + parent.getTop()) / mNumWeeks);
-        drawingParams.put(SimpleWeekView.VIEW_PARAMS_SELECTED_DAY, selectedDay);
-        drawingParams.put(SimpleWeekView.VIEW_PARAMS_SHOW_WK_NUM, mShowWeekNumber ? 1 : 0);
-        drawingParams.put(SimpleWeekView.VIEW_PARAMS_WEEK_START, mFirstDayOfWeek);
-        drawingParams.put(SimpleWeekView.VIEW_PARAMS_NUM_DAYS, mDaysPerWeek);
-        drawingParams.put(SimpleWeekView.VIEW_PARAMS_WEEK, position);
-        drawingParams.put(SimpleWeekView.VIEW_PARAMS_FOCUS_MONTH, mFocusMonth);
-        drawingParams.put(MonthWeekEventsView.VIEW_PARAMS_ORIENTATION, mOrientation);
+        final WeekParams drawingParams = mDrawingParams;
+        drawingParams.reset();
+        drawingParams.height = (parent.getHeight() + parent.getTop()) / mNumWeeks;
+        drawingParams.selectedDay = selectedDay;
+        drawingParams.showWeekNumber = mShowWeekNumber;
+        drawingParams.weekStart = mFirstDayOfWeek;
+        drawingParams.numDays = mDaysPerWeek;
+        drawingParams.week = position;
+        drawingParams.focusMonth = mFocusMonth;
+        drawingParams.orientation = mOrientation;
 
         if (isAnimatingToday) {
-            drawingParams.put(MonthWeekEventsView.VIEW_PARAMS_ANIMATE_TODAY, 1);
+            // The animator invalidates the view as it runs
+            drawingParams.animateToday = true;
             mAnimateToday = false;
         }
 
@@ -253,25 +225,25 @@ public class MonthByWeekAdapter extends SimpleWeeksAdapter {
     }
 
     private void sendEventsToView(MonthWeekEventsView v) {
-        if (mEventDayList.size() == 0) {
+        if (mEventDayIndex == null || mEventDayIndex.getNumDays() == 0) {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, "No events loaded, did not pass any events to view.");
             }
-            v.setEvents(null, null);
+            v.setEvents(null, null, 0, null);
             return;
         }
         int viewJulianDay = v.getFirstJulianDay();
         int start = viewJulianDay - mFirstJulianDay;
         int end = start + v.mNumDays;
-        if (start < 0 || end > mEventDayList.size()) {
+        if (start < 0 || end > mEventDayIndex.getNumDays()) {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, "Week is outside range of loaded events. viewStart: " + viewJulianDay
                         + " eventsStart: " + mFirstJulianDay);
             }
-            v.setEvents(null, null);
+            v.setEvents(null, null, 0, null);
             return;
         }
-        v.setEvents(mEventDayList.subList(start, end), mEvents);
+        v.setEvents(mEvents, mEventDayIndex, start, mEventTimeLabels);
     }
 
     @Override
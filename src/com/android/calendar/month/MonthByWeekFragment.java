@@ -29,6 +29,7 @@ import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.provider.CalendarContract;
 import android.provider.CalendarContract.Attendees;
 import android.provider.CalendarContract.Calendars;
 import android.provider.CalendarContract.Instances;
@@ -49,14 +50,19 @@ import com.android.calendar.CalendarController.EventInfo;
 import com.android.calendar.CalendarController.EventType;
 import com.android.calendar.CalendarController.ViewType;
 import com.android.calendar.Event;
+import com.android.calendar.EventCache;
+import com.android.calendar.EventColumns;
+import com.android.calendar.PerfLog;
 import com.android.calendar.R;
 import com.android.calendar.Utils;
 import com.android.calendar.event.CreateEventDialogFragment;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MonthByWeekFragment extends SimpleDayPickerFragment implements
         CalendarController.EventHandler, LoaderManager.LoaderCallbacks<Cursor>, OnScrollListener,
@@ -70,6 +76,19 @@ public class MonthByWeekFragment extends SimpleDayPickerFragment implements
     private static final String WHERE_CALENDARS_VISIBLE = Calendars.VISIBLE + "=1";
     private static final String INSTANCES_SORT_ORDER = Instances.START_DAY + ","
             + Instances.START_MINUTE + "," + Instances.TITLE;
+    // Matches INSTANCES_SORT_ORDER
+    private static final Comparator<Event> INSTANCES_ORDER = new Comparator<Event>() {
+        @Override
+        public int compare(Event lhs, Event rhs) {
+            if (lhs.startDay != rhs.startDay) {
+                return lhs.startDay < rhs.startDay ? -1 : 1;
+            }
+            if (lhs.startTime != rhs.startTime) {
+                return lhs.startTime < rhs.startTime ? -1 : 1;
+            }
+            return lhs.title.toString().compareTo(rhs.title.toString());
+        }
+    };
     protected static boolean mShowDetailsInMonth = false;
 
     protected float mMinimumTwoMonthFlingVelocity;
@@ -90,6 +109,18 @@ public class MonthByWeekFragment extends SimpleDayPickerFragment implements
 
     private CursorLoader mLoader;
     private Uri mEventUri;
+    // The days covered by mEventUri. When the EventCache can be used this is
+    // just the part of the loaded range that wasn't cached when the range
+    // last moved, and the rest is read from the cache.
+    private int mQueryFirstJulianDay;
+    private int mQueryLastJulianDay;
+    private boolean mQueryUsesCache;
+    // Set while the whole loaded range is shown from the EventCache, so the
+    // loader has nothing to query until the events change
+    private boolean mShownFromCache;
+    // The events of the loaded range built on the loader thread after the
+    // last query it ran
+    private volatile LoadedMonth mLoadedMonth;
     private final Time mDesiredDay = new Time();
 
     private volatile boolean mShouldLoad = true;
@@ -141,9 +172,18 @@ public class MonthByWeekFragment extends SimpleDayPickerFragment implements
                 // Stop any previous loads while we update the uri
                 stopLoader();
 
-                // Start the loader again
-                mEventUri = updateUri();
+                updateLoadedRange();
+                PerfLog.loadRequested(PerfLog.VIEW_MONTH);
+                mShownFromCache = loadEventsFromCache();
+                if (mShownFromCache) {
+                    // Every week is cached, so there is nothing to query. The
+                    // loader only watches for changes to reload on.
+                    mLoader.startLoading();
+                    return;
+                }
 
+                // Start the loader again on the weeks that aren't cached
+                mEventUri = updateUri();
                 mLoader.setUri(mEventUri);
                 mLoader.startLoading();
                 mLoader.onContentChanged();
@@ -166,23 +206,45 @@ public class MonthByWeekFragment extends SimpleDayPickerFragment implements
 
 
     /**
-     * Updates the uri used by the loader according to the current position of
+     * Updates the range of days to load according to the current position of
      * the listview.
-     *
-     * @return The new Uri to use
      */
-    private Uri updateUri() {
+    private void updateLoadedRange() {
         SimpleWeekView child = (SimpleWeekView) mListView.getChildAt(0);
         if (child != null) {
             int julianDay = child.getFirstJulianDay();
             mFirstLoadedJulianDay = julianDay;
         }
+        mLastLoadedJulianDay = mFirstLoadedJulianDay + (mNumWeeks + 2 * WEEKS_BUFFER) * 7;
+    }
+
+    /**
+     * Updates the days the loader queries for the loaded range. If the
+     * {@link EventCache} can be used only the days between the first and the
+     * last ones missing from it are queried, so scrolling by a few weeks only
+     * queries the weeks scrolled into view. Weeks far from the loaded range
+     * drop out of the cache as it fills up.
+     *
+     * @return The new Uri to use
+     */
+    private Uri updateUri() {
+        mQueryFirstJulianDay = mFirstLoadedJulianDay;
+        mQueryLastJulianDay = mLastLoadedJulianDay;
+        mQueryUsesCache = canUseEventCache();
+        if (mQueryUsesCache) {
+            ArrayList<int[]> missing = new ArrayList<int[]>();
+            if (!EventCache.getInstance(mContext).getMissingRanges(
+                    mFirstLoadedJulianDay, mLastLoadedJulianDay, missing)) {
+                mQueryFirstJulianDay = missing.get(0)[0];
+                mQueryLastJulianDay = missing.get(missing.size() - 1)[1];
+            }
+        }
+
         // -1 to ensure we get all day events from any time zone
-        mTempTime.setJulianDay(mFirstLoadedJulianDay - 1);
+        mTempTime.setJulianDay(mQueryFirstJulianDay - 1);
         long start = mTempTime.toMillis(true);
-        mLastLoadedJulianDay = mFirstLoadedJulianDay + (mNumWeeks + 2 * WEEKS_BUFFER) * 7;
         // +1 to ensure we get all day events from any time zone
-        mTempTime.setJulianDay(mLastLoadedJulianDay + 1);
+        mTempTime.setJulianDay(mQueryLastJulianDay + 1);
         long end = mTempTime.toMillis(true);
 
         // Create a new uri with the updated times
@@ -192,19 +254,99 @@ public class MonthByWeekFragment extends SimpleDayPickerFragment implements
         return builder.build();
     }
 
-    // Extract range of julian days from URI
-    private void updateLoadedDays() {
-        List<String> pathSegments = mEventUri.getPathSegments();
-        int size = pathSegments.size();
-        if (size <= 2) {
-            return;
+    /**
+     * Shows the events for the loaded range straight away if they are all in
+     * the {@link EventCache}.
+     *
+     * @return true if the events were shown
+     */
+    private boolean loadEventsFromCache() {
+        if (!canUseEventCache()) {
+            return false;
+        }
+        ArrayList<Event> events = new ArrayList<Event>();
+        if (!EventCache.getInstance(mContext).getEvents(
+                mFirstLoadedJulianDay, mLastLoadedJulianDay, events)) {
+            return false;
+        }
+        ((MonthByWeekAdapter) mAdapter).setEvents(mFirstLoadedJulianDay,
+                mLastLoadedJulianDay - mFirstLoadedJulianDay + 1, toMonthEvents(events));
+        PerfLog.loadFinished(PerfLog.VIEW_MONTH);
+        return true;
+    }
+
+    /**
+     * Reads the events of a range of days from the {@link EventCache}, first
+     * querying and caching the days missing from it. Called on the loader
+     * thread.
+     *
+     * @return The events, or null if the cache changed before they could all
+     *         be read
+     */
+    private EventColumns loadEventsThroughCache(EventCache cache, int firstJulianDay,
+            int lastJulianDay) {
+        ArrayList<Event> events = new ArrayList<Event>();
+        ArrayList<int[]> missing = new ArrayList<int[]>();
+        if (!cache.getMissingRanges(firstJulianDay, lastJulianDay, missing)) {
+            final int version = cache.getVersion();
+            final AtomicInteger sequenceNumber = new AtomicInteger();
+            for (int[] range : missing) {
+                Event.loadEvents(mContext, events, range[0], range[1] - range[0] + 1,
+                        sequenceNumber.get(), sequenceNumber, null);
+                cache.putEvents(range[0], range[1], events, version);
+            }
+            Event.recycleAll(events);
+        }
+        if (!cache.getEvents(firstJulianDay, lastJulianDay, events)) {
+            return null;
         }
-        long first = Long.parseLong(pathSegments.get(size - 2));
-        long last = Long.parseLong(pathSegments.get(size - 1));
-        mTempTime.set(first);
-        mFirstLoadedJulianDay = Time.getJulianDay(first, mTempTime.gmtoff);
-        mTempTime.set(last);
-        mLastLoadedJulianDay = Time.getJulianDay(last, mTempTime.gmtoff);
+        return toMonthEvents(events);
+    }
+
+    /**
+     * Sorts events the way the month query does, and moves them into columns,
+     * recycling them.
+     */
+    private static EventColumns toMonthEvents(ArrayList<Event> events) {
+        Collections.sort(events, INSTANCES_ORDER);
+        EventColumns columns = new EventColumns(events.size());
+        for (Event e : events) {
+            columns.add(e);
+        }
+        Event.recycleAll(events);
+        return columns;
+    }
+
+    /**
+     * The events built from a cursor on the loader thread, along with the
+     * range they were built for.
+     */
+    private static final class LoadedMonth {
+        final Cursor cursor;
+        final int firstJulianDay;
+        final int lastJulianDay;
+        final EventColumns events;
+        final EventDayIndex eventDayIndex;
+        final String[] timeLabels;
+
+        LoadedMonth(Cursor cursor, int firstJulianDay, int lastJulianDay, EventColumns events,
+                EventDayIndex eventDayIndex, String[] timeLabels) {
+            this.cursor = cursor;
+            this.firstJulianDay = firstJulianDay;
+            this.lastJulianDay = lastJulianDay;
+            this.events = events;
+            this.eventDayIndex = eventDayIndex;
+            this.timeLabels = timeLabels;
+        }
+    }
+
+    /**
+     * The cache holds the events the day and week views show, which only
+     * match ours if we filter declined events the same way.
+     */
+    private boolean canUseEventCache() {
+        boolean hidesDeclined = mHideDeclined || !mShowDetailsInMonth;
+        return hidesDeclined == Utils.getHideDeclinedEvents(mContext);
     }
 
     protected String updateWhere() {
@@ -350,13 +492,134 @@ public class MonthByWeekFragment extends SimpleDayPickerFragment implements
             mFirstLoadedJulianDay =
                     Time.getJulianDay(mSelectedDay.toMillis(true), mSelectedDay.gmtoff)
                     - (mNumWeeks * 7 / 2);
+            updateLoadedRange();
             mEventUri = updateUri();
             String where = updateWhere();
 
+            final EventCache cache = EventCache.getInstance(mContext);
             loader = new CursorLoader(
                     getActivity(), mEventUri, Event.EVENT_PROJECTION, where,
-                    null /* WHERE_CALENDARS_SELECTED_ARGS */, INSTANCES_SORT_ORDER);
+                    null /* WHERE_CALENDARS_SELECTED_ARGS */, INSTANCES_SORT_ORDER) {
+                // Reloads on changes while there's no cursor watching for
+                // them, as the range was shown from the cache instead
+                private final ForceLoadContentObserver mChangeObserver =
+                        new ForceLoadContentObserver();
+                private boolean mWatchingChanges;
+
+                @Override
+                protected void onStartLoading() {
+                    synchronized (mUpdateLoader) {
+                        if (mShownFromCache) {
+                            if (!mWatchingChanges) {
+                                getContext().getContentResolver().registerContentObserver(
+                                        CalendarContract.CONTENT_URI, true, mChangeObserver);
+                                mWatchingChanges = true;
+                            }
+                            if (takeContentChanged()) {
+                                forceLoad();
+                            }
+                            return;
+                        }
+                    }
+                    super.onStartLoading();
+                }
+
+                @Override
+                protected void onForceLoad() {
+                    synchronized (mUpdateLoader) {
+                        // The cursor of this query watches for changes
+                        mShownFromCache = false;
+                        stopWatchingChanges();
+                    }
+                    super.onForceLoad();
+                }
+
+                @Override
+                protected void onReset() {
+                    super.onReset();
+                    stopWatchingChanges();
+                }
+
+                private void stopWatchingChanges() {
+                    if (mWatchingChanges) {
+                        getContext().getContentResolver().unregisterContentObserver(
+                                mChangeObserver);
+                        mWatchingChanges = false;
+                    }
+                }
+
+                @Override
+                public Cursor loadInBackground() {
+                    final Uri uri;
+                    final int firstJulianDay;
+                    final int lastJulianDay;
+                    final int queryFirstJulianDay;
+                    final int queryLastJulianDay;
+                    final boolean useCache;
+                    synchronized (mUpdateLoader) {
+                        uri = getUri();
+                        firstJulianDay = mFirstLoadedJulianDay;
+                        lastJulianDay = mLastLoadedJulianDay;
+                        queryFirstJulianDay = mQueryFirstJulianDay;
+                        queryLastJulianDay = mQueryLastJulianDay;
+                        useCache = mQueryUsesCache;
+                    }
+                    final int version = cache.getVersion();
+                    final long queryStart = PerfLog.start();
+                    Cursor cursor = super.loadInBackground();
+                    PerfLog.queryFinished(PerfLog.QUERY_MONTH, queryStart);
+                    if (cursor == null) {
+                        return null;
+                    }
+                    synchronized (mUpdateLoader) {
+                        if (!uri.equals(getUri())) {
+                            // The days to query changed while this one ran,
+                            // so the cursor can't be matched to its days
+                            return cursor;
+                        }
+                    }
+
+                    // Build the events and the index of the events on each
+                    // day here rather than on the UI thread
+                    EventColumns events = new EventColumns(cursor.getCount());
+                    Event.buildEventsFromCursor(events, cursor, mContext, queryFirstJulianDay,
+                            queryLastJulianDay);
+                    if (useCache) {
+                        cache.putEvents(queryFirstJulianDay, queryLastJulianDay, events,
+                                version);
+                        if (queryFirstJulianDay != firstJulianDay
+                                || queryLastJulianDay != lastJulianDay) {
+                            // Fill in the rest of the loaded range from the
+                            // cache, or query all of it if the cache keeps
+                            // changing under us
+                            events = loadEventsThroughCache(cache, firstJulianDay,
+                                    lastJulianDay);
+                            if (events == null) {
+                                ArrayList<Event> list = new ArrayList<Event>();
+                                AtomicInteger sequenceNumber = new AtomicInteger();
+                                Event.loadEvents(mContext, list, firstJulianDay,
+                                        lastJulianDay - firstJulianDay + 1,
+                                        sequenceNumber.get(), sequenceNumber, null);
+                                events = toMonthEvents(list);
+                            }
+                        }
+                    }
+                    // Format the time ranges the weeks show here too, so
+                    // binding a week only has to ellipsize them
+                    mLoadedMonth = new LoadedMonth(cursor, firstJulianDay, lastJulianDay,
+                            events, EventDayIndex.build(events, firstJulianDay,
+                                    lastJulianDay - firstJulianDay + 1),
+                            mShowDetailsInMonth
+                                    ? WeekRenderModel.formatTimeLabels(mContext, events)
+                                    : null);
+                    return cursor;
+                }
+            };
             loader.setUpdateThrottle(LOADER_THROTTLE_DELAY);
+            PerfLog.loadRequested(PerfLog.VIEW_MONTH);
+            // Like mUpdateLoader, don't query the range at all if it's all
+            // cached
+            mShownFromCache = loadEventsFromCache();
         }
         if (Log.isLoggable(TAG, Log.DEBUG)) {
             Log.d(TAG, "Returning new loader with uri: " + mEventUri);
@@ -371,7 +634,12 @@ public class MonthByWeekFragment extends SimpleDayPickerFragment implements
         boolean prevHideDeclined = mHideDeclined;
         mHideDeclined = Utils.getHideDeclinedEvents(mContext);
         if (prevHideDeclined != mHideDeclined && mLoader != null) {
-            mLoader.setSelection(updateWhere());
+            synchronized (mUpdateLoader) {
+                // Whether the cache can be used may have changed too
+                mEventUri = updateUri();
+                mLoader.setUri(mEventUri);
+                mLoader.setSelection(updateWhere());
+            }
         }
         mDaysPerWeek = Utils.getDaysPerWeek(mContext);
         updateHeader();
@@ -388,20 +656,23 @@ public class MonthByWeekFragment extends SimpleDayPickerFragment implements
                 Log.d(TAG, "Found " + data.getCount() + " cursor entries for uri " + mEventUri);
             }
             CursorLoader cLoader = (CursorLoader) loader;
-            if (mEventUri == null) {
-                mEventUri = cLoader.getUri();
-                updateLoadedDays();
-            }
             if (cLoader.getUri().compareTo(mEventUri) != 0) {
                 // We've started a new query since this loader ran so ignore the
                 // result
                 return;
             }
-            ArrayList<Event> events = new ArrayList<Event>();
-            Event.buildEventsFromCursor(
-                    events, data, mContext, mFirstLoadedJulianDay, mLastLoadedJulianDay);
+            final LoadedMonth loaded = mLoadedMonth;
+            if (loaded == null || loaded.cursor != data
+                    || loaded.firstJulianDay != mFirstLoadedJulianDay
+                    || loaded.lastJulianDay != mLastLoadedJulianDay) {
+                // The range moved while the query ran. Either it was all
+                // cached and is shown already, or a new query is on its way.
+                return;
+            }
             ((MonthByWeekAdapter) mAdapter).setEvents(mFirstLoadedJulianDay,
-                    mLastLoadedJulianDay - mFirstLoadedJulianDay + 1, events);
+                    mLastLoadedJulianDay - mFirstLoadedJulianDay + 1, loaded.events,
+                    loaded.eventDayIndex, loaded.timeLabels);
+            PerfLog.loadFinished(PerfLog.VIEW_MONTH);
         }
     }
 
@@ -17,6 +17,7 @@
 package com.android.calendar.month;
 
 import android.content.Context;
+import android.graphics.Canvas;
 import android.graphics.Rect;
 import android.os.SystemClock;
 import android.text.format.Time;
@@ -26,6 +27,7 @@ import android.view.VelocityTracker;
 import android.view.View;
 import android.widget.ListView;
 
+import com.android.calendar.PerfLog;
 import com.android.calendar.Utils;
 
 public class MonthListView extends ListView {
@@ -91,6 +93,13 @@ public class MonthListView extends ListView {
         }
     }
 
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        final long frameStart = PerfLog.start();
+        super.dispatchDraw(canvas);
+        PerfLog.frameDrawn(PerfLog.VIEW_MONTH, frameStart);
+    }
+
     @Override
     public boolean onTouchEvent(MotionEvent ev) {
         return processEvent(ev) || super.onTouchEvent(ev);
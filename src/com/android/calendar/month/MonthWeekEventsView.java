@@ -17,8 +17,10 @@
 package com.android.calendar.month;
 
 import com.android.calendar.CalendarViewAdapter;
-import com.android.calendar.Event;
+import com.android.calendar.DrawAllocationTracker;
+import com.android.calendar.EventColumns;
 import com.android.calendar.LunarUtils;
+import com.android.calendar.PerfLog;
 import com.android.calendar.R;
 import com.android.calendar.Utils;
 
@@ -50,8 +52,6 @@ import android.view.accessibility.AccessibilityManager;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Formatter;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 
@@ -61,9 +61,6 @@ public class MonthWeekEventsView extends SimpleWeekView {
 
     private static final boolean DEBUG_LAYOUT = false;
 
-    public static final String VIEW_PARAMS_ORIENTATION = "orientation";
-    public static final String VIEW_PARAMS_ANIMATE_TODAY = "animate_today";
-
     /* NOTE: these are not constants, and may be multiplied by a scale factor */
     private static int TEXT_SIZE_MONTH_NUMBER = 32;
     private static int TEXT_SIZE_LUNAR = 10;
@@ -79,7 +76,6 @@ public class MonthWeekEventsView extends SimpleWeekView {
     private static int DNA_WIDTH = 8;
     private static int DNA_ALL_DAY_WIDTH = 32;
     private static int DNA_SIDE_PADDING = 6;
-    private static int CONFLICT_COLOR = Color.BLACK;
     private static int EVENT_TEXT_COLOR = Color.WHITE;
 
     private static int DEFAULT_EDGE_SPACING = 0;
@@ -113,13 +109,27 @@ public class MonthWeekEventsView extends SimpleWeekView {
     protected boolean mHasToday = false;
     protected int mTodayIndex = -1;
     protected int mOrientation = Configuration.ORIENTATION_LANDSCAPE;
-    protected List<ArrayList<Event>> mEvents = null;
-    protected ArrayList<Event> mUnsortedEvents = null;
-    HashMap<Integer, Utils.DNAStrand> mDna = null;
+    protected EventColumns mEvents = null;
+    // The events of mEvents on each day, starting with this week's first
+    // day at mEventDaysOffset
+    protected EventDayIndex mEventDays = null;
+    protected int mEventDaysOffset;
+    // The time range labels of mEvents, or null to format them as needed
+    protected String[] mEventTimeLabels = null;
+    // What onDraw draws for the events, and whether it needs to be laid out
+    // again because the view wasn't ready when the events or params changed
+    private final WeekRenderModel mRenderModel = new WeekRenderModel();
+    private boolean mRenderModelPending = false;
     // This is for drawing the outlines around event chips and supports up to 10
     // events being drawn on each day. The code will expand this if necessary.
     protected FloatRef mEventOutlines = new FloatRef(10 * 4 * 4 * 7);
 
+    // The "+n" labels for hidden events, formatted as they're needed
+    private String[] mMoreEventsLabels = new String[0];
+    private final float[] mDaySeparatorLines = new float[8 * 4];
+    private Time mLunarTime;
+    private final ArrayList<String> mLunarInfos = new ArrayList<String>();
+
 
 
     protected static StringBuilder mStringBuilder = new StringBuilder(50);
@@ -227,8 +237,6 @@ public class MonthWeekEventsView extends SimpleWeekView {
 
     }
 
-    private int[] mDayXs;
-
     /**
      * This provides a reference to a float array which allows for easy size
      * checking and reallocation. Used for drawing lines.
@@ -255,65 +263,86 @@ public class MonthWeekEventsView extends SimpleWeekView {
         super(context);
     }
 
-    // Sets the list of events for this week. Takes a sorted list of arrays
-    // divided up by day for generating the large month version and the full
-    // arraylist sorted by start time to generate the dna version.
-    public void setEvents(List<ArrayList<Event>> sortedEvents, ArrayList<Event> unsortedEvents) {
-        setEvents(sortedEvents);
-        // The MIN_WEEK_WIDTH is a hack to prevent the view from trying to
-        // generate dna bits before its width has been fixed.
-        createDna(unsortedEvents);
+    // Sets the list of events for this week. Takes the events that were
+    // loaded along with the index of the events on each day and their time
+    // range labels, which are used to generate the large month version, and
+    // uses all of the events sorted by start time to generate the dna version.
+    public void setEvents(EventColumns events, EventDayIndex eventDays, int offset,
+            String[] timeLabels) {
+        setEventDays(events, eventDays, offset, timeLabels);
+        updateRenderModel();
     }
 
     /**
-     * Sets up the dna bits for the view. This will return early if the view
-     * isn't in a state that will create a valid set of dna yet (such as the
-     * views width not being set correctly yet).
+     * Lays out what onDraw draws for the events. This will leave the layout
+     * pending if the view isn't in a state that will lay out the events
+     * correctly yet (such as the views width not being set correctly yet).
      */
-    public void createDna(ArrayList<Event> unsortedEvents) {
-        if (unsortedEvents == null || mWidth <= MIN_WEEK_WIDTH || getContext() == null) {
-            // Stash the list of events for use when this view is ready, or
-            // just clear it if a null set has been passed to this view
-            mUnsortedEvents = unsortedEvents;
-            mDna = null;
+    private void updateRenderModel() {
+        mRenderModel.clearChips();
+        mRenderModel.clearDna();
+        // The MIN_WEEK_WIDTH is a hack to prevent the view from trying to
+        // lay out events before its width has been fixed.
+        if (mEvents == null || mWidth <= MIN_WEEK_WIDTH || getContext() == null) {
+            // Remember to lay them out when this view is ready
+            mRenderModelPending = mEvents != null;
             return;
+        }
+        mRenderModelPending = false;
+        if (mShowDetailsInMonth) {
+            layoutEvents();
         } else {
-            // clear the cached set of events since we're ready to build it now
-            mUnsortedEvents = null;
+            createDna();
         }
-        // Create the drawing coordinates for dna
-        if (!mShowDetailsInMonth) {
-            int numDays = mEvents.size();
-            int effectiveWidth = mWidth - mPadding * 2;
-            if (mShowWeekNum) {
-                effectiveWidth -= SPACING_WEEK_NUMBER;
-            }
-            DNA_ALL_DAY_WIDTH = effectiveWidth / numDays - 2 * DNA_SIDE_PADDING;
-            mDNAAllDayPaint.setStrokeWidth(DNA_ALL_DAY_WIDTH);
-            mDayXs = new int[numDays];
-            for (int day = 0; day < numDays; day++) {
-                mDayXs[day] = computeDayLeftPosition(day) + DNA_WIDTH / 2 + DNA_SIDE_PADDING;
+    }
 
-            }
+    /**
+     * Sets up the dna bits for the view.
+     */
+    private void createDna() {
+        // Create the drawing coordinates for dna
+        int numDays = mNumDays;
+        int effectiveWidth = mWidth - mPadding * 2;
+        if (mShowWeekNum) {
+            effectiveWidth -= SPACING_WEEK_NUMBER;
+        }
+        DNA_ALL_DAY_WIDTH = effectiveWidth / numDays - 2 * DNA_SIDE_PADDING;
+        mDNAAllDayPaint.setStrokeWidth(DNA_ALL_DAY_WIDTH);
+        int[] dayXs = new int[numDays];
+        for (int day = 0; day < numDays; day++) {
+            dayXs[day] = computeDayLeftPosition(day) + DNA_WIDTH / 2 + DNA_SIDE_PADDING;
+        }
 
-            int top = DAY_SEPARATOR_INNER_WIDTH + DNA_MARGIN + DNA_ALL_DAY_HEIGHT + 1;
-            int bottom = mHeight - DNA_MARGIN;
-            mDna = Utils.createDNAStrands(mFirstJulianDay, unsortedEvents, top, bottom,
-                    DNA_MIN_SEGMENT_HEIGHT, mDayXs, getContext());
+        int top = DAY_SEPARATOR_INNER_WIDTH + DNA_MARGIN + DNA_ALL_DAY_HEIGHT + 1;
+        int bottom = mHeight - DNA_MARGIN;
+        WeekDna dna = WeekDnaBuilder.getInstance(getContext()).getDna(mFirstJulianDay,
+                mEvents, top, bottom, DNA_MIN_SEGMENT_HEIGHT, dayXs);
+        if (dna == null) {
+            return;
         }
+        mRenderModel.dna = dna;
+        mRenderModel.dnaDayXs = dayXs;
     }
 
-    public void setEvents(List<ArrayList<Event>> sortedEvents) {
-        mEvents = sortedEvents;
-        if (sortedEvents == null) {
+    private void setEventDays(EventColumns events, EventDayIndex eventDays, int offset,
+            String[] timeLabels) {
+        mEvents = events;
+        mEventDays = eventDays;
+        mEventDaysOffset = offset;
+        mEventTimeLabels = timeLabels;
+        if (eventDays == null) {
+            mEvents = null;
+            mEventTimeLabels = null;
             return;
         }
-        if (sortedEvents.size() != mNumDays) {
+        if (offset < 0 || offset + mNumDays > eventDays.getNumDays()) {
             if (Log.isLoggable(TAG, Log.ERROR)) {
                 Log.wtf(TAG, "Events size must be same as days displayed: size="
-                        + sortedEvents.size() + " days=" + mNumDays);
+                        + (eventDays.getNumDays() - offset) + " days=" + mNumDays);
             }
             mEvents = null;
+            mEventDays = null;
+            mEventTimeLabels = null;
             return;
         }
     }
@@ -355,7 +384,6 @@ public class MonthWeekEventsView extends SimpleWeekView {
             TEXT_SIZE_EVENT_TITLE = resources.getInteger(R.integer.text_size_event_title);
             TEXT_SIZE_MONTH_NUMBER = resources.getInteger(R.integer.text_size_month_number);
             SIDE_PADDING_MONTH_NUMBER = resources.getInteger(R.integer.month_day_number_margin);
-            CONFLICT_COLOR = resources.getColor(R.color.month_dna_conflict_time_color);
             EVENT_TEXT_COLOR = resources.getColor(R.color.calendar_event_text_color);
             if (mScale != 1) {
                 TOP_PADDING_MONTH_NUMBER *= mScale;
@@ -492,17 +520,18 @@ public class MonthWeekEventsView extends SimpleWeekView {
     }
 
     @Override
-    public void setWeekParams(HashMap<String, Integer> params, String tz) {
+    public void setWeekParams(WeekParams params, String tz) {
         super.setWeekParams(params, tz);
 
-        if (params.containsKey(VIEW_PARAMS_ORIENTATION)) {
-            mOrientation = params.get(VIEW_PARAMS_ORIENTATION);
-        }
+        mOrientation = params.orientation;
 
         updateToday(tz);
         mNumCells = mNumDays + 1;
+        // The events are usually set next, which lays them out for the new
+        // params, otherwise they're laid out before drawing
+        mRenderModelPending = mEvents != null;
 
-        if (params.containsKey(VIEW_PARAMS_ANIMATE_TODAY) && mHasToday) {
+        if (params.animateToday && mHasToday) {
             synchronized (mAnimatorListener) {
                 if (mTodayAnimator != null) {
                     mTodayAnimator.removeAllListeners();
@@ -545,21 +574,26 @@ public class MonthWeekEventsView extends SimpleWeekView {
 
     @Override
     protected void onDraw(Canvas canvas) {
+        DrawAllocationTracker.beginFrame();
         drawBackground(canvas);
         drawWeekNums(canvas);
         drawDaySeparators(canvas);
         if (mHasToday && mAnimateToday) {
             drawToday(canvas);
         }
+        if (mRenderModelPending) {
+            updateRenderModel();
+        }
         if (mShowDetailsInMonth) {
             drawEvents(canvas);
         } else {
-            if (mDna == null && mUnsortedEvents != null) {
-                createDna(mUnsortedEvents);
-            }
             drawDNA(canvas);
         }
         drawClick(canvas);
+        if (mEvents != null) {
+            PerfLog.drawnWithData(PerfLog.VIEW_MONTH);
+        }
+        DrawAllocationTracker.endFrame(TAG);
     }
 
     protected void drawToday(Canvas canvas) {
@@ -575,6 +609,14 @@ public class MonthWeekEventsView extends SimpleWeekView {
         p.setStyle(Style.FILL);
     }
 
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (w != oldw && mEvents != null) {
+            updateRenderModel();
+        }
+    }
+
     // TODO move into SimpleWeekView
     // Computes the x position for the left side of the given day
     private int computeDayLeftPosition(int day) {
@@ -591,7 +633,7 @@ public class MonthWeekEventsView extends SimpleWeekView {
 
     @Override
     protected void drawDaySeparators(Canvas canvas) {
-        float lines[] = new float[8 * 4];
+        float lines[] = mDaySeparatorLines;
         int count = 6 * 4;
         int wkNumOffset = 0;
         int i = 0;
@@ -703,9 +745,17 @@ public class MonthWeekEventsView extends SimpleWeekView {
         mMonthNumPaint.setColor(isFocusMonth ? mMonthNumColor : mMonthNumOtherColor);
 
         // Get the julian monday used to show the lunar info.
-        int julianMonday = Utils.getJulianMondayFromWeeksSinceEpoch(mWeek);
-        Time time = new Time(mTimeZone);
-        time.setJulianDay(julianMonday);
+        final boolean showLunar = LunarUtils.showLunar(getContext());
+        Time time = mLunarTime;
+        if (showLunar) {
+            int julianMonday = Utils.getJulianMondayFromWeeksSinceEpoch(mWeek);
+            if (time == null) {
+                time = mLunarTime = new Time(mTimeZone);
+            } else {
+                time.timezone = mTimeZone;
+            }
+            time.setJulianDay(julianMonday);
+        }
 
         for (; i < numCount; i++) {
             if (mHasToday && todayIndex == i) {
@@ -726,7 +776,7 @@ public class MonthWeekEventsView extends SimpleWeekView {
                 mMonthNumPaint.setFakeBoldText(isBold = false);
             }
 
-            if (LunarUtils.showLunar(getContext())) {
+            if (showLunar) {
                 // adjust the year and month
                 int year = time.year;
                 int month = time.month;
@@ -750,7 +800,8 @@ public class MonthWeekEventsView extends SimpleWeekView {
                     }
                 }
 
-                ArrayList<String> infos = new ArrayList<String>();
+                ArrayList<String> infos = mLunarInfos;
+                infos.clear();
                 LunarUtils.get(getContext(), year, month, monthDay,
                         LunarUtils.FORMAT_LUNAR_SHORT | LunarUtils.FORMAT_MULTI_FESTIVAL, false,
                         infos);
@@ -792,15 +843,18 @@ public class MonthWeekEventsView extends SimpleWeekView {
         }
     }
 
-    protected void drawEvents(Canvas canvas) {
-        if (mEvents == null) {
+    /**
+     * Works out which events fit on each day, and adds them to the render
+     * model along with the "+n" labels of the days with events that don't.
+     */
+    private void layoutEvents() {
+        if (mEventDays == null) {
             return;
         }
 
-        int day = -1;
-        for (ArrayList<Event> eventDay : mEvents) {
-            day++;
-            if (eventDay == null || eventDay.size() == 0) {
+        for (int day = 0; day < mNumDays; day++) {
+            final int count = mEventDays.getCount(mEventDaysOffset + day);
+            if (count == 0) {
                 continue;
             }
             int ySquare;
@@ -817,12 +871,10 @@ public class MonthWeekEventsView extends SimpleWeekView {
 
             // Determine if everything will fit when time ranges are shown.
             boolean showTimes = true;
-            Iterator<Event> iter = eventDay.iterator();
             int yTest = ySquare;
-            while (iter.hasNext()) {
-                Event event = iter.next();
-                int newY = drawEvent(canvas, event, xSquare, yTest, rightEdge, iter.hasNext(),
-                        showTimes, /*doDraw*/ false);
+            for (int i = 0; i < count; i++) {
+                int newY = layoutEvent(day, i, xSquare, yTest, rightEdge,
+                        i + 1 < count, showTimes, /*doLayout*/ false);
                 if (newY == yTest) {
                     showTimes = false;
                     break;
@@ -831,11 +883,9 @@ public class MonthWeekEventsView extends SimpleWeekView {
             }
 
             int eventCount = 0;
-            iter = eventDay.iterator();
-            while (iter.hasNext()) {
-                Event event = iter.next();
-                int newY = drawEvent(canvas, event, xSquare, ySquare, rightEdge, iter.hasNext(),
-                        showTimes, /*doDraw*/ true);
+            for (int i = 0; i < count; i++) {
+                int newY = layoutEvent(day, i, xSquare, ySquare, rightEdge,
+                        i + 1 < count, showTimes, /*doLayout*/ true);
                 if (newY == ySquare) {
                     break;
                 }
@@ -843,13 +893,56 @@ public class MonthWeekEventsView extends SimpleWeekView {
                 ySquare = newY;
             }
 
-            int remaining = eventDay.size() - eventCount;
+            int remaining = count - eventCount;
             if (remaining > 0) {
-                drawMoreEvents(canvas, remaining, xSquare);
+                mRenderModel.addMore(xSquare, getMoreEventsLabel(remaining));
             }
         }
     }
 
+    protected void drawEvents(Canvas canvas) {
+        final WeekRenderModel model = mRenderModel;
+        for (int i = 0; i < model.chipCount; i++) {
+            r.set(model.boxLeft[i], model.boxTop[i], model.boxRight[i], model.boxBottom[i]);
+            mEventSquarePaint.setStyle(model.boxFilled[i] ? Style.FILL_AND_STROKE
+                    : Style.STROKE);
+            mEventSquarePaint.setColor(model.colors[i]);
+            canvas.drawRect(r, mEventSquarePaint);
+
+            Paint textPaint;
+            switch (model.titlePaints[i]) {
+                case WeekRenderModel.PAINT_SOLID_BACKGROUND:
+                    textPaint = mSolidBackgroundEventPaint;
+                    break;
+                case WeekRenderModel.PAINT_DECLINED:
+                    textPaint = mDeclinedEventPaint;
+                    break;
+                case WeekRenderModel.PAINT_FRAMED:
+                    mFramedEventPaint.setColor(model.colors[i]);
+                    textPaint = mFramedEventPaint;
+                    break;
+                default:
+                    textPaint = mEventPaint;
+                    break;
+            }
+            canvas.drawText(model.titles[i], model.textX[i], model.titleY[i], textPaint);
+            if (model.timeLabels[i] != null) {
+                canvas.drawText(model.timeLabels[i], model.textX[i], model.timeY[i],
+                        model.declined[i] ? mEventDeclinedExtrasPaint : mEventExtrasPaint);
+            }
+        }
+
+        if (model.moreCount > 0) {
+            int y = mHeight - (mExtrasDescent + EVENT_BOTTOM_PADDING);
+            mEventExtrasPaint.setAntiAlias(true);
+            mEventExtrasPaint.setFakeBoldText(true);
+            for (int i = 0; i < model.moreCount; i++) {
+                canvas.drawText(model.moreLabels[i], model.moreX[i], y, mEventExtrasPaint);
+            }
+            mEventExtrasPaint.setFakeBoldText(false);
+        }
+    }
+
     protected int addChipOutline(FloatRef lines, int count, int x, int y) {
         lines.ensureSize(count + 16);
         // top of box
@@ -877,25 +970,26 @@ public class MonthWeekEventsView extends SimpleWeekView {
     }
 
     /**
-     * Attempts to draw the given event. Returns the y for the next event or the
-     * original y if the event will not fit. An event is considered to not fit
-     * if the event and its extras won't fit or if there are more events and the
-     * more events line would not fit after drawing this event.
+     * Attempts to lay out the given event, adding it to the render model.
+     * Returns the y for the next event or the original y if the event will not
+     * fit. An event is considered to not fit if the event and its extras won't
+     * fit or if there are more events and the more events line would not fit
+     * after this event.
      *
-     * @param canvas the canvas to draw on
-     * @param event the event to draw
+     * @param day the day of this week the event is drawn on
+     * @param pos the position of the event in the events of that day
      * @param x the top left corner for this event's color chip
      * @param y the top left corner for this event's color chip
      * @param rightEdge the rightmost point we're allowed to draw on (exclusive)
      * @param moreEvents indicates whether additional events will follow this one
      * @param showTimes if set, a second line with a time range will be displayed for non-all-day
      *   events
-     * @param doDraw if set, do the actual drawing; otherwise this just computes the height
-     *   and returns
+     * @param doLayout if set, add the event to the render model; otherwise this just
+     *   computes the height and returns
      * @return the y for the next event or the original y if it won't fit
      */
-    protected int drawEvent(Canvas canvas, Event event, int x, int y, int rightEdge,
-            boolean moreEvents, boolean showTimes, boolean doDraw) {
+    private int layoutEvent(int day, int pos, int x, int y, int rightEdge,
+            boolean moreEvents, boolean showTimes, boolean doLayout) {
         /*
          * Vertical layout:
          *   (top of box)
@@ -914,7 +1008,8 @@ public class MonthWeekEventsView extends SimpleWeekView {
          */
         final int BORDER_SPACE = EVENT_SQUARE_BORDER + 1;       // want a 1-pixel gap inside border
         final int STROKE_WIDTH_ADJ = EVENT_SQUARE_BORDER / 2;   // adjust bounds for stroke width
-        boolean allDay = event.allDay;
+        final int event = mEventDays.getEvent(mEventDaysOffset + day, pos);
+        boolean allDay = mEvents.isAllDay(event);
         int eventRequiredSpace = mEventHeight;
         if (allDay) {
             // Add a few pixels for the box we draw around all-day events.
@@ -937,12 +1032,16 @@ public class MonthWeekEventsView extends SimpleWeekView {
         if (y + eventRequiredSpace + reservedSpace > mHeight) {
             // Not enough space, return original y
             return y;
-        } else if (!doDraw) {
+        } else if (!doLayout) {
             return y + eventRequiredSpace;
         }
 
-        boolean isDeclined = event.selfAttendeeStatus == Attendees.ATTENDEE_STATUS_DECLINED;
-        int color = event.color;
+        final WeekRenderModel model = mRenderModel;
+        final int chip = model.addChip();
+
+        int selfAttendeeStatus = mEvents.getSelfAttendeeStatus(event);
+        boolean isDeclined = selfAttendeeStatus == Attendees.ATTENDEE_STATUS_DECLINED;
+        int color = mEvents.getColor(event);
         if (isDeclined) {
             color = Utils.getDeclinedColorFromColor(color);
         }
@@ -953,54 +1052,53 @@ public class MonthWeekEventsView extends SimpleWeekView {
             // We shift the render offset "inward", because drawRect with a stroke width greater
             // than 1 draws outside the specified bounds.  (We don't adjust the left edge, since
             // we want to match the existing appearance of the "event square".)
-            r.left = x;
-            r.right = rightEdge - STROKE_WIDTH_ADJ;
-            r.top = y + STROKE_WIDTH_ADJ;
-            r.bottom = y + mEventHeight + BORDER_SPACE * 2 - STROKE_WIDTH_ADJ;
+            model.boxLeft[chip] = x;
+            model.boxRight[chip] = rightEdge - STROKE_WIDTH_ADJ;
+            model.boxTop[chip] = y + STROKE_WIDTH_ADJ;
+            model.boxBottom[chip] = y + mEventHeight + BORDER_SPACE * 2 - STROKE_WIDTH_ADJ;
             textX = x + BORDER_SPACE;
             textY = y + mEventAscentHeight + BORDER_SPACE;
             textRightEdge = rightEdge - BORDER_SPACE;
         } else {
-            r.left = x;
-            r.right = x + EVENT_SQUARE_WIDTH;
-            r.bottom = y + mEventAscentHeight;
-            r.top = r.bottom - EVENT_SQUARE_WIDTH;
+            model.boxLeft[chip] = x;
+            model.boxRight[chip] = x + EVENT_SQUARE_WIDTH;
+            model.boxBottom[chip] = y + mEventAscentHeight;
+            model.boxTop[chip] = model.boxBottom[chip] - EVENT_SQUARE_WIDTH;
             textX = x + EVENT_SQUARE_WIDTH + EVENT_RIGHT_PADDING;
             textY = y + mEventAscentHeight;
             textRightEdge = rightEdge;
         }
 
-        Style boxStyle = Style.STROKE;
+        boolean filled = false;
         boolean solidBackground = false;
-        if (event.selfAttendeeStatus != Attendees.ATTENDEE_STATUS_INVITED) {
-            boxStyle = Style.FILL_AND_STROKE;
+        if (selfAttendeeStatus != Attendees.ATTENDEE_STATUS_INVITED) {
+            filled = true;
             if (allDay) {
                 solidBackground = true;
             }
         }
-        mEventSquarePaint.setStyle(boxStyle);
-        mEventSquarePaint.setColor(color);
-        canvas.drawRect(r, mEventSquarePaint);
+        model.boxFilled[chip] = filled;
+        model.colors[chip] = color;
+        model.declined[chip] = isDeclined;
 
         float avail = textRightEdge - textX;
-        CharSequence text = TextUtils.ellipsize(
-                event.title, mEventPaint, avail, TextUtils.TruncateAt.END);
-        Paint textPaint;
+        model.titles[chip] = TextUtils.ellipsize(mEvents.getTitle(event), mEventPaint, avail,
+                TextUtils.TruncateAt.END).toString();
         if (solidBackground) {
             // Text color needs to contrast with solid background.
-            textPaint = mSolidBackgroundEventPaint;
+            model.titlePaints[chip] = WeekRenderModel.PAINT_SOLID_BACKGROUND;
         } else if (isDeclined) {
             // Use "declined event" color.
-            textPaint = mDeclinedEventPaint;
+            model.titlePaints[chip] = WeekRenderModel.PAINT_DECLINED;
         } else if (allDay) {
             // Text inside frame is same color as frame.
-            mFramedEventPaint.setColor(color);
-            textPaint = mFramedEventPaint;
+            model.titlePaints[chip] = WeekRenderModel.PAINT_FRAMED;
         } else {
             // Use generic event text color.
-            textPaint = mEventPaint;
+            model.titlePaints[chip] = WeekRenderModel.PAINT_EVENT;
         }
-        canvas.drawText(text.toString(), textX, textY, textPaint);
+        model.textX[chip] = textX;
+        model.titleY[chip] = textY;
         y += mEventHeight;
         if (allDay) {
             y += BORDER_SPACE * 2;
@@ -1008,14 +1106,17 @@ public class MonthWeekEventsView extends SimpleWeekView {
 
         if (showTimes && !allDay) {
             // show start/end time, e.g. "1pm - 2pm"
-            textY = y + mExtrasAscentHeight;
-            mStringBuilder.setLength(0);
-            text = DateUtils.formatDateRange(getContext(), mFormatter, event.startMillis,
-                    event.endMillis, DateUtils.FORMAT_SHOW_TIME | DateUtils.FORMAT_ABBREV_ALL,
-                    Utils.getTimeZone(getContext(), null)).toString();
-            text = TextUtils.ellipsize(text, mEventExtrasPaint, avail, TextUtils.TruncateAt.END);
-            canvas.drawText(text.toString(), textX, textY, isDeclined ? mEventDeclinedExtrasPaint
-                    : mEventExtrasPaint);
+            model.timeY[chip] = y + mExtrasAscentHeight;
+            String text = mEventTimeLabels != null ? mEventTimeLabels[event] : null;
+            if (text == null) {
+                mStringBuilder.setLength(0);
+                text = DateUtils.formatDateRange(getContext(), mFormatter,
+                        mEvents.getStartMillis(event), mEvents.getEndMillis(event),
+                        DateUtils.FORMAT_SHOW_TIME | DateUtils.FORMAT_ABBREV_ALL,
+                        Utils.getTimeZone(getContext(), null)).toString();
+            }
+            model.timeLabels[chip] = TextUtils.ellipsize(text, mEventExtrasPaint, avail,
+                    TextUtils.TruncateAt.END).toString();
             y += mExtrasHeight;
         }
 
@@ -1024,14 +1125,19 @@ public class MonthWeekEventsView extends SimpleWeekView {
         return y;
     }
 
-    protected void drawMoreEvents(Canvas canvas, int remainingEvents, int x) {
-        int y = mHeight - (mExtrasDescent + EVENT_BOTTOM_PADDING);
-        String text = getContext().getResources().getQuantityString(
-                R.plurals.month_more_events, remainingEvents);
-        mEventExtrasPaint.setAntiAlias(true);
-        mEventExtrasPaint.setFakeBoldText(true);
-        canvas.drawText(String.format(text, remainingEvents), x, y, mEventExtrasPaint);
-        mEventExtrasPaint.setFakeBoldText(false);
+    private String getMoreEventsLabel(int remainingEvents) {
+        if (remainingEvents >= mMoreEventsLabels.length) {
+            mMoreEventsLabels = Arrays.copyOf(mMoreEventsLabels,
+                    Math.max(remainingEvents + 1, mMoreEventsLabels.length * 2));
+        }
+        String label = mMoreEventsLabels[remainingEvents];
+        if (label == null) {
+            String text = getContext().getResources().getQuantityString(
+                    R.plurals.month_more_events, remainingEvents);
+            label = String.format(text, remainingEvents);
+            mMoreEventsLabels[remainingEvents] = label;
+        }
+        return label;
     }
 
     /**
@@ -1042,36 +1148,32 @@ public class MonthWeekEventsView extends SimpleWeekView {
      * @param canvas
      */
     protected void drawDNA(Canvas canvas) {
-        // Draw event and conflict times
-        if (mDna != null) {
-            for (Utils.DNAStrand strand : mDna.values()) {
-                if (strand.color == CONFLICT_COLOR || strand.points == null
-                        || strand.points.length == 0) {
-                    continue;
-                }
-                mDNATimePaint.setColor(strand.color);
-                canvas.drawLines(strand.points, mDNATimePaint);
-            }
-            // Draw black last to make sure it's on top
-            Utils.DNAStrand strand = mDna.get(CONFLICT_COLOR);
-            if (strand != null && strand.points != null && strand.points.length != 0) {
-                mDNATimePaint.setColor(strand.color);
-                canvas.drawLines(strand.points, mDNATimePaint);
-            }
-            if (mDayXs == null) {
-                return;
+        final WeekDna dna = mRenderModel.dna;
+        if (dna == null) {
+            return;
+        }
+        // Draw event and conflict times, the conflicts last to make sure
+        // they're on top
+        final float[] points = dna.getPoints();
+        for (int strand = dna.getStrandCount() - 1; strand >= 0; strand--) {
+            final int count = dna.getPointCount(strand);
+            if (count != 0) {
+                mDNATimePaint.setColor(dna.getColor(strand));
+                canvas.drawLines(points, dna.getPointOffset(strand), count, mDNATimePaint);
             }
-            int numDays = mDayXs.length;
-            int xOffset = (DNA_ALL_DAY_WIDTH - DNA_WIDTH) / 2;
-            if (strand != null && strand.allDays != null && strand.allDays.length == numDays) {
-                for (int i = 0; i < numDays; i++) {
-                    // this adds at most 7 draws. We could sort it by color and
-                    // build an array instead but this is easier.
-                    if (strand.allDays[i] != 0) {
-                        mDNAAllDayPaint.setColor(strand.allDays[i]);
-                        canvas.drawLine(mDayXs[i] + xOffset, DNA_MARGIN, mDayXs[i] + xOffset,
-                                DNA_MARGIN + DNA_ALL_DAY_HEIGHT, mDNAAllDayPaint);
-                    }
+        }
+        final int[] allDayColors = dna.getAllDayColors();
+        final int[] dayXs = mRenderModel.dnaDayXs;
+        int numDays = dayXs.length;
+        int xOffset = (DNA_ALL_DAY_WIDTH - DNA_WIDTH) / 2;
+        if (allDayColors != null && allDayColors.length == numDays) {
+            for (int i = 0; i < numDays; i++) {
+                // this adds at most 7 draws. We could sort it by color and
+                // build an array instead but this is easier.
+                if (allDayColors[i] != 0) {
+                    mDNAAllDayPaint.setColor(allDayColors[i]);
+                    canvas.drawLine(dayXs[i] + xOffset, DNA_MARGIN, dayXs[i] + xOffset,
+                            DNA_MARGIN + DNA_ALL_DAY_HEIGHT, mDNAAllDayPaint);
                 }
             }
         }
@@ -1146,16 +1248,18 @@ public class MonthWeekEventsView extends SimpleWeekView {
                 AccessibilityEvent accessEvent = AccessibilityEvent
                         .obtain(AccessibilityEvent.TYPE_NOTIFICATION_STATE_CHANGED);
                 accessEvent.getText().add(date);
-                if (mShowDetailsInMonth && mEvents != null) {
+                if (mShowDetailsInMonth && mEvents != null && mEventDays != null) {
                     int dayStart = SPACING_WEEK_NUMBER + mPadding;
                     int dayPosition = (int) ((event.getX() - dayStart) * mNumDays / (mWidth
                             - dayStart - mPadding));
-                    ArrayList<Event> events = mEvents.get(dayPosition);
+                    final int day = mEventDaysOffset + dayPosition;
+                    final int count = mEventDays.getCount(day);
                     List<CharSequence> text = accessEvent.getText();
-                    for (Event e : events) {
-                        text.add(e.getTitleAndLocation() + ". ");
+                    for (int pos = 0; pos < count; pos++) {
+                        int e = mEventDays.getEvent(day, pos);
+                        text.add(mEvents.getTitleAndLocation(e) + ". ");
                         int flags = DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_YEAR;
-                        if (!e.allDay) {
+                        if (!mEvents.isAllDay(e)) {
                             flags |= DateUtils.FORMAT_SHOW_TIME;
                             if (DateFormat.is24HourFormat(context)) {
                                 flags |= DateUtils.FORMAT_24HOUR;
@@ -1163,8 +1267,8 @@ public class MonthWeekEventsView extends SimpleWeekView {
                         } else {
                             flags |= DateUtils.FORMAT_UTC;
                         }
-                        text.add(Utils.formatDateRange(context, e.startMillis, e.endMillis,
-                                flags) + ". ");
+                        text.add(Utils.formatDateRange(context, mEvents.getStartMillis(e),
+                                mEvents.getEndMillis(e), flags) + ". ");
                     }
                 }
                 sendAccessibilityEventUnchecked(accessEvent);
@@ -36,7 +36,6 @@ import android.view.accessibility.AccessibilityEvent;
 import android.view.accessibility.AccessibilityManager;
 
 import java.security.InvalidParameterException;
-import java.util.HashMap;
 
 /**
  * <p>
@@ -49,45 +48,6 @@ import java.util.HashMap;
 public class SimpleWeekView extends View {
     private static final String TAG = "MonthView";
 
-    /**
-     * These params can be passed into the view to control how it appears.
-     * {@link #VIEW_PARAMS_WEEK} is the only required field, though the default
-     * values are unlikely to fit most layouts correctly.
-     */
-    /**
-     * This sets the height of this week in pixels
-     */
-    public static final String VIEW_PARAMS_HEIGHT = "height";
-    /**
-     * This specifies the position (or weeks since the epoch) of this week,
-     * calculated using {@link Utils#getWeeksSinceEpochFromJulianDay}
-     */
-    public static final String VIEW_PARAMS_WEEK = "week";
-    /**
-     * This sets one of the days in this view as selected {@link Time#SUNDAY}
-     * through {@link Time#SATURDAY}.
-     */
-    public static final String VIEW_PARAMS_SELECTED_DAY = "selected_day";
-    /**
-     * Which day the week should start on. {@link Time#SUNDAY} through
-     * {@link Time#SATURDAY}.
-     */
-    public static final String VIEW_PARAMS_WEEK_START = "week_start";
-    /**
-     * How many days to display at a time. Days will be displayed starting with
-     * {@link #mWeekStart}.
-     */
-    public static final String VIEW_PARAMS_NUM_DAYS = "num_days";
-    /**
-     * Which month is currently in focus, as defined by {@link Time#month}
-     * [0-11].
-     */
-    public static final String VIEW_PARAMS_FOCUS_MONTH = "focus_month";
-    /**
-     * If this month should display week numbers. false if 0, true otherwise.
-     */
-    public static final String VIEW_PARAMS_SHOW_WK_NUM = "show_wk_num";
-
     protected static int DEFAULT_HEIGHT = 32;
     protected static int MIN_HEIGHT = 10;
     protected static final int DEFAULT_SELECTED_DAY = -1;
@@ -157,6 +117,9 @@ public class SimpleWeekView extends View {
     // The timezone to display times/dates in (used for determining when Today
     // is)
     protected String mTimeZone = Time.getCurrentTimezone();
+    // Reused when the params are set, which happens for every bind
+    private final Time mParamsTime = new Time();
+    private final Time mParamsToday = new Time();
 
     protected int mBGColor;
     protected int mSelectedWeekBGColor;
@@ -200,51 +163,35 @@ public class SimpleWeekView extends View {
 
     /**
      * Sets all the parameters for displaying this week. The only required
-     * parameter is the week number. Other parameters have a default value and
-     * will only update if a new value is included, except for focus month,
-     * which will always default to no focus month if no value is passed in. See
-     * {@link #VIEW_PARAMS_HEIGHT} for more info on parameters.
+     * parameter is the week number, the others have default values. The
+     * values are copied out, so params may be reused for the next week.
      *
-     * @param params A map of the new parameters, see
-     *            {@link #VIEW_PARAMS_HEIGHT}
+     * @param params The new parameters, see {@link WeekParams}
      * @param tz The time zone this view should reference times in
      */
-    public void setWeekParams(HashMap<String, Integer> params, String tz) {
-        if (!params.containsKey(VIEW_PARAMS_WEEK)) {
+    public void setWeekParams(WeekParams params, String tz) {
+        if (params.week < 0) {
             throw new InvalidParameterException("You must specify the week number for this view");
         }
-        setTag(params);
         mTimeZone = tz;
-        // We keep the current value for any params not present
-        if (params.containsKey(VIEW_PARAMS_HEIGHT)) {
-            mHeight = params.get(VIEW_PARAMS_HEIGHT);
-            if (mHeight < MIN_HEIGHT) {
-                mHeight = MIN_HEIGHT;
-            }
-        }
-        if (params.containsKey(VIEW_PARAMS_SELECTED_DAY)) {
-            mSelectedDay = params.get(VIEW_PARAMS_SELECTED_DAY);
-        }
+        mHeight = Math.max(params.height, MIN_HEIGHT);
+        mSelectedDay = params.selectedDay;
         mHasSelectedDay = mSelectedDay != -1;
-        if (params.containsKey(VIEW_PARAMS_NUM_DAYS)) {
-            mNumDays = params.get(VIEW_PARAMS_NUM_DAYS);
-        }
-        if (params.containsKey(VIEW_PARAMS_SHOW_WK_NUM)) {
-            if (params.get(VIEW_PARAMS_SHOW_WK_NUM) != 0) {
-                mShowWeekNum = true;
-            } else {
-                mShowWeekNum = false;
-            }
-        }
+        mNumDays = params.numDays;
+        mShowWeekNum = params.showWeekNumber;
         mNumCells = mShowWeekNum ? mNumDays + 1 : mNumDays;
 
-        // Allocate space for caching the day numbers and focus values
-        mDayNumbers = new String[mNumCells];
-        mFocusDay = new boolean[mNumCells];
-        mOddMonth = new boolean[mNumCells];
-        mWeek = params.get(VIEW_PARAMS_WEEK);
+        // Allocate space for caching the day numbers and focus values, unless
+        // the last week had as many cells
+        if (mDayNumbers == null || mDayNumbers.length != mNumCells) {
+            mDayNumbers = new String[mNumCells];
+            mFocusDay = new boolean[mNumCells];
+            mOddMonth = new boolean[mNumCells];
+        }
+        mWeek = params.week;
         int julianMonday = Utils.getJulianMondayFromWeeksSinceEpoch(mWeek);
-        Time time = new Time(tz);
+        Time time = mParamsTime;
+        time.timezone = tz;
         time.setJulianDay(julianMonday);
 
         // If we're showing the week number calculate it based on Monday
@@ -254,9 +201,7 @@ public class SimpleWeekView extends View {
             i++;
         }
 
-        if (params.containsKey(VIEW_PARAMS_WEEK_START)) {
-            mWeekStart = params.get(VIEW_PARAMS_WEEK_START);
-        }
+        mWeekStart = params.weekStart;
 
         // Now adjust our starting day based on the start day of the week
         // If the week is set to start on a Saturday the first week will be
@@ -274,14 +219,13 @@ public class SimpleWeekView extends View {
         mFirstMonth = time.month;
 
         // Figure out what day today is
-        Time today = new Time(tz);
+        Time today = mParamsToday;
+        today.timezone = tz;
         today.setToNow();
         mHasToday = false;
         mToday = -1;
 
-        int focusMonth = params.containsKey(VIEW_PARAMS_FOCUS_MONTH) ? params.get(
-                VIEW_PARAMS_FOCUS_MONTH)
-                : DEFAULT_FOCUS_MONTH;
+        int focusMonth = params.focusMonth;
 
         for (; i < mNumCells; i++) {
             if (time.monthDay == 1) {
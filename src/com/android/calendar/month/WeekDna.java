@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.calendar.month;
+
+/**
+ * The dna of a week, as built by {@link WeekDnaBuilder}: the busy times of
+ * each day as vertical lines, one strand of lines per color. The lines of
+ * all the strands are stored one strand after another in a single array,
+ * ready to pass to {@link android.graphics.Canvas#drawLines(float[], int, int,
+ * android.graphics.Paint)}.
+ *
+ * The first strand holds the conflicting times and is meant to be drawn
+ * last, so that it ends up on top. It may be empty.
+ */
+public final class WeekDna {
+    /**
+     * The index of the strand holding the conflicting times.
+     */
+    public static final int CONFLICT_STRAND = 0;
+
+    private final int[] mColors;
+    // The lines of strand i are at [mOffsets[i], mOffsets[i + 1]) of mPoints
+    private final int[] mOffsets;
+    private final float[] mPoints;
+    private final int[] mAllDayColors;
+
+    WeekDna(int[] colors, int[] offsets, float[] points, int[] allDayColors) {
+        mColors = colors;
+        mOffsets = offsets;
+        mPoints = points;
+        mAllDayColors = allDayColors;
+    }
+
+    public int getStrandCount() {
+        return mColors.length;
+    }
+
+    public int getColor(int strand) {
+        return mColors[strand];
+    }
+
+    /**
+     * Returns the lines of every strand, four values per line.
+     */
+    public float[] getPoints() {
+        return mPoints;
+    }
+
+    /**
+     * Returns where the lines of strand start in {@link #getPoints()}.
+     */
+    public int getPointOffset(int strand) {
+        return mOffsets[strand];
+    }
+
+    /**
+     * Returns the number of values of strand in {@link #getPoints()}.
+     */
+    public int getPointCount(int strand) {
+        return mOffsets[strand + 1] - mOffsets[strand];
+    }
+
+    /**
+     * Returns the color of the all-day events on each day, which is the
+     * conflict color for a day with more than one, and 0 for a day with
+     * none. Null if the week has no all-day events.
+     */
+    public int[] getAllDayColors() {
+        return mAllDayColors;
+    }
+}
@@ -0,0 +1,512 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.calendar.month;
+
+import com.android.calendar.EventColumns;
+import com.android.calendar.R;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * Builds the {@link WeekDna} the month view draws for each week when it
+ * doesn't show event details.
+ *
+ * The events are turned into segments of time, each a single continuous
+ * length of one color on one day, and overlapping segments become conflict
+ * segments. The segments are kept in parallel arrays ordered by start time,
+ * with their colors as indices into a table of the week's colors, and are
+ * then laid out as lines one color after another.
+ *
+ * Weeks are built again whenever they are bound while scrolling, so the
+ * last few are cached until the events change. Not thread safe, only meant
+ * to be used from the UI thread.
+ */
+public final class WeekDnaBuilder {
+    private static final String TAG = "WeekDnaBuilder";
+
+    static final int DAY_IN_MINUTES = 60 * 24;
+    static final int WEEK_IN_MINUTES = DAY_IN_MINUTES * 7;
+
+    // The index of the conflict color in mColors
+    private static final int CONFLICT = WeekDna.CONFLICT_STRAND;
+    private static final int CACHE_SIZE = 16;
+
+    private static WeekDnaBuilder sInstance;
+
+    private final int mConflictColor;
+    // The work day, which gets 3/4 of the height of the dna
+    private final int mWorkDayStartMinutes;
+    private final int mWorkDayEndMinutes;
+    private final int mWorkDayMinutes;
+    private final int mWorkDayEndLength;
+
+    // The colors of the week being built, the conflict color first
+    private int[] mColors = new int[8];
+    private int mColorCount;
+
+    // The segments of the week being built, ordered by start time
+    private int[] mSegmentStarts = new int[64];
+    private int[] mSegmentEnds = new int[64];
+    private int[] mSegmentColors = new int[64];
+    private int[] mSegmentDays = new int[64];
+    private int mSegmentCount;
+    // The index of the segment that was last when the current event was
+    // added, or -1 if it was merged away, in which case its end is kept
+    private int mLastSegment;
+    private int mRemovedLastSegmentEnd;
+
+    // The weeks built for mCachedEvents, most recently used first
+    private EventColumns mCachedEvents;
+    private final CacheEntry[] mCache = new CacheEntry[CACHE_SIZE];
+    private int mCacheSize;
+
+    private static final class CacheEntry {
+        int firstJulianDay;
+        int top;
+        int bottom;
+        int minPixels;
+        int[] dayXs;
+        WeekDna dna;
+    }
+
+    public static synchronized WeekDnaBuilder getInstance(Context context) {
+        if (sInstance == null) {
+            Resources res = context.getResources();
+            sInstance = new WeekDnaBuilder(res.getColor(R.color.month_dna_conflict_time_color),
+                    res.getInteger(R.integer.work_start_minutes),
+                    res.getInteger(R.integer.work_end_minutes));
+        }
+        return sInstance;
+    }
+
+    WeekDnaBuilder(int conflictColor, int workDayStartMinutes, int workDayEndMinutes) {
+        mConflictColor = conflictColor;
+        mWorkDayStartMinutes = workDayStartMinutes;
+        mWorkDayEndMinutes = workDayEndMinutes;
+        mWorkDayMinutes = workDayEndMinutes - workDayStartMinutes;
+        mWorkDayEndLength = DAY_IN_MINUTES - workDayEndMinutes;
+    }
+
+    /**
+     * Returns the dna of the days from firstJulianDay to firstJulianDay +
+     * dayXs.length - 1, building it unless it was built for the same events
+     * and size recently. The events must be ordered by start time. The dna is
+     * laid out as follows.
+     * <ul>
+     * <li>Events between midnight and the start of the work day are
+     * compressed into the first 1/8th of the space between top and bottom.</li>
+     * <li>Events between the end of the work day and the following midnight
+     * are compressed into the last 1/8th of the space between top and
+     * bottom</li>
+     * <li>Events during the work day use the remaining 3/4ths of the
+     * space</li>
+     * <li>All segments drawn will maintain at least minPixels height, except
+     * for conflicts in the first or last 1/8th, which may be smaller</li>
+     * </ul>
+     *
+     * @param firstJulianDay The julian day of the first day of events
+     * @param events The events to build the dna from
+     * @param top The lowest y value the dna should be drawn at
+     * @param bottom The highest y value the dna should be drawn at
+     * @param minPixels The minimum height of a segment
+     * @param dayXs An array of x values to draw the dna at, one for each day
+     * @return The dna, or null if there are no events or the size is too
+     *         small to draw it
+     */
+    public WeekDna getDna(int firstJulianDay, EventColumns events, int top, int bottom,
+            int minPixels, int[] dayXs) {
+        if (events == null || events.isEmpty() || dayXs == null || dayXs.length < 1
+                || bottom - top < 8 || minPixels < 0) {
+            return null;
+        }
+
+        if (events != mCachedEvents) {
+            // The events were loaded again, so every week has changed
+            Arrays.fill(mCache, 0, mCacheSize, null);
+            mCacheSize = 0;
+            mCachedEvents = events;
+        }
+        for (int i = 0; i < mCacheSize; i++) {
+            CacheEntry entry = mCache[i];
+            if (entry.firstJulianDay == firstJulianDay && entry.top == top
+                    && entry.bottom == bottom && entry.minPixels == minPixels
+                    && Arrays.equals(entry.dayXs, dayXs)) {
+                System.arraycopy(mCache, 0, mCache, 1, i);
+                mCache[0] = entry;
+                return entry.dna;
+            }
+        }
+
+        CacheEntry entry;
+        if (mCacheSize < CACHE_SIZE) {
+            entry = new CacheEntry();
+            mCacheSize++;
+        } else {
+            entry = mCache[CACHE_SIZE - 1];
+        }
+        System.arraycopy(mCache, 0, mCache, 1, mCacheSize - 1);
+        mCache[0] = entry;
+        entry.firstJulianDay = firstJulianDay;
+        entry.top = top;
+        entry.bottom = bottom;
+        entry.minPixels = minPixels;
+        entry.dayXs = dayXs.clone();
+        entry.dna = build(firstJulianDay, events, top, bottom, minPixels, dayXs);
+        return entry.dna;
+    }
+
+    /**
+     * Builds the dna for {@link #getDna} without looking in the cache.
+     */
+    WeekDna build(int firstJulianDay, EventColumns events, int top, int bottom, int minPixels,
+            int[] dayXs) {
+        final int numDays = dayXs.length;
+        final int lastJulianDay = firstJulianDay + numDays - 1;
+        mColorCount = 0;
+        addColor(mConflictColor);
+        mSegmentCount = 0;
+        int[] allDayColors = null;
+
+        // the min length is the number of minutes that will occupy
+        // minPixels in the 'work day' time slot. This computes the
+        // minutes/pixel * minpx where the number of pixels are 3/4 the total
+        // dna height: 4*(mins/(px * 3/4))
+        final int minMinutes = minPixels * 4 * mWorkDayMinutes / (3 * (bottom - top));
+        // There are slightly fewer than half as many pixels in 1/6 the space,
+        // so round to 2.5x for the min minutes in the non-work area
+        final int minOtherMinutes = minMinutes * 5 / 2;
+
+        // Go through all the events for the week
+        final int count = events.size();
+        for (int i = 0; i < count; i++) {
+            int startDay = events.getStartDay(i);
+            int endDay = events.getEndDay(i);
+            // if this event is outside the weeks range skip it
+            if (endDay < firstJulianDay || startDay > lastJulianDay) {
+                continue;
+            }
+            if (events.drawAsAllday(i)) {
+                if (allDayColors == null) {
+                    allDayColors = new int[numDays];
+                }
+                // For each day this event is on update the color, and mark
+                // the days that already had one as conflicts
+                int last = Math.min(endDay - firstJulianDay, numDays - 1);
+                for (int day = Math.max(startDay - firstJulianDay, 0); day <= last; day++) {
+                    allDayColors[day] = allDayColors[day] != 0 ? mConflictColor
+                            : events.getColor(i);
+                }
+                continue;
+            }
+
+            // Clip the start and end to our range
+            int startTime = events.getStartTime(i);
+            int endTime = events.getEndTime(i);
+            if (startDay < firstJulianDay) {
+                startDay = firstJulianDay;
+                startTime = 0;
+            }
+            // If it starts after the work day make sure the start is at least
+            // minPixels from midnight
+            if (startTime > DAY_IN_MINUTES - minOtherMinutes) {
+                startTime = DAY_IN_MINUTES - minOtherMinutes;
+            }
+            if (endDay > lastJulianDay) {
+                endDay = lastJulianDay;
+                endTime = DAY_IN_MINUTES - 1;
+            }
+            // If the end time is before the work day make sure it ends at least
+            // minPixels after midnight
+            if (endTime < minOtherMinutes) {
+                endTime = minOtherMinutes;
+            }
+            // If the start and end are on the same day make sure they are at
+            // least minPixels apart. This only needs to be done for times
+            // outside the work day as the min distance for within the work day
+            // is enforced in the segment code.
+            if (startDay == endDay && endTime - startTime < minOtherMinutes) {
+                if (startTime < mWorkDayStartMinutes) {
+                    // extend the end to the first easy guarantee that it's
+                    // minPixels
+                    endTime = Math.min(startTime + minOtherMinutes,
+                            mWorkDayStartMinutes + minMinutes);
+                } else if (endTime > mWorkDayEndMinutes) {
+                    // First try shifting the end but not past midnight
+                    endTime = Math.min(endTime + minOtherMinutes, DAY_IN_MINUTES - 1);
+                    // if it's still too small move the start back
+                    if (endTime - startTime < minOtherMinutes) {
+                        startTime = endTime - minOtherMinutes;
+                    }
+                }
+            }
+            if (startDay > endDay) {
+                Log.wtf(TAG, "Event starts after it ends: " + events.getTitle(i));
+                continue;
+            }
+            final int color = addColor(events.getColor(i));
+
+            // This handles adding the first segment
+            if (mSegmentCount == 0) {
+                addSegments(firstJulianDay, startDay, startTime, endDay, endTime, color, 0,
+                        minMinutes);
+                continue;
+            }
+
+            // Now compare our current start time to the end time of the last
+            // segment
+            mLastSegment = mSegmentCount - 1;
+            final int lastEnd = mSegmentEnds[mLastSegment];
+            int startMinute = (startDay - firstJulianDay) * DAY_IN_MINUTES + startTime;
+            int endMinute = Math.max((endDay - firstJulianDay) * DAY_IN_MINUTES + endTime,
+                    startMinute + minMinutes);
+            if (startMinute < 0) {
+                startMinute = 0;
+            }
+            if (endMinute >= WEEK_IN_MINUTES) {
+                endMinute = WEEK_IN_MINUTES - 1;
+            }
+            // If we start before the last segment ends this may conflict with
+            // other events
+            if (startMinute < lastEnd) {
+                markConflicts(startMinute, endMinute, minMinutes);
+            }
+            // If this event extends beyond the last segment add a new segment
+            final int lastSegmentEnd = mLastSegment >= 0 ? mSegmentEnds[mLastSegment]
+                    : mRemovedLastSegmentEnd;
+            if (endMinute > lastSegmentEnd) {
+                addSegments(firstJulianDay, startDay, startTime, endDay, endTime, color,
+                        lastSegmentEnd, minMinutes);
+            }
+        }
+
+        return layOut(firstJulianDay, top, bottom, dayXs, allDayColors);
+    }
+
+    /**
+     * Turns the parts of the segments between startMinute and endMinute into
+     * conflicts, splitting off the parts outside and merging the conflicts
+     * with the ones next to them.
+     */
+    private void markConflicts(int startMinute, int endMinute, int minMinutes) {
+        // find the last segment this event intersects with
+        int i = mSegmentCount;
+        while (--i >= 0 && endMinute < mSegmentStarts[i]);
+
+        // for each segment this event intersects with
+        for (; i >= 0 && startMinute <= mSegmentEnds[i]; i--) {
+            // if the segment is already a conflict ignore it
+            if (mSegmentColors[i] == CONFLICT) {
+                continue;
+            }
+            // if the event ends before the segment and wouldn't create a
+            // segment that is too small split off the right side
+            if (endMinute < mSegmentEnds[i] - minMinutes) {
+                insertSegment(i + 1, endMinute + 1, mSegmentEnds[i], mSegmentColors[i],
+                        mSegmentDays[i]);
+                mSegmentEnds[i] = endMinute;
+            }
+            // if the event starts after the segment and wouldn't create a
+            // segment that is too small split off the left side, moving i to
+            // keep pointing at the current segment
+            if (startMinute > mSegmentStarts[i] + minMinutes) {
+                insertSegment(i, mSegmentStarts[i], startMinute - 1, mSegmentColors[i],
+                        mSegmentDays[i]);
+                i++;
+                mSegmentStarts[i] = startMinute;
+            }
+            // if the right side is a conflict merge this with the segment to
+            // the right if they're on the same day and overlap
+            if (i + 1 < mSegmentCount) {
+                final int rhs = i + 1;
+                if (mSegmentColors[rhs] == CONFLICT && mSegmentDays[i] == mSegmentDays[rhs]
+                        && mSegmentStarts[rhs] <= mSegmentEnds[i] + 1) {
+                    mSegmentStarts[rhs] = Math.min(mSegmentStarts[i], mSegmentStarts[rhs]);
+                    // i now points at the merged segment
+                    removeSegment(i);
+                }
+            }
+            // if the left side is a conflict merge this with the segment to
+            // the left if they're on the same day and overlap
+            if (i - 1 >= 0) {
+                final int lhs = i - 1;
+                if (mSegmentColors[lhs] == CONFLICT && mSegmentDays[i] == mSegmentDays[lhs]
+                        && mSegmentEnds[lhs] >= mSegmentStarts[i] - 1) {
+                    mSegmentEnds[lhs] = Math.max(mSegmentEnds[i], mSegmentEnds[lhs]);
+                    removeSegment(i);
+                    i--;
+                }
+            }
+            mSegmentColors[i] = CONFLICT;
+        }
+    }
+
+    /**
+     * Adds segments for an event at the end, one for each day it is on, and
+     * ensures a minimum size for them.
+     */
+    private void addSegments(int firstJulianDay, int startDay, int startTime, int endDay,
+            int endTime, int color, int minStart, int minMinutes) {
+        for (int day = startDay; day < endDay; day++) {
+            addSegment(firstJulianDay, day, startTime, DAY_IN_MINUTES - 1, color, minStart,
+                    minMinutes);
+            // The days after the first start at midnight
+            startTime = 0;
+            minStart = 0;
+        }
+        addSegment(firstJulianDay, endDay, startTime, endTime, color, minStart, minMinutes);
+    }
+
+    private void addSegment(int firstJulianDay, int day, int startTime, int endTime, int color,
+            int minStart, int minMinutes) {
+        final int dayOffset = (day - firstJulianDay) * DAY_IN_MINUTES;
+        final int endOfDay = dayOffset + DAY_IN_MINUTES - 1;
+        // clip the start if needed
+        final int startMinute = Math.max(dayOffset + startTime, minStart);
+        // and extend the end if it's too small, but not beyond the end of the
+        // day
+        final int minEnd = Math.min(startMinute + minMinutes, endOfDay);
+        final int endMinute = Math.min(Math.max(dayOffset + endTime, minEnd), endOfDay);
+        insertSegment(mSegmentCount, startMinute, endMinute, color, day);
+    }
+
+    private void insertSegment(int index, int startMinute, int endMinute, int color, int day) {
+        if (mSegmentCount == mSegmentStarts.length) {
+            final int capacity = mSegmentCount * 2;
+            mSegmentStarts = Arrays.copyOf(mSegmentStarts, capacity);
+            mSegmentEnds = Arrays.copyOf(mSegmentEnds, capacity);
+            mSegmentColors = Arrays.copyOf(mSegmentColors, capacity);
+            mSegmentDays = Arrays.copyOf(mSegmentDays, capacity);
+        }
+        final int moved = mSegmentCount - index;
+        if (moved > 0) {
+            System.arraycopy(mSegmentStarts, index, mSegmentStarts, index + 1, moved);
+            System.arraycopy(mSegmentEnds, index, mSegmentEnds, index + 1, moved);
+            System.arraycopy(mSegmentColors, index, mSegmentColors, index + 1, moved);
+            System.arraycopy(mSegmentDays, index, mSegmentDays, index + 1, moved);
+        }
+        mSegmentStarts[index] = startMinute;
+        mSegmentEnds[index] = endMinute;
+        mSegmentColors[index] = color;
+        mSegmentDays[index] = day;
+        mSegmentCount++;
+        if (mLastSegment >= index) {
+            mLastSegment++;
+        }
+    }
+
+    private void removeSegment(int index) {
+        if (mLastSegment == index) {
+            mRemovedLastSegmentEnd = mSegmentEnds[index];
+            mLastSegment = -1;
+        } else if (mLastSegment > index) {
+            mLastSegment--;
+        }
+        final int moved = mSegmentCount - index - 1;
+        if (moved > 0) {
+            System.arraycopy(mSegmentStarts, index + 1, mSegmentStarts, index, moved);
+            System.arraycopy(mSegmentEnds, index + 1, mSegmentEnds, index, moved);
+            System.arraycopy(mSegmentColors, index + 1, mSegmentColors, index, moved);
+            System.arraycopy(mSegmentDays, index + 1, mSegmentDays, index, moved);
+        }
+        mSegmentCount--;
+    }
+
+    /**
+     * Returns the index of color in mColors, adding it if needed.
+     */
+    private int addColor(int color) {
+        // A week rarely has more than a handful of colors, so a scan beats
+        // hashing
+        for (int i = 0; i < mColorCount; i++) {
+            if (mColors[i] == color) {
+                return i;
+            }
+        }
+        if (mColorCount == mColors.length) {
+            mColors = Arrays.copyOf(mColors, mColorCount * 2);
+        }
+        mColors[mColorCount] = color;
+        return mColorCount++;
+    }
+
+    /**
+     * Computes the lines of the segments, grouped by color with the colors
+     * without segments left out, except for the conflict color.
+     */
+    private WeekDna layOut(int firstJulianDay, int top, int bottom, int[] dayXs,
+            int[] allDayColors) {
+        int[] counts = new int[mColorCount];
+        for (int i = 0; i < mSegmentCount; i++) {
+            counts[mSegmentColors[i]]++;
+        }
+        // Number the strands, keeping the conflict strand first
+        int[] strands = new int[mColorCount];
+        int strandCount = 0;
+        for (int color = 0; color < mColorCount; color++) {
+            strands[color] = color == CONFLICT || counts[color] > 0 ? strandCount++ : -1;
+        }
+        int[] colors = new int[strandCount];
+        int[] offsets = new int[strandCount + 1];
+        for (int color = 0; color < mColorCount; color++) {
+            if (strands[color] >= 0) {
+                colors[strands[color]] = mColors[color];
+                offsets[strands[color] + 1] = counts[color] * 4;
+            }
+        }
+        for (int strand = 0; strand < strandCount; strand++) {
+            offsets[strand + 1] += offsets[strand];
+        }
+
+        final int height = bottom - top;
+        final int workDayHeight = height * 3 / 4;
+        final int remainderHeight = (height - workDayHeight) / 2;
+        float[] points = new float[mSegmentCount * 4];
+        int[] next = Arrays.copyOf(offsets, strandCount);
+        for (int i = 0; i < mSegmentCount; i++) {
+            final int x = dayXs[mSegmentDays[i] - firstJulianDay];
+            int pos = next[strands[mSegmentColors[i]]];
+            points[pos++] = x;
+            points[pos++] = top + getPixelOffsetFromMinutes(
+                    mSegmentStarts[i] % DAY_IN_MINUTES, workDayHeight, remainderHeight);
+            points[pos++] = x;
+            points[pos++] = top + getPixelOffsetFromMinutes(
+                    mSegmentEnds[i] % DAY_IN_MINUTES, workDayHeight, remainderHeight);
+            next[strands[mSegmentColors[i]]] = pos;
+        }
+        return new WeekDna(colors, offsets, points, allDayColors);
+    }
+
+    /**
+     * Compute a pixel offset from the top for a given minute from the work day
+     * height and the height of the top area.
+     */
+    private int getPixelOffsetFromMinutes(int minute, int workDayHeight, int remainderHeight) {
+        if (minute < mWorkDayStartMinutes) {
+            return minute * remainderHeight / mWorkDayStartMinutes;
+        } else if (minute < mWorkDayEndMinutes) {
+            return remainderHeight + (minute - mWorkDayStartMinutes) * workDayHeight
+                    / mWorkDayMinutes;
+        } else {
+            return remainderHeight + workDayHeight + (minute - mWorkDayEndMinutes)
+                    * remainderHeight / mWorkDayEndLength;
+        }
+    }
+}
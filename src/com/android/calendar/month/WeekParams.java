@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.calendar.month;
+
+import com.android.calendar.Utils;
+
+import android.content.res.Configuration;
+import android.text.format.Time;
+
+/**
+ * The parameters for displaying a week in a {@link SimpleWeekView}. The
+ * adapters fill in one instance for every week they bind and the view copies
+ * the values out, so the same instance can be reused for every bind.
+ */
+public class WeekParams {
+    /**
+     * The position (or weeks since the epoch) of the week, calculated using
+     * {@link Utils#getWeeksSinceEpochFromJulianDay}. The only field without a
+     * usable default.
+     */
+    public int week = -1;
+    /**
+     * The height of the week in pixels.
+     */
+    public int height = SimpleWeekView.DEFAULT_HEIGHT;
+    /**
+     * The selected day, {@link Time#SUNDAY} through {@link Time#SATURDAY}, or
+     * -1 if the week has no selected day.
+     */
+    public int selectedDay = SimpleWeekView.DEFAULT_SELECTED_DAY;
+    /**
+     * Which day the week should start on, {@link Time#SUNDAY} through
+     * {@link Time#SATURDAY}.
+     */
+    public int weekStart = SimpleWeekView.DEFAULT_WEEK_START;
+    /**
+     * How many days to display, starting with {@link #weekStart}.
+     */
+    public int numDays = SimpleWeekView.DEFAULT_NUM_DAYS;
+    /**
+     * Which month is in focus, as defined by {@link Time#month} [0-11], or -1
+     * for none.
+     */
+    public int focusMonth = SimpleWeekView.DEFAULT_FOCUS_MONTH;
+    /**
+     * Whether the week number should be displayed.
+     */
+    public boolean showWeekNumber;
+    /**
+     * The orientation of the screen, used by {@link MonthWeekEventsView}.
+     */
+    public int orientation = Configuration.ORIENTATION_LANDSCAPE;
+    /**
+     * Whether {@link MonthWeekEventsView} should animate today in, if the
+     * week contains it.
+     */
+    public boolean animateToday;
+
+    /**
+     * Sets every field back to its default value.
+     */
+    public void reset() {
+        week = -1;
+        height = SimpleWeekView.DEFAULT_HEIGHT;
+        selectedDay = SimpleWeekView.DEFAULT_SELECTED_DAY;
+        weekStart = SimpleWeekView.DEFAULT_WEEK_START;
+        numDays = SimpleWeekView.DEFAULT_NUM_DAYS;
+        focusMonth = SimpleWeekView.DEFAULT_FOCUS_MONTH;
+        showWeekNumber = false;
+        orientation = Configuration.ORIENTATION_LANDSCAPE;
+        animateToday = false;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.calendar.month;
+
+import com.android.calendar.EventColumns;
+import com.android.calendar.Utils;
+
+import android.content.Context;
+import android.text.format.DateUtils;
+
+import java.util.Arrays;
+import java.util.Formatter;
+import java.util.Locale;
+
+/**
+ * What a {@link MonthWeekEventsView} draws for its events, laid out when the
+ * events, size or params of the week change so that drawing only walks these
+ * arrays. Holds the event chips that fit on each day with their ellipsized
+ * labels, the "+n" labels of the days with events that don't fit, and the
+ * dna strands when the week shows those instead.
+ *
+ * The arrays only grow, so a view laying out week after week while the
+ * month scrolls keeps reusing them.
+ */
+/* package */ final class WeekRenderModel {
+    static final int PAINT_EVENT = 0;
+    static final int PAINT_SOLID_BACKGROUND = 1;
+    static final int PAINT_DECLINED = 2;
+    static final int PAINT_FRAMED = 3;
+
+    // The event chips, with the box drawn for each and its labels. The time
+    // label is null if there is none.
+    int chipCount;
+    int[] boxLeft = new int[0];
+    int[] boxTop = new int[0];
+    int[] boxRight = new int[0];
+    int[] boxBottom = new int[0];
+    boolean[] boxFilled = new boolean[0];
+    int[] colors = new int[0];
+    boolean[] declined = new boolean[0];
+    int[] textX = new int[0];
+    int[] titleY = new int[0];
+    int[] titlePaints = new int[0];
+    String[] titles = new String[0];
+    int[] timeY = new int[0];
+    String[] timeLabels = new String[0];
+
+    // The "+n" labels of the days with hidden events
+    int moreCount;
+    int[] moreX = new int[0];
+    String[] moreLabels = new String[0];
+
+    // The dna of the week, or null if the week shows no dna
+    WeekDna dna;
+    // The x of the all-day dna line of each day
+    int[] dnaDayXs;
+
+    /**
+     * Clears the chips and labels, keeping the arrays for the next layout.
+     */
+    void clearChips() {
+        Arrays.fill(titles, 0, chipCount, null);
+        Arrays.fill(timeLabels, 0, chipCount, null);
+        Arrays.fill(moreLabels, 0, moreCount, null);
+        chipCount = 0;
+        moreCount = 0;
+    }
+
+    void clearDna() {
+        dna = null;
+        dnaDayXs = null;
+    }
+
+    /**
+     * Adds a chip, returning its index.
+     */
+    int addChip() {
+        if (chipCount == titles.length) {
+            final int capacity = Math.max(16, chipCount * 2);
+            boxLeft = Arrays.copyOf(boxLeft, capacity);
+            boxTop = Arrays.copyOf(boxTop, capacity);
+            boxRight = Arrays.copyOf(boxRight, capacity);
+            boxBottom = Arrays.copyOf(boxBottom, capacity);
+            boxFilled = Arrays.copyOf(boxFilled, capacity);
+            colors = Arrays.copyOf(colors, capacity);
+            declined = Arrays.copyOf(declined, capacity);
+            textX = Arrays.copyOf(textX, capacity);
+            titleY = Arrays.copyOf(titleY, capacity);
+            titlePaints = Arrays.copyOf(titlePaints, capacity);
+            titles = Arrays.copyOf(titles, capacity);
+            timeY = Arrays.copyOf(timeY, capacity);
+            timeLabels = Arrays.copyOf(timeLabels, capacity);
+        }
+        return chipCount++;
+    }
+
+    void addMore(int x, String label) {
+        if (moreCount == moreLabels.length) {
+            final int capacity = Math.max(7, moreCount * 2);
+            moreX = Arrays.copyOf(moreX, capacity);
+            moreLabels = Arrays.copyOf(moreLabels, capacity);
+        }
+        moreX[moreCount] = x;
+        moreLabels[moreCount] = label;
+        moreCount++;
+    }
+
+    /**
+     * Formats the time range shown under the title of each event, or null
+     * for all-day events, which don't show one. Doesn't touch any views, so
+     * it can run on the thread loading the events.
+     */
+    static String[] formatTimeLabels(Context context, EventColumns events) {
+        final int size = events == null ? 0 : events.size();
+        String[] labels = new String[size];
+        StringBuilder builder = new StringBuilder(50);
+        Formatter formatter = new Formatter(builder, Locale.getDefault());
+        String timeZone = Utils.getTimeZone(context, null);
+        for (int i = 0; i < size; i++) {
+            if (events.isAllDay(i)) {
+                continue;
+            }
+            builder.setLength(0);
+            labels[i] = DateUtils.formatDateRange(context, formatter, events.getStartMillis(i),
+                    events.getEndMillis(i), DateUtils.FORMAT_SHOW_TIME
+                    | DateUtils.FORMAT_ABBREV_ALL, timeZone).toString();
+        }
+        return labels;
+    }
+}
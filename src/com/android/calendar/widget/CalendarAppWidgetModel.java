@@ -16,6 +16,7 @@
 
 package com.android.calendar.widget;
 
+import com.android.calendar.Event;
 import com.android.calendar.R;
 import com.android.calendar.Utils;
 
@@ -29,6 +30,8 @@ import android.util.Log;
 import android.view.View;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.TimeZone;
@@ -86,6 +89,7 @@ class CalendarAppWidgetModel {
         long end;
         boolean allDay;
         int color;
+        int displayColor;
 
         public EventInfo() {
             visibWhen = View.GONE;
@@ -262,17 +266,7 @@ class CalendarAppWidgetModel {
 
     public void buildFromCursor(Cursor cursor, String timeZone) {
         final Time recycle = new Time(timeZone);
-        final ArrayList<LinkedList<RowInfo>> mBuckets =
-                new ArrayList<LinkedList<RowInfo>>(CalendarAppWidgetService.MAX_DAYS);
-        for (int i = 0; i < CalendarAppWidgetService.MAX_DAYS; i++) {
-            mBuckets.add(new LinkedList<RowInfo>());
-        }
-        recycle.setToNow();
-        mShowTZ = !TextUtils.equals(timeZone, Time.getCurrentTimezone());
-        if (mShowTZ) {
-            mHomeTZName = TimeZone.getTimeZone(timeZone).getDisplayName(recycle.isDst != 0,
-                    TimeZone.SHORT);
-        }
+        final ArrayList<LinkedList<RowInfo>> mBuckets = createBuckets(recycle, timeZone);
 
         cursor.moveToPosition(-1);
         String tz = Utils.getTimeZone(mContext, null);
@@ -293,43 +287,114 @@ class CalendarAppWidgetModel {
             final int selfStatus = cursor
                     .getInt(CalendarAppWidgetService.INDEX_SELF_ATTENDEE_STATUS);
 
-            // Adjust all-day times into local timezone
-            if (allDay) {
-                start = Utils.convertAlldayUtcToLocal(recycle, start, tz);
-                end = Utils.convertAlldayUtcToLocal(recycle, end, tz);
-            }
-
             if (LOGD) {
                 Log.d(TAG, "Row #" + rowId + " allDay:" + allDay + " start:" + start
                         + " end:" + end + " eventId:" + eventId);
             }
 
-            // we might get some extra events when querying, in order to
-            // deal with all-day events
-            if (end < mNow) {
-                continue;
-            }
+            addEvent(mBuckets, recycle, tz, eventId, allDay, start, end, startDay, endDay, title,
+                    location, color, Utils.getDisplayColorFromColor(color), selfStatus);
+        }
+
+        addRows(mBuckets, recycle);
+    }
 
-            int i = mEventInfos.size();
-            mEventInfos.add(populateEventInfo(eventId, allDay, start, end, startDay, endDay, title,
-                    location, color, selfStatus));
-            // populate the day buckets that this event falls into
-            int from = Math.max(startDay, mTodayJulianDay);
-            int to = Math.min(endDay, mMaxJulianDay);
-            for (int day = from; day <= to; day++) {
-                LinkedList<RowInfo> bucket = mBuckets.get(day - mTodayJulianDay);
-                RowInfo rowInfo = new RowInfo(RowInfo.TYPE_MEETING, i);
-                if (allDay) {
-                    bucket.addFirst(rowInfo);
-                } else {
-                    bucket.add(rowInfo);
+    /**
+     * Builds the model from events that were already loaded, in the same way
+     * {@link #buildFromCursor(Cursor, String)} does from a query.
+     *
+     * @param events The events intersecting the widget's days. They are
+     *            not modified.
+     */
+    public void buildFromEvents(List<Event> events, String timeZone) {
+        final Time recycle = new Time(timeZone);
+        final ArrayList<LinkedList<RowInfo>> mBuckets = createBuckets(recycle, timeZone);
+
+        // Use the same order as the widget's query
+        ArrayList<Event> sorted = new ArrayList<Event>(events);
+        Collections.sort(sorted, new Comparator<Event>() {
+            @Override
+            public int compare(Event lhs, Event rhs) {
+                if (lhs.startDay != rhs.startDay) {
+                    return lhs.startDay < rhs.startDay ? -1 : 1;
+                }
+                if (lhs.startTime != rhs.startTime) {
+                    return lhs.startTime < rhs.startTime ? -1 : 1;
+                }
+                if (lhs.endDay != rhs.endDay) {
+                    return lhs.endDay < rhs.endDay ? -1 : 1;
                 }
+                return lhs.endTime - rhs.endTime;
+            }
+        });
+
+        String tz = Utils.getTimeZone(mContext, null);
+        int count = Math.min(sorted.size(), CalendarAppWidgetService.EVENT_MAX_COUNT);
+        for (int i = 0; i < count; i++) {
+            final Event e = sorted.get(i);
+            // Event colors are already display colors
+            addEvent(mBuckets, recycle, tz, e.id, e.allDay, e.startMillis, e.endMillis,
+                    e.startDay, e.endDay, e.title == null ? null : e.title.toString(),
+                    e.location == null ? null : e.location.toString(), e.color, e.color,
+                    e.selfAttendeeStatus);
+        }
+
+        addRows(mBuckets, recycle);
+    }
+
+    private ArrayList<LinkedList<RowInfo>> createBuckets(Time recycle, String timeZone) {
+        final ArrayList<LinkedList<RowInfo>> buckets =
+                new ArrayList<LinkedList<RowInfo>>(CalendarAppWidgetService.MAX_DAYS);
+        for (int i = 0; i < CalendarAppWidgetService.MAX_DAYS; i++) {
+            buckets.add(new LinkedList<RowInfo>());
+        }
+        recycle.setToNow();
+        mShowTZ = !TextUtils.equals(timeZone, Time.getCurrentTimezone());
+        if (mShowTZ) {
+            mHomeTZName = TimeZone.getTimeZone(timeZone).getDisplayName(recycle.isDst != 0,
+                    TimeZone.SHORT);
+        }
+        return buckets;
+    }
+
+    private void addEvent(ArrayList<LinkedList<RowInfo>> buckets, Time recycle, String tz,
+            long eventId, boolean allDay, long start, long end, int startDay, int endDay,
+            String title, String location, int color, int displayColor, int selfStatus) {
+        // Adjust all-day times into local timezone
+        if (allDay) {
+            start = Utils.convertAlldayUtcToLocal(recycle, start, tz);
+            end = Utils.convertAlldayUtcToLocal(recycle, end, tz);
+        }
+
+        // we might get some extra events when querying, in order to
+        // deal with all-day events
+        if (end < mNow) {
+            return;
+        }
+
+        int i = mEventInfos.size();
+        EventInfo eventInfo = populateEventInfo(eventId, allDay, start, end, startDay, endDay,
+                title, location, color, selfStatus);
+        eventInfo.displayColor = displayColor;
+        mEventInfos.add(eventInfo);
+        // populate the day buckets that this event falls into
+        int from = Math.max(startDay, mTodayJulianDay);
+        int to = Math.min(endDay, mMaxJulianDay);
+        for (int day = from; day <= to; day++) {
+            LinkedList<RowInfo> bucket = buckets.get(day - mTodayJulianDay);
+            RowInfo rowInfo = new RowInfo(RowInfo.TYPE_MEETING, i);
+            if (allDay) {
+                bucket.addFirst(rowInfo);
+            } else {
+                bucket.add(rowInfo);
             }
         }
+    }
 
+    private void addRows(ArrayList<LinkedList<RowInfo>> buckets, Time recycle) {
         int day = mTodayJulianDay;
         int count = 0;
-        for (LinkedList<RowInfo> bucket : mBuckets) {
+        for (LinkedList<RowInfo> bucket : buckets) {
             if (!bucket.isEmpty()) {
                 final DayInfo dayInfo = populateDayInfo(day, recycle);
                 // Add the day header
@@ -39,12 +39,15 @@ import android.view.View;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
+import com.android.calendar.Event;
+import com.android.calendar.EventCache;
 import com.android.calendar.R;
 import com.android.calendar.Utils;
 import com.android.calendar.widget.CalendarAppWidgetModel.DayInfo;
 import com.android.calendar.widget.CalendarAppWidgetModel.EventInfo;
 import com.android.calendar.widget.CalendarAppWidgetModel.RowInfo;
 
+import java.util.ArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -186,10 +189,33 @@ public class CalendarAppWidgetService extends RemoteViewsService {
 
         @Override
         public void onCreate() {
+            loadModelFromCache();
             String selection = queryForSelection();
             initLoader(selection);
         }
 
+        /**
+         * Builds a model from the {@link EventCache} if it already has all of
+         * the widget's days, so the widget can show events before its own
+         * query returns.
+         */
+        private void loadModelFromCache() {
+            synchronized (mLock) {
+                if (mModel != null) {
+                    return;
+                }
+                String tz = Utils.getTimeZone(mContext, mTimezoneChanged);
+                CalendarAppWidgetModel model = new CalendarAppWidgetModel(mContext, tz);
+                ArrayList<Event> events = new ArrayList<Event>();
+                if (EventCache.getInstance(mContext).getEvents(model.mTodayJulianDay,
+                        model.mMaxJulianDay, events)) {
+                    model.buildFromEvents(events, tz);
+                    mModel = model;
+                }
+                Event.recycleAll(events);
+            }
+        }
+
         @Override
         public void onDataSetChanged() {
         }
@@ -250,7 +276,7 @@ public class CalendarAppWidgetService extends RemoteViewsService {
                 } else {
                     views = new RemoteViews(mContext.getPackageName(), R.layout.widget_item);
                 }
-                int displayColor = Utils.getDisplayColorFromColor(eventInfo.color);
+                int displayColor = eventInfo.displayColor;
 
                 final long now = System.currentTimeMillis();
                 if (!eventInfo.allDay && eventInfo.start <= now && now <= eventInfo.end) {
@@ -22,6 +22,7 @@ import android.app.Fragment;
 import android.app.FragmentManager;
 import android.content.Context;
 import android.content.res.Configuration;
+import android.graphics.Canvas;
 import android.os.Build;
 import android.os.Bundle;
 
@@ -40,6 +41,7 @@ import android.widget.GridView;
 import com.android.calendar.CalendarController;
 import com.android.calendar.CalendarController.EventType;
 import com.android.calendar.CalendarController.EventInfo;
+import com.android.calendar.PerfLog;
 import com.android.calendar.R;
 import com.android.calendar.Utils;
 import com.android.datetimepicker.date.MonthView;
@@ -270,6 +272,13 @@ public class YearViewPagerFragment extends Fragment implements CalendarControlle
                 mController = CalendarController.getInstance(context);
             }
 
+            @Override
+            protected void dispatchDraw(Canvas canvas) {
+                final long frameStart = PerfLog.start();
+                super.dispatchDraw(canvas);
+                PerfLog.frameDrawn(PerfLog.VIEW_YEAR, frameStart);
+            }
+
             /*
               Implement a scroll gesture listener which is interested in
               vertical movements to show or hide FAB
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.calendar;
+
+import com.android.calendar.month.EventDayIndex;
+import com.android.calendar.month.MonthWeekEventsView;
+import com.android.calendar.month.WeekParams;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.provider.CalendarContract.Attendees;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.text.format.DateUtils;
+import android.text.format.Time;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.widget.ViewSwitcher;
+
+import java.util.ArrayList;
+
+/**
+ * Checks that the views redrawn on every frame while scrolling don't
+ * allocate once they have drawn their contents the first time, using
+ * {@link DrawAllocationTracker}.
+ */
+public class DrawAllocationsTest extends AndroidTestCase {
+    private static final int WIDTH = 720;
+    private static final int HEIGHT = 1280;
+    private static final int WEEK_HEIGHT = 200;
+    private static final int WARM_UP_FRAMES = 3;
+
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mBitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+        DrawAllocationTracker.setEnabled(true);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        DrawAllocationTracker.setEnabled(false);
+        mBitmap.recycle();
+        super.tearDown();
+    }
+
+    @LargeTest
+    public void testDayViewScrollDoesNotAllocate() {
+        Context context = getContext();
+        DayView view = new DayView(context, CalendarController.getInstance(context),
+                new ViewSwitcher(context), new EventLoader(context), 7);
+        Time time = new Time(Utils.getTimeZone(context, null));
+        time.setToNow();
+        view.setSelected(time, false, false);
+        layout(view, HEIGHT);
+        view.setEventsForTest(createDayViewEvents(view.getFirstJulianDay(), 7));
+
+        // The first pass builds the layers and labels, the second must not
+        // allocate anything
+        for (int pass = 0; pass < 2; pass++) {
+            DrawAllocationTracker.reset();
+            for (int y = 0; y <= 4000; y += 40) {
+                view.setViewStartY(y);
+                view.draw(mCanvas);
+            }
+        }
+        assertNoAllocatingFrames("DayView");
+    }
+
+    @LargeTest
+    public void testMonthWeekViewRedrawDoesNotAllocate() {
+        Context context = getContext();
+        String timeZone = Utils.getTimeZone(context, null);
+        Time time = new Time(timeZone);
+        time.setToNow();
+        int firstDayOfWeek = Utils.getFirstDayOfWeek(context);
+        int week = Utils.getWeeksSinceEpochFromJulianDay(
+                Time.getJulianDay(time.toMillis(true), time.gmtoff), firstDayOfWeek);
+
+        MonthWeekEventsView view = new MonthWeekEventsView(context);
+        WeekParams params = new WeekParams();
+        params.height = WEEK_HEIGHT;
+        params.week = week;
+        params.weekStart = firstDayOfWeek;
+        params.numDays = 7;
+        params.focusMonth = time.month;
+        view.setWeekParams(params, timeZone);
+        layout(view, WEEK_HEIGHT);
+
+        // A few events on every day, with long titles to ellipsize
+        int firstJulianDay = view.getFirstJulianDay();
+        long dayMillis = time.setJulianDay(firstJulianDay);
+        EventColumns events = new EventColumns();
+        for (int day = 0; day < 7; day++) {
+            for (int i = 0; i < 4; i++) {
+                long start = dayMillis + (9 + 2 * i) * DateUtils.HOUR_IN_MILLIS;
+                events.add(day * 10 + i, start,
+                        start + DateUtils.HOUR_IN_MILLIS, firstJulianDay + day,
+                        firstJulianDay + day, (9 + 2 * i) * 60, (10 + 2 * i) * 60, 0xff3366cc,
+                        Attendees.ATTENDEE_STATUS_ACCEPTED,
+                        "A meeting with a title too long to fit in a day", "Room " + i, null,
+                        false, false, false, false);
+            }
+            dayMillis += DateUtils.DAY_IN_MILLIS;
+        }
+        view.setEvents(events, EventDayIndex.build(events, firstJulianDay, 7), 0, null);
+
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            view.draw(mCanvas);
+        }
+        DrawAllocationTracker.reset();
+        for (int i = 0; i < 50; i++) {
+            view.draw(mCanvas);
+        }
+        assertNoAllocatingFrames("MonthWeekEventsView");
+    }
+
+    /**
+     * Returns overlapping timed events on every day, one crossing midnight,
+     * and more all-day events than fit without expanding the all-day area,
+     * in the order EventLoader returns them.
+     */
+    private static ArrayList<Event> createDayViewEvents(int firstJulianDay, int numDays) {
+        ArrayList<Event> events = new ArrayList<Event>();
+        ArrayList<Event> allDayEvents = new ArrayList<Event>();
+        Time time = new Time(Time.TIMEZONE_UTC);
+        long dayMillis = time.setJulianDay(firstJulianDay);
+        int id = 0;
+        for (int day = 0; day < numDays; day++) {
+            int julianDay = firstJulianDay + day;
+            // Each event overlaps the next, up to three columns wide
+            for (int i = 0; i < 8; i++) {
+                int startMinute = 8 * 60 + i * 45;
+                events.add(createEvent(id++, dayMillis, julianDay, startMinute, julianDay,
+                        startMinute + 100, false));
+            }
+            events.add(createEvent(id++, dayMillis, julianDay, 22 * 60, julianDay + 1, 60,
+                    false));
+            // The first all-day events span several days, longest first
+            for (int i = 0; i <= day % 6; i++) {
+                allDayEvents.add(createEvent(id++, dayMillis, julianDay, 0,
+                        julianDay + Math.max(2 - i, 0), 0, true));
+            }
+            dayMillis += DateUtils.DAY_IN_MILLIS;
+        }
+        events.addAll(allDayEvents);
+        return events;
+    }
+
+    private static Event createEvent(long id, long dayMillis, int startDay, int startMinute,
+            int endDay, int endMinute, boolean allDay) {
+        Event event = Event.newInstance();
+        event.id = id;
+        event.title = "A meeting with a title too long to fit in a day";
+        event.location = "Room " + id;
+        event.color = 0xff3366cc;
+        event.allDay = allDay;
+        event.selfAttendeeStatus = Attendees.ATTENDEE_STATUS_ACCEPTED;
+        event.startDay = startDay;
+        event.endDay = endDay;
+        event.startTime = startMinute;
+        event.endTime = allDay ? 24 * 60 : endMinute;
+        event.startMillis = dayMillis + startMinute * DateUtils.MINUTE_IN_MILLIS;
+        event.endMillis = dayMillis + (endDay - startDay) * DateUtils.DAY_IN_MILLIS
+                + (allDay ? DateUtils.DAY_IN_MILLIS : endMinute * DateUtils.MINUTE_IN_MILLIS);
+        return event;
+    }
+
+    private static void layout(View view, int height) {
+        view.measure(MeasureSpec.makeMeasureSpec(WIDTH, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY));
+        view.layout(0, 0, WIDTH, height);
+    }
+
+    private static void assertNoAllocatingFrames(String name) {
+        assertTrue("no frames were counted", DrawAllocationTracker.getFrameCount() > 0);
+        assertEquals(name + " allocated up to " + DrawAllocationTracker.getMaxFrameAllocations()
+                + " objects in a frame", 0, DrawAllocationTracker.getAllocatingFrameCount());
+    }
+}
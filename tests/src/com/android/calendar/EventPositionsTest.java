@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.calendar;
+
+import android.os.SystemClock;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link Event#computePositions}. Up to 64 columns it has to lay events
+ * out exactly like the column mask it replaced, which is kept below; past
+ * that the mask gave up, so only the basic guarantees are checked. Also
+ * compares how long the two take.
+ */
+public class EventPositionsTest extends TestCase {
+    private static final String TAG = "EventPositionsTest";
+
+    private static final long MINUTE = DateUtils.MINUTE_IN_MILLIS;
+    private static final long BASE_MILLIS = 1451606400000L; // 2016-01-01 UTC
+    private static final int BASE_DAY = 2457389;
+
+    private static final Comparator<Event> START_ORDER = new Comparator<Event>() {
+        @Override
+        public int compare(Event lhs, Event rhs) {
+            if (lhs.startMillis != rhs.startMillis) {
+                return lhs.startMillis < rhs.startMillis ? -1 : 1;
+            }
+            if (lhs.endMillis != rhs.endMillis) {
+                return lhs.endMillis > rhs.endMillis ? -1 : 1;
+            }
+            return 0;
+        }
+    };
+
+    @SmallTest
+    public void testMatchesColumnMask() {
+        Random random = new Random(42);
+        for (int run = 0; run < 200; run++) {
+            ArrayList<Event> events = createEvents(random, 1 + random.nextInt(60), 8 * 60);
+            long minDuration = random.nextBoolean() ? 0 : 30 * MINUTE;
+            assertMatchesColumnMask("run " + run, events, minDuration);
+        }
+    }
+
+    /**
+     * Compares how long the column allocator and the column mask take to lay
+     * out a busy day, after checking they agree on it.
+     */
+    @LargeTest
+    public void testBenchmark() {
+        // A shared resource calendar: a few hundred bookings on one day,
+        // staying within the 64 columns the mask can handle
+        ArrayList<Event> events = createEvents(new Random(7), 300, 10 * 60);
+        final long minDuration = 15 * MINUTE;
+        final int iterations = 200;
+        assertMatchesColumnMask("benchmark", events, minDuration);
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < iterations; i++) {
+            Event.computePositions(events, minDuration);
+        }
+        long allocator = SystemClock.elapsedRealtimeNanos() - start;
+
+        start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < iterations; i++) {
+            computePositionsWithMask(events, minDuration);
+        }
+        long mask = SystemClock.elapsedRealtimeNanos() - start;
+
+        Log.i(TAG, events.size() + " events: column allocator " + (allocator / iterations / 1000)
+                + "us, column mask " + (mask / iterations / 1000) + "us per layout");
+    }
+
+    @SmallTest
+    public void testMoreThan64Columns() {
+        ArrayList<Event> events = new ArrayList<Event>();
+        for (int i = 0; i < 100; i++) {
+            events.add(createEvent(BASE_MILLIS, BASE_MILLIS + 60 * MINUTE, false));
+        }
+
+        Event.computePositions(events, 0);
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(i, events.get(i).getColumn());
+            assertEquals(100, events.get(i).getMaxColumns());
+        }
+    }
+
+    @SmallTest
+    public void testFindFirstZeroBit() {
+        assertEquals(0, Event.findFirstZeroBit(0));
+        assertEquals(3, Event.findFirstZeroBit(7));
+        assertEquals(1, Event.findFirstZeroBit(5));
+        assertEquals(63, Event.findFirstZeroBit(Long.MAX_VALUE));
+        assertEquals(64, Event.findFirstZeroBit(-1L));
+    }
+
+    @SmallTest
+    public void testOverlappingEventsNeverShareAColumn() {
+        // A busy shared resource calendar, with far more than 64 bookings
+        // overlapping at once
+        ArrayList<Event> events = createEvents(new Random(7), 400, 10 * 60);
+        final long minDuration = 15 * MINUTE;
+        Event.computePositions(events, minDuration);
+
+        for (int i = 0; i < events.size(); i++) {
+            Event a = events.get(i);
+            assertTrue("column of event " + i + " outside its group",
+                    a.getColumn() < a.getMaxColumns());
+            for (int j = i + 1; j < events.size(); j++) {
+                Event b = events.get(j);
+                if (overlaps(a, b, minDuration)) {
+                    assertTrue("events " + i + " and " + j + " share a column",
+                            a.getColumn() != b.getColumn());
+                }
+            }
+        }
+    }
+
+    /**
+     * Lays events out with both implementations and checks they agree.
+     */
+    private static void assertMatchesColumnMask(String message, ArrayList<Event> events,
+            long minDuration) {
+        Event.computePositions(events, minDuration);
+        int[] columns = new int[events.size()];
+        int[] maxColumns = new int[events.size()];
+        for (int i = 0; i < events.size(); i++) {
+            columns[i] = events.get(i).getColumn();
+            maxColumns[i] = events.get(i).getMaxColumns();
+        }
+
+        computePositionsWithMask(events, minDuration);
+        for (int i = 0; i < events.size(); i++) {
+            Event e = events.get(i);
+            assertTrue(message + ": more columns than the mask has", e.getMaxColumns() <= 64);
+            assertEquals("column of event " + i + " in " + message,
+                    e.getColumn(), columns[i]);
+            assertEquals("max columns of event " + i + " in " + message,
+                    e.getMaxColumns(), maxColumns[i]);
+        }
+    }
+
+    /**
+     * Whether two events of the same kind end up side by side, the way
+     * computePositions decides it, where a starts no later than b.
+     */
+    private static boolean overlaps(Event a, Event b, long minDuration) {
+        if (a.drawAsAllday() != b.drawAsAllday()) {
+            return false;
+        }
+        if (a.drawAsAllday()) {
+            return a.endDay >= b.startDay;
+        }
+        long duration = Math.max(a.getEndMillis() - a.getStartMillis(), minDuration);
+        return a.getStartMillis() + duration > b.getStartMillis();
+    }
+
+    /**
+     * Creates count events, about a tenth of them all-day, starting within
+     * spreadMinutes of each other and sorted the way DayView gets them.
+     */
+    private static ArrayList<Event> createEvents(Random random, int count, int spreadMinutes) {
+        ArrayList<Event> events = new ArrayList<Event>(count);
+        for (int i = 0; i < count; i++) {
+            boolean allDay = random.nextInt(10) == 0;
+            long start;
+            long end;
+            if (allDay) {
+                start = BASE_MILLIS + random.nextInt(3) * DateUtils.DAY_IN_MILLIS;
+                end = start + (1 + random.nextInt(3)) * DateUtils.DAY_IN_MILLIS;
+            } else {
+                // Use coarse times so there are plenty of exact ties
+                start = BASE_MILLIS + random.nextInt(spreadMinutes / 15 + 1) * 15 * MINUTE;
+                end = start + random.nextInt(12) * 15 * MINUTE;
+            }
+            events.add(createEvent(start, end, allDay));
+        }
+        Collections.sort(events, START_ORDER);
+        return events;
+    }
+
+    private static Event createEvent(long start, long end, boolean allDay) {
+        Event e = Event.newInstance();
+        e.allDay = allDay;
+        e.startMillis = start;
+        e.endMillis = end;
+        e.startDay = BASE_DAY + (int) ((start - BASE_MILLIS) / DateUtils.DAY_IN_MILLIS);
+        e.endDay = BASE_DAY + (int) ((end - 1 - BASE_MILLIS) / DateUtils.DAY_IN_MILLIS);
+        if (e.endDay < e.startDay) {
+            e.endDay = e.startDay;
+        }
+        return e;
+    }
+
+    // The previous implementation of Event.computePositions, limited to 64
+    // columns.
+
+    private static void computePositionsWithMask(ArrayList<Event> eventsList,
+            long minimumDurationMillis) {
+        doComputePositionsWithMask(eventsList, minimumDurationMillis, false);
+        doComputePositionsWithMask(eventsList, minimumDurationMillis, true);
+    }
+
+    private static void doComputePositionsWithMask(ArrayList<Event> eventsList,
+            long minimumDurationMillis, boolean doAlldayEvents) {
+        final ArrayList<Event> activeList = new ArrayList<Event>();
+        final ArrayList<Event> groupList = new ArrayList<Event>();
+
+        if (minimumDurationMillis < 0) {
+            minimumDurationMillis = 0;
+        }
+
+        long colMask = 0;
+        int maxCols = 0;
+        for (Event event : eventsList) {
+            if (event.drawAsAllday() != doAlldayEvents)
+                continue;
+
+            Iterator<Event> iter = activeList.iterator();
+            while (iter.hasNext()) {
+                final Event active = iter.next();
+                boolean inactive;
+                if (!doAlldayEvents) {
+                    final long duration = Math.max(
+                            active.getEndMillis() - active.getStartMillis(),
+                            minimumDurationMillis);
+                    inactive = active.getStartMillis() + duration <= event.getStartMillis();
+                } else {
+                    inactive = active.endDay < event.startDay;
+                }
+                if (inactive) {
+                    colMask &= ~(1L << active.getColumn());
+                    iter.remove();
+                }
+            }
+
+            if (activeList.isEmpty()) {
+                for (Event ev : groupList) {
+                    ev.setMaxColumns(maxCols);
+                }
+                maxCols = 0;
+                colMask = 0;
+                groupList.clear();
+            }
+
+            int col = 64;
+            for (int ii = 0; ii < 64; ++ii) {
+                if ((colMask & (1L << ii)) == 0) {
+                    col = ii;
+                    break;
+                }
+            }
+            if (col == 64)
+                col = 63;
+            colMask |= (1L << col);
+            event.setColumn(col);
+            activeList.add(event);
+            groupList.add(event);
+            int len = activeList.size();
+            if (maxCols < len)
+                maxCols = len;
+        }
+        for (Event ev : groupList) {
+            ev.setMaxColumns(maxCols);
+        }
+    }
+}
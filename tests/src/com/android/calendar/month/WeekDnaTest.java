@@ -0,0 +1,620 @@
+/*
+ * Copyright (C) 2016 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.calendar.month;
+
+import com.android.calendar.EventColumns;
+
+import android.os.SystemClock;
+import android.provider.CalendarContract.Attendees;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the strands {@link WeekDnaBuilder} lays out for small hand-made
+ * weeks, and checks it against the linked list implementation it replaced
+ * in Utils on random ones. The dna is 160 pixels high and the work day runs
+ * from 6:00 to 20:00, so the work day gets 120 pixels, or one pixel every 7
+ * minutes, between 20 pixels for the night before and 20 for the evening
+ * after.
+ */
+public class WeekDnaTest extends TestCase {
+    private static final String TAG = "WeekDnaTest";
+
+    private static final int FIRST_DAY = 2457388; // Thursday 2015-12-31
+    private static final long FIRST_DAY_MILLIS = 1451520000000L;
+    private static final int DAY_IN_MINUTES = 24 * 60;
+    private static final int WORK_DAY_START_MINUTES = 6 * 60;
+    private static final int WORK_DAY_END_MINUTES = 20 * 60;
+
+    private static final int CONFLICT = 0xFF000000;
+    private static final int RED = 0xFFDC3912;
+    private static final int BLUE = 0xFF3366CC;
+    private static final int GREEN = 0xFF109618;
+    private static final int[] COLORS = { RED, BLUE, GREEN, 0xFFFF9900, 0xFF990099, CONFLICT };
+
+    private static final int TOP = 0;
+    private static final int BOTTOM = 160;
+    private static final int[] DAY_XS = { 5, 15, 25, 35, 45, 55, 65 };
+
+    private WeekDnaBuilder mBuilder;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mBuilder = new WeekDnaBuilder(CONFLICT, WORK_DAY_START_MINUTES,
+                WORK_DAY_END_MINUTES);
+    }
+
+    @SmallTest
+    public void testSingleEvent() {
+        EventColumns events = new EventColumns();
+        // 9:30 to 11:50 is 210 to 350 minutes into the work day
+        addTimed(events, RED, 1, 9 * 60 + 30, 1, 11 * 60 + 50);
+
+        WeekDna dna = build(events, 0);
+        assertStrand(dna, RED, 15, 50, 15, 70);
+        assertStrand(dna, CONFLICT);
+        assertNull(dna.getAllDayColors());
+    }
+
+    @SmallTest
+    public void testOverlapBecomesConflict() {
+        EventColumns events = new EventColumns();
+        addTimed(events, RED, 0, 9 * 60 + 30, 0, 11 * 60 + 50);
+        addTimed(events, BLUE, 0, 10 * 60 + 40, 0, 13 * 60);
+
+        // The red event keeps the part before the blue one starts, the
+        // overlap turns into a conflict and the blue event gets the rest
+        WeekDna dna = build(events, 0);
+        assertStrand(dna, RED, 5, 50, 5, 59);
+        assertStrand(dna, CONFLICT, 5, 60, 5, 70);
+        assertStrand(dna, BLUE, 5, 70, 5, 80);
+        assertEquals("conflicts aren't the first strand", CONFLICT,
+                dna.getColor(WeekDna.CONFLICT_STRAND));
+    }
+
+    @SmallTest
+    public void testEventPastMidnightIsSplitByDay() {
+        EventColumns events = new EventColumns();
+        addTimed(events, GREEN, 2, 22 * 60, 3, 2 * 60);
+
+        WeekDna dna = build(events, 0);
+        assertStrand(dna, GREEN, 25, 150, 25, 159, 35, 0, 35, 6);
+    }
+
+    @SmallTest
+    public void testEventFromBeforeTheWeekIsClipped() {
+        EventColumns events = new EventColumns();
+        addTimed(events, GREEN, -1, 22 * 60, 0, 3 * 60);
+
+        WeekDna dna = build(events, 0);
+        assertStrand(dna, GREEN, 5, 0, 5, 10);
+    }
+
+    @SmallTest
+    public void testShortEventKeepsMinimumHeight() {
+        EventColumns events = new EventColumns();
+        addTimed(events, BLUE, 4, 9 * 60 + 30, 4, 9 * 60 + 30);
+
+        WeekDna dna = build(events, 14);
+        assertStrand(dna, BLUE, 45, 50, 45, 64);
+    }
+
+    @SmallTest
+    public void testAllDayColors() {
+        EventColumns events = new EventColumns();
+        addAllDay(events, RED, 1, 2);
+        addAllDay(events, BLUE, 2, 2);
+
+        WeekDna dna = build(events, 0);
+        int[] expected = { 0, RED, CONFLICT, 0, 0, 0, 0 };
+        assertTrue(Arrays.toString(dna.getAllDayColors()),
+                Arrays.equals(expected, dna.getAllDayColors()));
+        assertStrand(dna, RED);
+        assertStrand(dna, BLUE);
+    }
+
+    @SmallTest
+    public void testNothingToDraw() {
+        assertNull(mBuilder.getDna(FIRST_DAY, new EventColumns(), TOP, BOTTOM, 0, DAY_XS));
+        EventColumns events = new EventColumns();
+        addTimed(events, RED, 1, 9 * 60, 1, 10 * 60);
+        assertNull("too short to draw", mBuilder.getDna(FIRST_DAY, events, TOP, TOP + 7, 0,
+                DAY_XS));
+    }
+
+    @SmallTest
+    public void testCachesUntilEventsChange() {
+        EventColumns events = new EventColumns();
+        addTimed(events, RED, 1, 9 * 60, 1, 10 * 60);
+        WeekDna dna = mBuilder.getDna(FIRST_DAY, events, TOP, BOTTOM, 0, DAY_XS);
+
+        assertSame(dna, mBuilder.getDna(FIRST_DAY, events, TOP, BOTTOM, 0, DAY_XS.clone()));
+        assertNotSame(dna, mBuilder.getDna(FIRST_DAY + 7, events, TOP, BOTTOM, 0, DAY_XS));
+        assertNotSame(dna, mBuilder.getDna(FIRST_DAY, events, TOP, BOTTOM - 10, 0, DAY_XS));
+        // Looking at other weeks doesn't push this one out
+        assertSame(dna, mBuilder.getDna(FIRST_DAY, events, TOP, BOTTOM, 0, DAY_XS));
+
+        EventColumns reloaded = new EventColumns();
+        addTimed(reloaded, RED, 1, 9 * 60, 1, 10 * 60);
+        assertNotSame(dna, mBuilder.getDna(FIRST_DAY, reloaded, TOP, BOTTOM, 0, DAY_XS));
+    }
+
+    @SmallTest
+    public void testMatchesLinkedList() {
+        Random random = new Random(42);
+        for (int run = 0; run < 300; run++) {
+            EventColumns events = createEvents(random, 1 + random.nextInt(60), 1);
+            int bottom = BOTTOM - random.nextInt(150);
+            int minPixels = random.nextInt(16);
+            assertSameDna("run " + run, createDNAStrands(FIRST_DAY, events, TOP, bottom,
+                    minPixels, DAY_XS),
+                    mBuilder.build(FIRST_DAY, events, TOP, bottom, minPixels, DAY_XS));
+        }
+    }
+
+    /**
+     * Compares how long the builder and the linked list implementation take
+     * on six weeks of back to back meetings, loaded at once like the month
+     * view loads them, after checking they agree on every week.
+     */
+    @LargeTest
+    public void testBenchmark() {
+        final int weeks = 6;
+        final int iterations = 100;
+        final int minPixels = 4;
+        EventColumns events = createEvents(new Random(7), 300 * weeks, weeks);
+        for (int week = 0; week < weeks; week++) {
+            int firstDay = FIRST_DAY + week * 7;
+            assertSameDna("week " + week, createDNAStrands(firstDay, events, TOP, BOTTOM,
+                    minPixels, DAY_XS),
+                    mBuilder.build(firstDay, events, TOP, BOTTOM, minPixels, DAY_XS));
+        }
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < iterations; i++) {
+            for (int week = 0; week < weeks; week++) {
+                createDNAStrands(FIRST_DAY + week * 7, events, TOP, BOTTOM, minPixels, DAY_XS);
+            }
+        }
+        long linkedList = SystemClock.elapsedRealtimeNanos() - start;
+
+        start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < iterations; i++) {
+            for (int week = 0; week < weeks; week++) {
+                mBuilder.build(FIRST_DAY + week * 7, events, TOP, BOTTOM, minPixels, DAY_XS);
+            }
+        }
+        long arrays = SystemClock.elapsedRealtimeNanos() - start;
+
+        start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < iterations; i++) {
+            for (int week = 0; week < weeks; week++) {
+                mBuilder.getDna(FIRST_DAY + week * 7, events, TOP, BOTTOM, minPixels, DAY_XS);
+            }
+        }
+        long cached = SystemClock.elapsedRealtimeNanos() - start;
+
+        final int builds = iterations * weeks;
+        Log.i(TAG, events.size() / weeks + " events a week: linked list "
+                + (linkedList / builds / 1000) + "us, arrays " + (arrays / builds / 1000)
+                + "us, cached " + (cached / builds / 1000) + "us per week");
+    }
+
+    private WeekDna build(EventColumns events, int minPixels) {
+        WeekDna dna = mBuilder.build(FIRST_DAY, events, TOP, BOTTOM, minPixels, DAY_XS);
+        assertNotNull(dna);
+        return dna;
+    }
+
+    /**
+     * Asserts the strand of color has exactly the given lines, or has none
+     * if no points are given.
+     */
+    private static void assertStrand(WeekDna dna, int color, float... points) {
+        for (int strand = 0; strand < dna.getStrandCount(); strand++) {
+            if (dna.getColor(strand) != color) {
+                continue;
+            }
+            int offset = dna.getPointOffset(strand);
+            float[] actual = Arrays.copyOfRange(dna.getPoints(), offset,
+                    offset + dna.getPointCount(strand));
+            assertTrue("strand " + Integer.toHexString(color) + " is "
+                    + Arrays.toString(actual), Arrays.equals(points, actual));
+            return;
+        }
+        assertEquals("no strand " + Integer.toHexString(color), 0, points.length);
+    }
+
+    private static void addTimed(EventColumns events, int color, int startDay, int startTime,
+            int endDay, int endTime) {
+        events.add(events.size(), toMillis(startDay, startTime), toMillis(endDay, endTime),
+                FIRST_DAY + startDay, FIRST_DAY + endDay, startTime, endTime, color,
+                Attendees.ATTENDEE_STATUS_ACCEPTED, "Event", null, null, false, false, false,
+                false);
+    }
+
+    private static void addAllDay(EventColumns events, int color, int startDay, int endDay) {
+        events.add(events.size(), toMillis(startDay, 0), toMillis(endDay + 1, 0),
+                FIRST_DAY + startDay, FIRST_DAY + endDay, 0, DAY_IN_MINUTES, color,
+                Attendees.ATTENDEE_STATUS_ACCEPTED, "Holiday", null, null, true, false, false,
+                false);
+    }
+
+    private static long toMillis(int day, int minutes) {
+        return FIRST_DAY_MILLIS + day * DateUtils.DAY_IN_MILLIS
+                + minutes * DateUtils.MINUTE_IN_MILLIS;
+    }
+
+    private static void assertSameDna(String message, HashMap<Integer, DNAStrand> expected,
+            WeekDna dna) {
+        if (expected == null) {
+            assertNull(message, dna);
+            return;
+        }
+        assertNotNull(message, dna);
+
+        HashMap<Integer, float[]> strands = new HashMap<Integer, float[]>();
+        for (int strand = 0; strand < dna.getStrandCount(); strand++) {
+            int count = dna.getPointCount(strand);
+            if (count != 0) {
+                int offset = dna.getPointOffset(strand);
+                assertNull(message + ": two strands of one color",
+                        strands.put(dna.getColor(strand),
+                                Arrays.copyOfRange(dna.getPoints(), offset, offset + count)));
+            }
+        }
+        int expectedCount = 0;
+        for (DNAStrand strand : expected.values()) {
+            if (strand.points.length == 0) {
+                continue;
+            }
+            expectedCount++;
+            assertTrue(message + ": color " + Integer.toHexString(strand.color),
+                    Arrays.equals(strand.points, strands.get(strand.color)));
+        }
+        assertEquals(message, expectedCount, strands.size());
+
+        DNAStrand conflicts = expected.get(CONFLICT);
+        int[] allDays = conflicts == null ? null : conflicts.allDays;
+        assertTrue(message + ": all day colors",
+                Arrays.equals(allDays, dna.getAllDayColors()));
+    }
+
+    /**
+     * Creates count events around the weeks starting on FIRST_DAY, ordered
+     * by start time, about a tenth of them all-day and some running past
+     * midnight or out of the weeks.
+     */
+    private static EventColumns createEvents(Random random, int count, int weeks) {
+        EventColumns events = new EventColumns(count);
+        // Spread the events over the weeks and a day either side
+        final int spacing = (weeks * 7 + 2) * DAY_IN_MINUTES / count;
+        int startMinute = -DAY_IN_MINUTES;
+        for (int i = 0; i < count; i++) {
+            // Use coarse times so there are plenty of exact ties
+            startMinute += random.nextInt(2 * spacing / 15 + 1) * 15;
+            int color = COLORS[random.nextInt(COLORS.length)];
+            int startDay = floorDiv(startMinute, DAY_IN_MINUTES);
+            if (random.nextInt(10) == 0) {
+                addAllDay(events, color, startDay, startDay + random.nextInt(3));
+                continue;
+            }
+            int endMinute = startMinute + random.nextInt(random.nextInt(5) == 0 ? 96 : 12) * 15;
+            int endDay = floorDiv(endMinute, DAY_IN_MINUTES);
+            addTimed(events, color, startDay, startMinute - startDay * DAY_IN_MINUTES, endDay,
+                    endMinute - endDay * DAY_IN_MINUTES);
+        }
+        return events;
+    }
+
+    private static int floorDiv(int x, int y) {
+        int q = x / y;
+        return q * y > x ? q - 1 : q;
+    }
+
+    // The implementation from Utils that WeekDnaBuilder replaced, with the
+    // resources it loaded replaced by the constants above and the
+    // events copied into a small holder instead of an Event.
+
+    private static final int WEEK_IN_MINUTES = DAY_IN_MINUTES * 7;
+    private static final int WORK_DAY_MINUTES = WORK_DAY_END_MINUTES - WORK_DAY_START_MINUTES;
+    private static final int WORK_DAY_END_LENGTH = DAY_IN_MINUTES - WORK_DAY_END_MINUTES;
+
+    private static class DNAStrand {
+        float[] points;
+        int[] allDays;
+        int position;
+        int color;
+        int count;
+    }
+
+    private static class DNASegment {
+        int startMinute;
+        int endMinute;
+        int color;
+        int day;
+    }
+
+    private static class DNAEvent {
+        int color;
+        int startDay;
+        int endDay;
+        int startTime;
+        int endTime;
+    }
+
+    private static HashMap<Integer, DNAStrand> createDNAStrands(int firstJulianDay,
+            EventColumns events, int top, int bottom, int minPixels, int[] dayXs) {
+        if (events == null || events.isEmpty() || dayXs == null || dayXs.length < 1
+                || bottom - top < 8 || minPixels < 0) {
+            return null;
+        }
+
+        LinkedList<DNASegment> segments = new LinkedList<DNASegment>();
+        HashMap<Integer, DNAStrand> strands = new HashMap<Integer, DNAStrand>();
+        DNAStrand blackStrand = new DNAStrand();
+        blackStrand.color = CONFLICT;
+        strands.put(CONFLICT, blackStrand);
+        int minMinutes = minPixels * 4 * WORK_DAY_MINUTES / (3 * (bottom - top));
+        int minOtherMinutes = minMinutes * 5 / 2;
+        int lastJulianDay = firstJulianDay + dayXs.length - 1;
+
+        DNAEvent event = new DNAEvent();
+        int count = events.size();
+        for (int i = 0; i < count; i++) {
+            if (events.getEndDay(i) < firstJulianDay || events.getStartDay(i) > lastJulianDay) {
+                continue;
+            }
+            event.color = events.getColor(i);
+            event.startDay = events.getStartDay(i);
+            event.endDay = events.getEndDay(i);
+            event.startTime = events.getStartTime(i);
+            event.endTime = events.getEndTime(i);
+            if (events.drawAsAllday(i)) {
+                addAllDayToStrands(event, strands, firstJulianDay, dayXs.length);
+                continue;
+            }
+            if (event.startDay < firstJulianDay) {
+                event.startDay = firstJulianDay;
+                event.startTime = 0;
+            }
+            if (event.startTime > DAY_IN_MINUTES - minOtherMinutes) {
+                event.startTime = DAY_IN_MINUTES - minOtherMinutes;
+            }
+            if (event.endDay > lastJulianDay) {
+                event.endDay = lastJulianDay;
+                event.endTime = DAY_IN_MINUTES - 1;
+            }
+            if (event.endTime < minOtherMinutes) {
+                event.endTime = minOtherMinutes;
+            }
+            if (event.startDay == event.endDay &&
+                    event.endTime - event.startTime < minOtherMinutes) {
+                if (event.startTime < WORK_DAY_START_MINUTES) {
+                    event.endTime = Math.min(event.startTime + minOtherMinutes,
+                            WORK_DAY_START_MINUTES + minMinutes);
+                } else if (event.endTime > WORK_DAY_END_MINUTES) {
+                    event.endTime = Math.min(event.endTime + minOtherMinutes, DAY_IN_MINUTES - 1);
+                    if (event.endTime - event.startTime < minOtherMinutes) {
+                        event.startTime = event.endTime - minOtherMinutes;
+                    }
+                }
+            }
+
+            if (segments.size() == 0) {
+                addNewSegment(segments, event, strands, firstJulianDay, 0, minMinutes);
+                continue;
+            }
+            DNASegment lastSegment = segments.getLast();
+            int startMinute = (event.startDay - firstJulianDay) * DAY_IN_MINUTES + event.startTime;
+            int endMinute = Math.max((event.endDay - firstJulianDay) * DAY_IN_MINUTES
+                    + event.endTime, startMinute + minMinutes);
+
+            if (startMinute < 0) {
+                startMinute = 0;
+            }
+            if (endMinute >= WEEK_IN_MINUTES) {
+                endMinute = WEEK_IN_MINUTES - 1;
+            }
+            if (startMinute < lastSegment.endMinute) {
+                int i2 = segments.size();
+                while (--i2 >= 0 && endMinute < segments.get(i2).startMinute);
+
+                DNASegment currSegment;
+                for (; i2 >= 0 && startMinute <= (currSegment = segments.get(i2)).endMinute;
+                        i2--) {
+                    if (currSegment.color == CONFLICT) {
+                        continue;
+                    }
+                    if (endMinute < currSegment.endMinute - minMinutes) {
+                        DNASegment rhs = new DNASegment();
+                        rhs.endMinute = currSegment.endMinute;
+                        rhs.color = currSegment.color;
+                        rhs.startMinute = endMinute + 1;
+                        rhs.day = currSegment.day;
+                        currSegment.endMinute = endMinute;
+                        segments.add(i2 + 1, rhs);
+                        strands.get(rhs.color).count++;
+                    }
+                    if (startMinute > currSegment.startMinute + minMinutes) {
+                        DNASegment lhs = new DNASegment();
+                        lhs.startMinute = currSegment.startMinute;
+                        lhs.color = currSegment.color;
+                        lhs.endMinute = startMinute - 1;
+                        lhs.day = currSegment.day;
+                        currSegment.startMinute = startMinute;
+                        segments.add(i2++, lhs);
+                        strands.get(lhs.color).count++;
+                    }
+                    if (i2 + 1 < segments.size()) {
+                        DNASegment rhs = segments.get(i2 + 1);
+                        if (rhs.color == CONFLICT && currSegment.day == rhs.day
+                                && rhs.startMinute <= currSegment.endMinute + 1) {
+                            rhs.startMinute = Math.min(currSegment.startMinute, rhs.startMinute);
+                            segments.remove(currSegment);
+                            strands.get(currSegment.color).count--;
+                            currSegment = rhs;
+                        }
+                    }
+                    if (i2 - 1 >= 0) {
+                        DNASegment lhs = segments.get(i2 - 1);
+                        if (lhs.color == CONFLICT && currSegment.day == lhs.day
+                                && lhs.endMinute >= currSegment.startMinute - 1) {
+                            lhs.endMinute = Math.max(currSegment.endMinute, lhs.endMinute);
+                            segments.remove(currSegment);
+                            strands.get(currSegment.color).count--;
+                            currSegment = lhs;
+                            i2--;
+                        }
+                    }
+                    if (currSegment.color != CONFLICT) {
+                        strands.get(currSegment.color).count--;
+                        currSegment.color = CONFLICT;
+                        strands.get(CONFLICT).count++;
+                    }
+                }
+            }
+            if (endMinute > lastSegment.endMinute) {
+                addNewSegment(segments, event, strands, firstJulianDay, lastSegment.endMinute,
+                        minMinutes);
+            }
+        }
+        weaveDNAStrands(segments, firstJulianDay, strands, top, bottom, dayXs);
+        return strands;
+    }
+
+    private static void addAllDayToStrands(DNAEvent event, HashMap<Integer, DNAStrand> strands,
+            int firstJulianDay, int numDays) {
+        DNAStrand strand = getOrCreateStrand(strands, CONFLICT);
+        if (strand.allDays == null) {
+            strand.allDays = new int[numDays];
+        }
+        int end = Math.min(event.endDay - firstJulianDay, numDays - 1);
+        for (int i = Math.max(event.startDay - firstJulianDay, 0); i <= end; i++) {
+            if (strand.allDays[i] != 0) {
+                strand.allDays[i] = CONFLICT;
+            } else {
+                strand.allDays[i] = event.color;
+            }
+        }
+    }
+
+    private static void weaveDNAStrands(LinkedList<DNASegment> segments, int firstJulianDay,
+            HashMap<Integer, DNAStrand> strands, int top, int bottom, int[] dayXs) {
+        Iterator<DNAStrand> strandIterator = strands.values().iterator();
+        while (strandIterator.hasNext()) {
+            DNAStrand strand = strandIterator.next();
+            if (strand.count < 1 && strand.allDays == null) {
+                strandIterator.remove();
+                continue;
+            }
+            strand.points = new float[strand.count * 4];
+            strand.position = 0;
+        }
+        for (DNASegment segment : segments) {
+            DNAStrand strand = strands.get(segment.color);
+            int dayIndex = segment.day - firstJulianDay;
+            int dayStartMinute = segment.startMinute % DAY_IN_MINUTES;
+            int dayEndMinute = segment.endMinute % DAY_IN_MINUTES;
+            int height = bottom - top;
+            int workDayHeight = height * 3 / 4;
+            int remainderHeight = (height - workDayHeight) / 2;
+
+            int x = dayXs[dayIndex];
+            int y0 = top + getPixelOffsetFromMinutes(dayStartMinute, workDayHeight,
+                    remainderHeight);
+            int y1 = top + getPixelOffsetFromMinutes(dayEndMinute, workDayHeight,
+                    remainderHeight);
+            strand.points[strand.position++] = x;
+            strand.points[strand.position++] = y0;
+            strand.points[strand.position++] = x;
+            strand.points[strand.position++] = y1;
+        }
+    }
+
+    private static int getPixelOffsetFromMinutes(int minute, int workDayHeight,
+            int remainderHeight) {
+        int y;
+        if (minute < WORK_DAY_START_MINUTES) {
+            y = minute * remainderHeight / WORK_DAY_START_MINUTES;
+        } else if (minute < WORK_DAY_END_MINUTES) {
+            y = remainderHeight + (minute - WORK_DAY_START_MINUTES) * workDayHeight
+                    / WORK_DAY_MINUTES;
+        } else {
+            y = remainderHeight + workDayHeight + (minute - WORK_DAY_END_MINUTES) * remainderHeight
+                    / WORK_DAY_END_LENGTH;
+        }
+        return y;
+    }
+
+    private static void addNewSegment(LinkedList<DNASegment> segments, DNAEvent event,
+            HashMap<Integer, DNAStrand> strands, int firstJulianDay, int minStart, int minMinutes) {
+        if (event.startDay != event.endDay) {
+            DNAEvent lhs = new DNAEvent();
+            lhs.color = event.color;
+            lhs.startDay = event.startDay;
+            lhs.startTime = event.startTime;
+            lhs.endDay = lhs.startDay;
+            lhs.endTime = DAY_IN_MINUTES - 1;
+            while (lhs.startDay != event.endDay) {
+                addNewSegment(segments, lhs, strands, firstJulianDay, minStart, minMinutes);
+                lhs.startDay++;
+                lhs.endDay = lhs.startDay;
+                lhs.startTime = 0;
+                minStart = 0;
+            }
+            lhs.endTime = event.endTime;
+            event = lhs;
+        }
+        DNASegment segment = new DNASegment();
+        int dayOffset = (event.startDay - firstJulianDay) * DAY_IN_MINUTES;
+        int endOfDay = dayOffset + DAY_IN_MINUTES - 1;
+        segment.startMinute = Math.max(dayOffset + event.startTime, minStart);
+        int minEnd = Math.min(segment.startMinute + minMinutes, endOfDay);
+        segment.endMinute = Math.max(dayOffset + event.endTime, minEnd);
+        if (segment.endMinute > endOfDay) {
+            segment.endMinute = endOfDay;
+        }
+
+        segment.color = event.color;
+        segment.day = event.startDay;
+        segments.add(segment);
+        DNAStrand strand = getOrCreateStrand(strands, segment.color);
+        strand.count++;
+    }
+
+    private static DNAStrand getOrCreateStrand(HashMap<Integer, DNAStrand> strands, int color) {
+        DNAStrand strand = strands.get(color);
+        if (strand == null) {
+            strand = new DNAStrand();
+            strand.color = color;
+            strands.put(strand.color, strand);
+        }
+        return strand;
+    }
+}